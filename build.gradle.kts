@@ -83,6 +83,7 @@ dependencies {
     runtimeOnly("io.asyncer:r2dbc-mysql")
     implementation("io.r2dbc:r2dbc-spi:1.0.0.RELEASE")
     implementation("io.asyncer:r2dbc-mysql:1.1.3")
+    implementation("io.r2dbc:r2dbc-pool")
 
     // JWT
     implementation("io.jsonwebtoken:jjwt-api:0.12.6")
@@ -120,6 +120,15 @@ public class BlackListRepositoryImp implements BlackListRepository {
                 ).all();
     }
 
+    @Override
+    public Mono<Long> insertOverdue(LocalDate dueAfter, LocalDate today) {
+        return databaseClient.sql(QR_Insert_Overdue)
+                .bind("dueAfter", dueAfter)
+                .bind("today", today)
+                .fetch()
+                .rowsUpdated();
+    }
+
     private static final String QR_Detail= """
         SELECT
             b.book_id,
@@ -138,6 +147,18 @@ public class BlackListRepositoryImp implements BlackListRepository {
         WHERE
             bb.is_bring_back = 0;
     """;
+    private static final String QR_Insert_Overdue = """
+        INSERT INTO blacklist(student_id, book_id)
+        SELECT DISTINCT bb.student_id, bb.book_id
+        FROM borrow_books bb
+        WHERE bb.give_back_date > :dueAfter
+          AND bb.give_back_date < :today
+          AND bb.is_bring_back IS NOT TRUE
+          AND NOT EXISTS (
+              SELECT 1 FROM blacklist bl
+              WHERE bl.student_id = bb.student_id AND bl.book_id = bb.book_id
+          )
+    """;
     private static final String QR_Search = """ 
         SELECT b.blacklist_id, b.student_id, b.book_id
         FROM blacklist b  JOIN students s ON b.student_id = s.student_id
@@ -6,16 +6,17 @@
 package sru.edu.sru_lib_management.core.domain.auto_task;
 
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import sru.edu.sru_lib_management.core.domain.model.BlackList;
-import sru.edu.sru_lib_management.core.domain.model.Borrow;
+import sru.edu.sru_lib_management.core.domain.model.JobLease;
 import sru.edu.sru_lib_management.core.domain.service.BlacklistService;
-import sru.edu.sru_lib_management.core.domain.service.BorrowService;
-import sru.edu.sru_lib_management.core.utils.ExtensionKt;
+import sru.edu.sru_lib_management.utils.IndochinaDateTime;
+import sru.edu.sru_lib_management.utils.schedule.JobLock;
 
+import java.time.Duration;
 import java.time.LocalDate;
 
 @Component
@@ -23,30 +24,33 @@ import java.time.LocalDate;
 public class CheckBorrowBook {
 
     private final BlacklistService blacklistService;
-    private final BorrowService borrowService;
+    private final JobLock jobLock;
+    private final Logger logger = LoggerFactory.getLogger(CheckBorrowBook.class);
 
+    // runs on one instance only, see JobLock
     @Scheduled(cron = "0 0 12 * * *", zone = "Asia/Phnom_Penh")
     public void addToBlackList(){
-        System.out.println("Check borrow!");
-        Flux<Borrow> bookFlux = ExtensionKt.asFlux(borrowService.getBorrows());
-        bookFlux.filter(borrow ->
-                        !borrow.isBringBack() && borrow.getBorrowDate().isBefore(LocalDate.now().minusDays(14))
-                )
-                .flatMap(borrow ->
-                        blacklistService
-                                .exist(borrow.getStudentId(), borrow.getBookId())
-                                .flatMap(exist -> {
-                                    if (exist){
-                                        return Mono.just(borrow);
-                                    }else {
-                                        return blacklistService.save(new BlackList(null, borrow.getStudentId(), borrow.getBookId()))
-                                                .thenReturn(borrow);
-                                    }
-                                })
-                )
-                .doOnError(error -> System.err.println("Error processing blacklist: " + error.getMessage()))
-                .doOnComplete(() -> System.out.println("Blacklist processing completed."))
+        jobLock.runMono("borrow-blacklist", Duration.ofMinutes(30), Duration.ofMinutes(1), this::blacklistNewlyOverdue)
+                .doOnNext(run -> logger.info("Blacklist processing completed: {} added.", run.getRowsAffected()))
+                .doOnError(error -> logger.error("Error processing blacklist: {}", error.getMessage()))
                 .subscribe();
     }
 
+    /*
+     * Blacklists the borrows whose due date passed since the last run, in one statement.
+     * The watermark is the last due date already handled, the first run starts from the beginning.
+     * Returns the number of blacklist rows added.
+     */
+    private Mono<Long> blacklistNewlyOverdue(JobLease lease){
+        LocalDate today = IndochinaDateTime.INSTANCE.indoChinaDate();
+        return jobLock.watermarkMono(lease)
+                .defaultIfEmpty(LocalDate.EPOCH)
+                .flatMap(dueAfter -> blacklistService.addNewlyOverdue(dueAfter, today))
+                .flatMap(added -> jobLock.advanceWatermarkMono(lease, today.minusDays(1))
+                        .doOnNext(saved -> {
+                            if (!saved) logger.warn("Blacklist watermark not saved, the job lock was lost.");
+                        })
+                        .thenReturn(added));
+    }
+
 }
@@ -12,6 +12,7 @@ import sru.edu.sru_lib_management.core.domain.model.BlackList;
 import sru.edu.sru_lib_management.core.domain.model.BlackListDto;
 import sru.edu.sru_lib_management.core.domain.repository.crud.RCrudRepository;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
@@ -20,4 +21,7 @@ public interface BlackListRepository extends RCrudRepository<BlackList, Integer>
     Flux<BlackListDto> getAllBlackListDetail();
 
     Flux<BlackList> search(String keyword);
+
+    // bulk insert of unreturned borrows due in (dueAfter, today), skipping pairs already blacklisted
+    Mono<Long> insertOverdue(LocalDate dueAfter, LocalDate today);
 }
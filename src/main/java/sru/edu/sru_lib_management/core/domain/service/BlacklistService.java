@@ -11,6 +11,8 @@ import reactor.core.publisher.Mono;
 import sru.edu.sru_lib_management.core.domain.model.BlackList;
 import sru.edu.sru_lib_management.core.domain.model.BlackListDto;
 
+import java.time.LocalDate;
+
 @Service
 public interface BlacklistService {
     Mono<BlackList> save(BlackList blackList);
@@ -22,4 +24,6 @@ public interface BlacklistService {
 
     Flux<BlackListDto> getBlackListDetail();
     Flux<BlackList> search(String keyword);
+
+    Mono<Long> addNewlyOverdue(LocalDate dueAfter, LocalDate today);
 }
@@ -118,4 +118,10 @@ public class BlacklistServiceImp implements BlacklistService {
         }
     }
 
+    @Override
+    public Mono<Long> addNewlyOverdue(LocalDate dueAfter, LocalDate today) {
+        return blackListRepository.insertOverdue(dueAfter, today)
+                .onErrorResume(e -> Mono.error(new APIException("An error occurred while blacklisting overdue borrows: " + e.getMessage())));
+    }
+
 }
@@ -22,6 +22,7 @@ import sru.edu.sru_lib_management.auth.domain.dto.AuthResponse
 import sru.edu.sru_lib_management.auth.domain.dto.LoginRequest
 import sru.edu.sru_lib_management.auth.domain.dto.RefreshTokenRequest
 import sru.edu.sru_lib_management.auth.domain.dto.RegisterRequest
+import sru.edu.sru_lib_management.auth.domain.model.OtpVerification
 import sru.edu.sru_lib_management.auth.domain.service.AuthService
 import sru.edu.sru_lib_management.auth.domain.service.HunterService
 import sru.edu.sru_lib_management.auth.domain.service.OtpService
@@ -148,11 +149,16 @@ class AuthHandler(
         val otp: String = verifyRequest.otp
         val email: String = verifyRequest.email
 
-        return when {
-            otp.isBlank() -> ServerResponse.badRequest().bodyValueAndAwait("Invalid OTP")
-            email.isBlank() -> ServerResponse.badRequest().bodyValueAndAwait("Invalid Email")
-            otpService.verifyOtp(otp, email) -> ServerResponse.ok().bodyValueAndAwait("OTP Verified Successfully")
-            else -> ServerResponse.badRequest().bodyValueAndAwait("Invalid or Expired OTP")
+        if (otp.isBlank()) return ServerResponse.badRequest().bodyValueAndAwait("Invalid OTP")
+        if (email.isBlank()) return ServerResponse.badRequest().bodyValueAndAwait("Invalid Email")
+
+        return when (otpService.verifyOtp(otp, email)) {
+            OtpVerification.VERIFIED -> ServerResponse.ok().bodyValueAndAwait("OTP Verified Successfully")
+            OtpVerification.LOCKED ->
+                ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .bodyValueAndAwait("Too many wrong OTP attempts. Please try again later.")
+            OtpVerification.INVALID, OtpVerification.EXPIRED ->
+                ServerResponse.badRequest().bodyValueAndAwait("Invalid or Expired OTP")
         }
     }
 
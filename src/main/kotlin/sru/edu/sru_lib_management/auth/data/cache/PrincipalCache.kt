@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.data.cache
+
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.auth.domain.model.User
+import sru.edu.sru_lib_management.core.data.cache.LruCache
+import sru.edu.sru_lib_management.core.domain.dto.metrics.CacheStats
+import java.time.Duration
+
+/**
+ * User id -> [User] mapping used by AuthRepositoryImp, so authenticating a request
+ * does not read the users table every time.
+ * Entries live for [ttl] at most and are dropped when the user's role or password changes.
+ */
+@Component
+class PrincipalCache(
+    @Value("\${cache.principal.max-size:1000}") maxSize: Int,
+    @param:Value("\${cache.principal.ttl:60s}") private val ttl: Duration
+) {
+    private class Entry(val user: User, val expiresAt: Long)
+
+    private val byUserId = LruCache<String, Entry>("principal-by-user", maxSize)
+
+    suspend fun user(userId: String, loader: suspend (String) -> User?): User? {
+        byUserId.get(userId)?.let { entry ->
+            if (entry.expiresAt - System.nanoTime() > 0) return entry.user
+            byUserId.remove(userId)
+        }
+        return loader(userId)?.also {
+            byUserId.put(userId, Entry(it, System.nanoTime() + ttl.toNanos()))
+        }
+    }
+
+    fun invalidateUser(userId: String) {
+        byUserId.remove(userId)
+    }
+
+    fun invalidateEmail(email: String) {
+        byUserId.removeIf { _, entry -> entry.user.email == email }
+    }
+
+    fun stats(): CacheStats = byUserId.stats()
+}
@@ -10,6 +10,7 @@ import kotlinx.coroutines.reactor.awaitSingle
 import org.springframework.r2dbc.core.*
 import org.springframework.stereotype.Component
 import org.springframework.stereotype.Repository
+import sru.edu.sru_lib_management.auth.data.cache.PrincipalCache
 import sru.edu.sru_lib_management.auth.domain.dto.UserDto
 import sru.edu.sru_lib_management.auth.domain.model.Role
 import sru.edu.sru_lib_management.auth.domain.model.User
@@ -17,7 +18,8 @@ import sru.edu.sru_lib_management.auth.domain.repository.AuthRepository
 
 @Component
 class AuthRepositoryImp(
-    private val client: DatabaseClient
+    private val client: DatabaseClient,
+    private val principalCache: PrincipalCache
 ) : AuthRepository<User> {
 
     override suspend fun save(entity: User) {
@@ -30,15 +32,18 @@ class AuthRepositoryImp(
         return client.sql(UPDATE_USER_QUERY)
             .bindValues(paramMapUpdate(entity))
             .fetch()
-            .awaitRowsUpdated() > 0
+            .awaitRowsUpdated()
+            // by id: the cached principal may carry an email other than the new one
+            .also { principalCache.invalidateUser(entity.userId) } > 0
     }
 
-    override suspend fun findByUserId(userId: String): User? {
-        return client.sql(FIND_USER_BY_ID)
-            .bind("userId", userId)
-            .map { row: Row, _ -> row.userRowMapping()}
-            .awaitSingleOrNull()
-    }
+    override suspend fun findByUserId(userId: String): User? =
+        principalCache.user(userId) { id ->
+            client.sql(FIND_USER_BY_ID)
+                .bind("userId", id)
+                .map { row: Row, _ -> row.userRowMapping()}
+                .awaitSingleOrNull()
+        }
 
     override suspend fun findByEmail(email: String): User? {
         return client.sql(FIND_USER_BY_USERNAME)
@@ -52,7 +57,8 @@ class AuthRepositoryImp(
             .bind("role", role)
             .bind("email", email)
             .fetch()
-            .awaitRowsUpdated() > 0
+            .awaitRowsUpdated()
+            .also { principalCache.invalidateEmail(email) } > 0
     }
 
     override suspend fun getAll(): List<UserDto> {
@@ -69,6 +75,15 @@ class AuthRepositoryImp(
             .awaitSingle()
     }
 
+    override suspend fun findEmailsByRole(role: Role): List<String> {
+        return client.sql(FIND_EMAILS_BY_ROLE)
+            .bind("role", role)
+            .map { row -> row.get("email", String::class.java)!! }
+            .all()
+            .collectList()
+            .awaitSingle()
+    }
+
     override suspend fun getRole(email: String): Role {
         return client.sql("SELECT roles from users WHERE username = :email")
             .bind("email", email)
@@ -112,6 +127,7 @@ class AuthRepositoryImp(
         private const val FIND_USER_BY_USERNAME = "SELECT * from users WHERE email = :email"
         private const val CHANGE_ROLE = "UPDATE users set roles = :role WHERE email = :email"
         private const val GET_ALL_USER = "SELECT username, email, roles FROM users"
+        private const val FIND_EMAILS_BY_ROLE = "SELECT email FROM users WHERE roles = :role"
     }
 
 }
\ No newline at end of file
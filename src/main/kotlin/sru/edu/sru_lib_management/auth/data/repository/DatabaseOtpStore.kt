@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.data.repository
+
+import io.r2dbc.spi.Row
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.r2dbc.core.DatabaseClient
+import org.springframework.r2dbc.core.awaitRowsUpdated
+import org.springframework.r2dbc.core.awaitSingleOrNull
+import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.auth.domain.model.OtpDetails
+import sru.edu.sru_lib_management.auth.domain.model.OtpVerification
+import sru.edu.sru_lib_management.auth.domain.repository.OtpStore
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
+import java.time.Duration
+import java.time.LocalDateTime
+
+/**
+ * OTP codes in the `otp_codes` table, shared by every app instance.
+ * Each state change is a single conditional statement, so concurrent requests
+ * on different nodes cannot use a code twice or skip the attempt counter.
+ * Rows are bounded by the sweeper, which deletes expired codes and finished lockouts.
+ */
+@Component
+@ConditionalOnProperty(name = ["auth.otp.store"], havingValue = "database")
+class DatabaseOtpStore(
+    private val client: DatabaseClient,
+    @param:Value("\${auth.otp.max-attempts:5}") private val maxAttempts: Int,
+    @param:Value("\${auth.otp.lockout:15m}") private val lockout: Duration
+) : OtpStore {
+
+    override suspend fun save(email: String, otp: String, expiresAt: LocalDateTime): Boolean {
+        if (find(email)?.isLocked() == true) return false
+        return client.sql(SAVE_OTP)
+            .bind("email", email)
+            .bind("otp", otp)
+            .bind("expiresAt", expiresAt)
+            .bind("now", indoChinaDateTime())
+            .fetch()
+            .awaitRowsUpdated() > 0
+    }
+
+    override suspend fun verify(email: String, otp: String): OtpVerification {
+        val now = indoChinaDateTime()
+        val consumed = client.sql(CONSUME_OTP)
+            .bind("email", email)
+            .bind("otp", otp)
+            .bind("now", now)
+            .fetch()
+            .awaitRowsUpdated()
+        if (consumed > 0) return OtpVerification.VERIFIED
+
+        val current = find(email) ?: return OtpVerification.INVALID
+        return when {
+            current.isLocked() -> OtpVerification.LOCKED
+            !current.isValid() -> OtpVerification.EXPIRED
+            else -> {
+                client.sql(COUNT_FAILED_ATTEMPT)
+                    .bind("email", email)
+                    .bind("maxAttempts", maxAttempts)
+                    .bind("lockedUntil", now.plus(lockout))
+                    .bind("now", now)
+                    .fetch()
+                    .awaitRowsUpdated()
+                if (find(email)?.isLocked() == true) OtpVerification.LOCKED else OtpVerification.INVALID
+            }
+        }
+    }
+
+    override suspend fun purgeExpired(): Int {
+        return client.sql(PURGE_EXPIRED)
+            .bind("now", indoChinaDateTime())
+            .fetch()
+            .awaitRowsUpdated()
+            .toInt()
+    }
+
+    private suspend fun find(email: String): OtpDetails? {
+        return client.sql(FIND_OTP)
+            .bind("email", email)
+            .map { row: Row, _ ->
+                OtpDetails(
+                    otp = row.get("otp", String::class.java)!!,
+                    expiredTime = row.get("expires_at", LocalDateTime::class.java)!!,
+                    attempts = row.get("attempts", Integer::class.java)!!.toInt(),
+                    lockedUntil = row.get("locked_until", LocalDateTime::class.java)
+                )
+            }
+            .awaitSingleOrNull()
+    }
+
+    companion object {
+        private const val FIND_OTP = "SELECT otp, expires_at, attempts, locked_until FROM otp_codes WHERE email = :email"
+
+        // MySQL applies the assignments left to right: attempts and the code are decided before the lock is read
+        private const val SAVE_OTP = """
+            INSERT INTO otp_codes(email, otp, expires_at, attempts) VALUES (:email, :otp, :expiresAt, 0)
+            ON DUPLICATE KEY UPDATE
+                attempts = IF(expires_at > :now OR locked_until > :now, attempts, 0),
+                otp = IF(locked_until > :now, otp, VALUES(otp)),
+                expires_at = IF(locked_until > :now, expires_at, VALUES(expires_at))
+        """
+
+        private const val CONSUME_OTP = """
+            DELETE FROM otp_codes
+            WHERE email = :email AND otp = :otp AND expires_at > :now
+              AND (locked_until IS NULL OR locked_until <= :now)
+        """
+
+        private const val COUNT_FAILED_ATTEMPT = """
+            UPDATE otp_codes
+            SET attempts = attempts + 1,
+                locked_until = IF(attempts >= :maxAttempts, :lockedUntil, locked_until)
+            WHERE email = :email AND expires_at > :now
+              AND (locked_until IS NULL OR locked_until <= :now)
+        """
+
+        private const val PURGE_EXPIRED = """
+            DELETE FROM otp_codes
+            WHERE expires_at <= :now AND (locked_until IS NULL OR locked_until <= :now)
+        """
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.data.repository
+
+import io.r2dbc.spi.Row
+import kotlinx.coroutines.flow.toList
+import org.springframework.r2dbc.core.*
+import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.auth.domain.model.OutboxEmail
+import sru.edu.sru_lib_management.auth.domain.model.OutboxStatus
+import sru.edu.sru_lib_management.auth.domain.repository.EmailOutboxRepository
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
+import java.time.LocalDateTime
+
+@Component
+class EmailOutboxRepositoryImp(
+    private val client: DatabaseClient
+) : EmailOutboxRepository {
+
+    override suspend fun save(email: OutboxEmail): Long {
+        return client.sql(SAVE_EMAIL)
+            .bind("recipient", email.recipient)
+            .bind("subject", email.subject)
+            .bind("body", email.body)
+            .bind("nextAttemptAt", email.nextAttemptAt ?: indoChinaDateTime())
+            .bind("createdAt", indoChinaDateTime())
+            .filter { statement, next -> next.execute(statement.returnGeneratedValues("id")) }
+            .map { row: Row, _ -> row.get("id", java.lang.Long::class.java)!!.toLong() }
+            .awaitSingle()
+    }
+
+    override suspend fun claimDue(
+        claimToken: String,
+        limit: Int,
+        now: LocalDateTime,
+        staleBefore: LocalDateTime
+    ): List<OutboxEmail> {
+        val claimed = client.sql(CLAIM_DUE)
+            .bind("claimToken", claimToken)
+            .bind("now", now)
+            .bind("staleBefore", staleBefore)
+            .bind("limit", limit)
+            .fetch()
+            .awaitRowsUpdated()
+        if (claimed == 0L) return emptyList()
+        return client.sql(FIND_CLAIMED)
+            .bind("claimToken", claimToken)
+            .map { row: Row, _ -> row.outboxRowMapping() }
+            .flow()
+            .toList()
+    }
+
+    override suspend fun markSent(ids: Collection<Long>, claimToken: String, sentAt: LocalDateTime): Long {
+        if (ids.isEmpty()) return 0
+        return client.sql(MARK_SENT)
+            .bind("ids", ids)
+            .bind("claimToken", claimToken)
+            .bind("sentAt", sentAt)
+            .fetch()
+            .awaitRowsUpdated()
+    }
+
+    override suspend fun markRetry(
+        id: Long,
+        claimToken: String,
+        attempts: Int,
+        nextAttemptAt: LocalDateTime,
+        error: String?
+    ): Boolean {
+        return client.sql(MARK_RETRY)
+            .bind("id", id)
+            .bind("claimToken", claimToken)
+            .bind("attempts", attempts)
+            .bind("nextAttemptAt", nextAttemptAt)
+            .bind("error", error?.take(500))
+            .fetch()
+            .awaitRowsUpdated() > 0
+    }
+
+    override suspend fun markDead(id: Long, claimToken: String, attempts: Int, error: String?): Boolean {
+        return client.sql(MARK_DEAD)
+            .bind("id", id)
+            .bind("claimToken", claimToken)
+            .bind("attempts", attempts)
+            .bind("error", error?.take(500))
+            .fetch()
+            .awaitRowsUpdated() > 0
+    }
+
+    override suspend fun countByStatus(): Map<OutboxStatus, Long> {
+        return client.sql(COUNT_BY_STATUS)
+            .map { row: Row, _ ->
+                OutboxStatus.valueOf(row.get("status", String::class.java)!!) to
+                        row.get("total", java.lang.Long::class.java)!!.toLong()
+            }
+            .flow()
+            .toList()
+            .toMap()
+    }
+
+    private fun Row.outboxRowMapping(): OutboxEmail = OutboxEmail(
+        id = get("id", java.lang.Long::class.java)!!.toLong(),
+        recipient = get("recipient", String::class.java)!!,
+        subject = get("subject", String::class.java)!!,
+        body = get("body", String::class.java)!!,
+        status = OutboxStatus.valueOf(get("status", String::class.java)!!),
+        attempts = get("attempts", Integer::class.java)!!.toInt(),
+        nextAttemptAt = get("next_attempt_at", LocalDateTime::class.java),
+        lastError = get("last_error", String::class.java)
+    )
+
+    companion object {
+        private const val SAVE_EMAIL = """
+            INSERT INTO email_outbox(recipient, subject, body, status, attempts, next_attempt_at, created_at)
+            VALUES (:recipient, :subject, :body, 'PENDING', 0, :nextAttemptAt, :createdAt)
+        """
+        private const val CLAIM_DUE = """
+            UPDATE email_outbox
+            SET status = 'SENDING', claim_token = :claimToken, claimed_at = :now
+            WHERE (status = 'PENDING' AND next_attempt_at <= :now)
+               OR (status = 'SENDING' AND claimed_at < :staleBefore)
+            ORDER BY id
+            LIMIT :limit
+        """
+        private const val FIND_CLAIMED = """
+            SELECT id, recipient, subject, body, status, attempts, next_attempt_at, last_error
+            FROM email_outbox
+            WHERE claim_token = :claimToken AND status = 'SENDING'
+            ORDER BY id
+        """
+        private const val MARK_SENT = """
+            UPDATE email_outbox
+            SET status = 'SENT', sent_at = :sentAt, attempts = attempts + 1, claim_token = NULL, last_error = NULL
+            WHERE id IN (:ids) AND claim_token = :claimToken
+        """
+        private const val MARK_RETRY = """
+            UPDATE email_outbox
+            SET status = 'PENDING', attempts = :attempts, next_attempt_at = :nextAttemptAt,
+                last_error = :error, claim_token = NULL
+            WHERE id = :id AND claim_token = :claimToken
+        """
+        private const val MARK_DEAD = """
+            UPDATE email_outbox
+            SET status = 'DEAD', attempts = :attempts, last_error = :error, claim_token = NULL
+            WHERE id = :id AND claim_token = :claimToken
+        """
+        private const val COUNT_BY_STATUS = "SELECT status, COUNT(*) AS total FROM email_outbox GROUP BY status"
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.data.repository
+
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.auth.domain.model.OtpDetails
+import sru.edu.sru_lib_management.auth.domain.model.OtpVerification
+import sru.edu.sru_lib_management.auth.domain.repository.OtpStore
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
+import java.time.Duration
+import java.time.LocalDateTime
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * OTP codes kept in this node's memory. Only usable with a single app instance
+ * (or sticky sessions); use the database store behind a load balancer.
+ */
+@Component
+@ConditionalOnProperty(name = ["auth.otp.store"], havingValue = "memory", matchIfMissing = true)
+class InMemoryOtpStore(
+    @param:Value("\${auth.otp.max-size:10000}") private val maxSize: Int,
+    @param:Value("\${auth.otp.max-attempts:5}") private val maxAttempts: Int,
+    @param:Value("\${auth.otp.lockout:15m}") private val lockout: Duration
+) : OtpStore {
+
+    private val logger = LoggerFactory.getLogger(InMemoryOtpStore::class.java)
+    private val otpMemory = ConcurrentHashMap<String, OtpDetails>()
+
+    override suspend fun save(email: String, otp: String, expiresAt: LocalDateTime): Boolean {
+        if (otpMemory.size >= maxSize && !otpMemory.containsKey(email)) {
+            purgeExpired()
+            if (otpMemory.size >= maxSize) {
+                logger.warn("OTP store is full ($maxSize), rejecting code for $email")
+                return false
+            }
+        }
+        var saved = false
+        otpMemory.compute(email) { _, current ->
+            when {
+                current?.isLocked() == true -> current
+                else -> {
+                    saved = true
+                    // wrong attempts carry over while the previous code is still valid
+                    val attempts = if (current?.isValid() == true) current.attempts else 0
+                    OtpDetails(otp, expiresAt, attempts)
+                }
+            }
+        }
+        return saved
+    }
+
+    override suspend fun verify(email: String, otp: String): OtpVerification {
+        var result = OtpVerification.INVALID
+        otpMemory.computeIfPresent(email) { _, current ->
+            when {
+                current.isLocked() -> {
+                    result = OtpVerification.LOCKED
+                    current
+                }
+                !current.isValid() -> {
+                    result = OtpVerification.EXPIRED
+                    null
+                }
+                current.otp == otp -> {
+                    result = OtpVerification.VERIFIED
+                    null
+                }
+                current.attempts + 1 >= maxAttempts -> {
+                    result = OtpVerification.LOCKED
+                    current.copy(attempts = current.attempts + 1, lockedUntil = indoChinaDateTime().plus(lockout))
+                }
+                else -> current.copy(attempts = current.attempts + 1)
+            }
+        }
+        return result
+    }
+
+    override suspend fun purgeExpired(): Int {
+        var removed = 0
+        otpMemory.entries.removeIf { (_, details) ->
+            details.isStale().also { if (it) removed++ }
+        }
+        return removed
+    }
+}
@@ -9,17 +9,22 @@ import io.jsonwebtoken.Jwts
 import io.jsonwebtoken.security.Keys
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.security.core.userdetails.UserDetails
 import org.springframework.stereotype.Component
 import sru.edu.sru_lib_management.auth.domain.model.CustomUserDetails
+import sru.edu.sru_lib_management.core.data.cache.LruCache
+import sru.edu.sru_lib_management.core.domain.dto.metrics.CacheStats
 import sru.edu.sru_lib_management.infrastructure.ApiKeyConfig
+import java.security.MessageDigest
 import java.time.Instant
 import java.time.temporal.ChronoUnit
 import java.util.*
 
 @Component
 class JwtToken @Autowired constructor(
-    apiKeyConfig: ApiKeyConfig
+    apiKeyConfig: ApiKeyConfig,
+    @Value("\${cache.jwt-claims.max-size:10000}") claimsCacheSize: Int
 ) {
     private val logger = LoggerFactory.getLogger(JwtToken::class.java)
 
@@ -27,6 +32,9 @@ class JwtToken @Autowired constructor(
     private val secretKey = Keys.hmacShaKeyFor(key)
     private val phaser = Jwts.parser().verifyWith(secretKey).build()
 
+    // token hash -> verified claims, an entry is only served until the token expires
+    private val claimsCache = LruCache<String, TokenClaims>("jwt-claims", claimsCacheSize)
+
     fun generateAccessToken(userId: String, roles: List<String>): BearerToken{
         return createToken(userId, 15, roles)
     }
@@ -46,36 +54,53 @@ class JwtToken @Autowired constructor(
         return BearerToken(token)
     }
 
-    fun extractUserId(token: BearerToken): String{
-        return phaser
-            .parseSignedClaims(token.value)
-            .payload
-            .subject
-    }
+    fun extractUserId(token: BearerToken): String = claims(token).userId
 
     fun isValidToken(token: BearerToken, userDetails: UserDetails?): Boolean{
-        val claims = phaser.parseSignedClaims(token.value).payload
-        val unexpired = claims.expiration.after(Date.from(Instant.now()))
-        val roles = claims["roles"] as List<*>?
+        val claims = claims(token)
+        val unexpired = claims.expiration.isAfter(Instant.now())
         val userId = (userDetails as? CustomUserDetails)?.userId
         val userDetailsRole = userDetails?.authorities?.firstOrNull()?.authority
 
-        val isSubjectCorrect = claims.subject == userId
-        val isRoleCorrect = roles?.contains(userDetailsRole)
+        val isSubjectCorrect = claims.userId == userId
+        val isRoleCorrect = claims.roles.contains(userDetailsRole)
 
-        return unexpired && isSubjectCorrect && isRoleCorrect == true
+        return unexpired && isSubjectCorrect && isRoleCorrect
     }
 
+    /**
+     * Verifies and parses [token] once; later calls with the same token are served from the cache.
+     * Throws the same JwtException as the parser when the token is invalid or expired.
+     */
+    fun claims(token: BearerToken): TokenClaims {
+        val key = tokenHash(token.value)
+        claimsCache.get(key)?.let { cached ->
+            if (cached.expiration.isAfter(Instant.now())) return cached
+            claimsCache.remove(key)
+        }
+        val payload = phaser.parseSignedClaims(token.value).payload
+        return TokenClaims(
+            userId = payload.subject,
+            roles = (payload["roles"] as List<*>?).orEmpty().map { it.toString() },
+            issuedAt = payload.issuedAt.toInstant(),
+            expiration = payload.expiration.toInstant()
+        ).also { claimsCache.put(key, it) }
+    }
+
+    fun claimsCacheStats(): CacheStats = claimsCache.stats()
+
     fun isRefreshToken(token: BearerToken): Boolean = try {
-        val claims = phaser.parseSignedClaims(token.value).payload
-        val issueAt = claims.issuedAt.toInstant()
-        val expiration = claims.expiration.toInstant()
-        val duration = ChronoUnit.MINUTES.between(issueAt, expiration)
+        val claims = claims(token)
+        val duration = ChronoUnit.MINUTES.between(claims.issuedAt, claims.expiration)
         duration == 43200L
     }catch (e: Exception){
         logger.error("${e.message}")
         false
     }
 
+    private fun tokenHash(token: String): String =
+        Base64.getEncoder().encodeToString(
+            MessageDigest.getInstance("SHA-256").digest(token.toByteArray())
+        )
 
 }
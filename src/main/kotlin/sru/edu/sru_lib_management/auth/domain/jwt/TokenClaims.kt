@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.domain.jwt
+
+import java.time.Instant
+
+/** The claims of a verified token that the application reads. */
+data class TokenClaims(
+    val userId: String,
+    val roles: List<String>,
+    val issuedAt: Instant,
+    val expiration: Instant
+)
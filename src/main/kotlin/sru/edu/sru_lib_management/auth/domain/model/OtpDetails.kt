@@ -5,8 +5,22 @@
 
 package sru.edu.sru_lib_management.auth.domain.model
 
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
 import java.time.LocalDateTime
 
-data class OtpDetails(val otp: String, val expiredTime: LocalDateTime){
-    fun isValid() = LocalDateTime.now().isBefore(expiredTime)
+/**
+ * OTP issued to an email. [attempts] counts wrong codes entered for it;
+ * once it reaches the limit the email is locked until [lockedUntil].
+ */
+data class OtpDetails(
+    val otp: String,
+    val expiredTime: LocalDateTime,
+    val attempts: Int = 0,
+    val lockedUntil: LocalDateTime? = null
+){
+    fun isValid() = indoChinaDateTime().isBefore(expiredTime)
+    fun isLocked() = lockedUntil?.isAfter(indoChinaDateTime()) == true
+
+    // nothing left to keep: the code expired and the email is not locked
+    fun isStale() = !isValid() && !isLocked()
 }
@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.domain.model
+
+enum class OtpVerification {
+    VERIFIED,
+    INVALID,
+    EXPIRED,
+    LOCKED
+}
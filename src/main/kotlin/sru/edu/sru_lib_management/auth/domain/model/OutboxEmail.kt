@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.domain.model
+
+import java.time.LocalDateTime
+
+/** An email waiting in (or sent from) the `email_outbox` table. */
+data class OutboxEmail(
+    val id: Long? = null,
+    val recipient: String,
+    val subject: String,
+    val body: String,
+    val status: OutboxStatus = OutboxStatus.PENDING,
+    val attempts: Int = 0,
+    val nextAttemptAt: LocalDateTime? = null,
+    val lastError: String? = null
+)
+
+enum class OutboxStatus {
+    PENDING,
+    SENDING,
+    SENT,
+    // gave up after email.outbox.max-attempts
+    DEAD
+}
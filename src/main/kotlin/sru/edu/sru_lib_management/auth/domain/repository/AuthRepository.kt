@@ -18,6 +18,7 @@ interface AuthRepository<T> {
     suspend fun findByEmail(email: String): User?
     suspend fun changeRole(email: String, role: Role): Boolean
     suspend fun getAll(): List<UserDto>
+    suspend fun findEmailsByRole(role: Role): List<String>
 
     suspend fun getRole(email: String): Role
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.domain.repository
+
+import org.springframework.stereotype.Repository
+import sru.edu.sru_lib_management.auth.domain.model.OutboxEmail
+import sru.edu.sru_lib_management.auth.domain.model.OutboxStatus
+import java.time.LocalDateTime
+
+@Repository
+interface EmailOutboxRepository {
+    suspend fun save(email: OutboxEmail): Long
+
+    /**
+     * Marks up to [limit] due emails as SENDING under [claimToken] and returns them.
+     * Emails left in SENDING since before [staleBefore] (crashed worker) are claimed again.
+     */
+    suspend fun claimDue(claimToken: String, limit: Int, now: LocalDateTime, staleBefore: LocalDateTime): List<OutboxEmail>
+
+    /*
+     * Updates only rows still claimed under [claimToken]; a row claimed again by another worker
+     * (its claim went stale) is left alone. markSent returns the rows updated, the others false on a lost claim.
+     */
+    suspend fun markSent(ids: Collection<Long>, claimToken: String, sentAt: LocalDateTime): Long
+    suspend fun markRetry(id: Long, claimToken: String, attempts: Int, nextAttemptAt: LocalDateTime, error: String?): Boolean
+    suspend fun markDead(id: Long, claimToken: String, attempts: Int, error: String?): Boolean
+    suspend fun countByStatus(): Map<OutboxStatus, Long>
+}
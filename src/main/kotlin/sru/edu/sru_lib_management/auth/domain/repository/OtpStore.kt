@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.domain.repository
+
+import sru.edu.sru_lib_management.auth.domain.model.OtpVerification
+import java.time.LocalDateTime
+
+/**
+ * Where issued OTP codes live until they are verified or expire.
+ * The implementation is chosen with `auth.otp.store`:
+ * `memory` (single node, default) or `database` (shared by every replica).
+ */
+interface OtpStore {
+    /** Stores [otp] for [email], replacing any previous code. Returns false when the email is locked or the store is full. */
+    suspend fun save(email: String, otp: String, expiresAt: LocalDateTime): Boolean
+
+    /** Checks [otp]; a verified code is removed so it can only be used once. */
+    suspend fun verify(email: String, otp: String): OtpVerification
+
+    /** Removes expired codes and finished lockouts, returns how many were removed. */
+    suspend fun purgeExpired(): Int
+}
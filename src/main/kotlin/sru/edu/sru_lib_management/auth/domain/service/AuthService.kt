@@ -9,8 +9,8 @@ import kotlinx.coroutines.reactor.awaitSingleOrNull
 import org.slf4j.LoggerFactory
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService
 import org.springframework.security.core.userdetails.UserDetails
-import org.springframework.security.crypto.password.PasswordEncoder
 import org.springframework.stereotype.Service
+import org.springframework.web.server.ResponseStatusException
 import sru.edu.sru_lib_management.auth.domain.dto.LoginRequest
 import sru.edu.sru_lib_management.auth.domain.dto.RegisterRequest
 import sru.edu.sru_lib_management.auth.domain.jwt.BearerToken
@@ -27,14 +27,14 @@ class AuthService(
     private val userDetailsService: ReactiveUserDetailsService,
     private val authRepository: AuthRepository<User>,
     private val jwtSupport: JwtToken,
-    private val encoder: PasswordEncoder
+    private val passwordHasher: PasswordHasher
 ){
     private val logger = LoggerFactory.getLogger(AuthService::class.java)
 
     suspend fun register(request: RegisterRequest): AuthResult<String> {
         return runCatching {
 
-            val encryptPassword = encoder.encode(request.password)
+            val encryptPassword = passwordHasher.encode(request.password)
             val newUser = User(
                 userId = UUID.randomUUID().toString(),
                 username = request.username,
@@ -49,6 +49,8 @@ class AuthService(
                 AuthResult.Success(it)
             },
             onFailure = {
+                // hashing queue full -> 429
+                if (it is ResponseStatusException) throw it
                 AuthResult.Failure("${it.message}")
                 throw Exception("${it.message}")
             }
@@ -66,13 +68,15 @@ class AuthService(
                 ?: return AuthResult.InputError("Invalid username or password.")
 
             // check password
-            if (encoder.matches(request.password, userDetails.password)) {
+            if (passwordHasher.matches(request.password, userDetails.password)) {
                 val userId = authRepository.findByEmail(request.email)?.userId ?: "Unknown USER"
                 authSuccess(userId, userDetails)
             } else {
                 AuthResult.InputError("Invalid password")
             }
 
+        } catch (e: ResponseStatusException){
+            throw e
         } catch (e: Exception){
             AuthResult.Failure("${e.printStackTrace()}")
         }
@@ -103,7 +107,7 @@ class AuthService(
         return try {
             val existingUser = authRepository.findByEmail(email) ?: return AuthResult.InputError("Invalid email.")
             // encrypt password
-            val encryptPassword = encoder.encode(password)
+            val encryptPassword = passwordHasher.encode(password)
             val userUpdate = User(
                 userId = existingUser.userId,
                 email = email,
@@ -116,6 +120,8 @@ class AuthService(
                 AuthResult.Success("Success.")
             else
                 AuthResult.InputError("Fail.")
+        }catch (e: ResponseStatusException){
+            throw e
         }catch (e: Exception){
             e.printStackTrace()
             AuthResult.Failure(e.message.toString())
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.domain.service
+
+import jakarta.annotation.PreDestroy
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Service
+import sru.edu.sru_lib_management.auth.domain.model.OutboxEmail
+import sru.edu.sru_lib_management.auth.domain.model.OutboxStatus
+import sru.edu.sru_lib_management.auth.domain.model.Role
+import sru.edu.sru_lib_management.auth.domain.model.User
+import sru.edu.sru_lib_management.auth.domain.repository.AuthRepository
+import sru.edu.sru_lib_management.auth.domain.repository.EmailOutboxRepository
+import sru.edu.sru_lib_management.core.domain.dto.metrics.EmailOutboxStats
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
+import java.time.Duration
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.min
+
+/**
+ * Persistent queue for outgoing email (OTP codes, overdue reminders, notifications).
+ *
+ * [enqueue] only inserts a row into `email_outbox`; a single worker claims due rows,
+ * sends them in batches of `email.outbox.batch-size` per SMTP connection with at most
+ * `email.outbox.concurrency` connections at once, and retries failures with exponential
+ * backoff until `email.outbox.max-attempts`, after which the row is marked DEAD.
+ * Claiming is done in the database, so several app instances can share the table.
+ */
+@Service
+class EmailOutbox(
+    private val repository: EmailOutboxRepository,
+    private val emailService: EmailService,
+    private val authRepository: AuthRepository<User>,
+    @param:Value("\${email.outbox.batch-size:20}") private val batchSize: Int,
+    @param:Value("\${email.outbox.concurrency:2}") private val concurrency: Int,
+    @param:Value("\${email.outbox.max-attempts:6}") private val maxAttempts: Int,
+    @param:Value("\${email.outbox.initial-backoff:30s}") private val initialBackoff: Duration,
+    @param:Value("\${email.outbox.max-backoff:30m}") private val maxBackoff: Duration,
+    @param:Value("\${email.outbox.poll-interval:10s}") private val pollInterval: Duration,
+    @param:Value("\${email.outbox.claim-timeout:5m}") private val claimTimeout: Duration
+) {
+    private val logger = LoggerFactory.getLogger(EmailOutbox::class.java)
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private val wakeUp = Channel<Unit>(Channel.CONFLATED)
+
+    private val batches = AtomicLong()
+    private val delivered = AtomicLong()
+    private val retried = AtomicLong()
+    private val deadLettered = AtomicLong()
+
+    suspend fun enqueue(to: String, subject: String, body: String): Long {
+        val id = repository.save(OutboxEmail(recipient = to, subject = subject, body = body))
+        wakeUp.trySend(Unit)
+        return id
+    }
+
+    /** Queues one email per user of [role]; returns how many were queued. */
+    suspend fun enqueueToRole(role: Role, subject: String, body: String): Int {
+        val recipients = authRepository.findEmailsByRole(role)
+        recipients.forEach { repository.save(OutboxEmail(recipient = it, subject = subject, body = body)) }
+        if (recipients.isNotEmpty()) wakeUp.trySend(Unit)
+        return recipients.size
+    }
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun start() {
+        scope.launch {
+            while (isActive) {
+                try {
+                    drain()
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    logger.error("Email outbox worker failed: ${e.message}")
+                }
+                // wait for a new email or the next poll (retries that became due)
+                withTimeoutOrNull(pollInterval.toMillis()) { wakeUp.receive() }
+            }
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        scope.cancel()
+    }
+
+    suspend fun stats(): EmailOutboxStats {
+        val counts = repository.countByStatus()
+        return EmailOutboxStats(
+            pending = counts[OutboxStatus.PENDING] ?: 0,
+            sending = counts[OutboxStatus.SENDING] ?: 0,
+            sent = counts[OutboxStatus.SENT] ?: 0,
+            dead = counts[OutboxStatus.DEAD] ?: 0,
+            batches = batches.get(),
+            delivered = delivered.get(),
+            retried = retried.get(),
+            deadLettered = deadLettered.get()
+        )
+    }
+
+    private suspend fun drain() {
+        val limit = batchSize * concurrency
+        while (true) {
+            val now = indoChinaDateTime()
+            val claimToken = UUID.randomUUID().toString()
+            val claimed = repository.claimDue(
+                claimToken = claimToken,
+                limit = limit,
+                now = now,
+                staleBefore = now.minus(claimTimeout)
+            )
+            if (claimed.isEmpty()) return
+
+            // one batch per SMTP connection, at most `concurrency` connections at once
+            coroutineScope {
+                claimed.chunked(batchSize)
+                    .map { batch -> async { send(batch, claimToken) } }
+                    .awaitAll()
+            }
+            if (claimed.size < limit) return
+        }
+    }
+
+    // a claim that went stale while sending was taken by another worker, that worker owns the rows now
+    private suspend fun send(batch: List<OutboxEmail>, claimToken: String) {
+        batches.incrementAndGet()
+        val failed = emailService.sendBatch(batch)
+        val sentIds = batch.mapNotNull { it.id }.filterNot { it in failed }
+        val marked = repository.markSent(sentIds, claimToken, indoChinaDateTime())
+        delivered.addAndGet(marked)
+        if (marked < sentIds.size)
+            logger.warn("${sentIds.size - marked} sent email(s) of claim $claimToken were claimed again, they may be sent twice")
+
+        batch.filter { it.id in failed }.forEach { email ->
+            val attempts = email.attempts + 1
+            val error = failed[email.id]?.message
+            if (attempts >= maxAttempts) {
+                if (!repository.markDead(email.id!!, claimToken, attempts, error)) {
+                    logger.warn("Email ${email.id}: claim lost, not moved to DEAD")
+                    return@forEach
+                }
+                deadLettered.incrementAndGet()
+                logger.error("Email ${email.id} to ${email.recipient} moved to DEAD after $attempts attempts: $error")
+            } else {
+                if (!repository.markRetry(email.id!!, claimToken, attempts, indoChinaDateTime().plus(backoff(attempts)), error)) {
+                    logger.warn("Email ${email.id}: claim lost, retry not scheduled")
+                    return@forEach
+                }
+                retried.incrementAndGet()
+                logger.warn("Email ${email.id} to ${email.recipient} failed (attempt $attempts): $error")
+            }
+        }
+    }
+
+    // initial-backoff * 2^(attempts - 1), capped at max-backoff
+    private fun backoff(attempts: Int): Duration {
+        val factor = 1L shl min(attempts - 1, 20)
+        return initialBackoff.multipliedBy(factor).coerceAtMost(maxBackoff)
+    }
+}
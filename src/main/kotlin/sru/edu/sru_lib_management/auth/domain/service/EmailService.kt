@@ -6,12 +6,16 @@
 package sru.edu.sru_lib_management.auth.domain.service
 
 import jakarta.mail.internet.InternetAddress
+import jakarta.mail.internet.MimeMessage
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import org.springframework.beans.factory.annotation.Value
+import org.springframework.mail.MailException
+import org.springframework.mail.MailSendException
 import org.springframework.mail.javamail.JavaMailSender
 import org.springframework.mail.javamail.MimeMessageHelper
 import org.springframework.stereotype.Service
+import sru.edu.sru_lib_management.auth.domain.model.OutboxEmail
 
 @Service
 class EmailService(
@@ -21,14 +25,55 @@ class EmailService(
     suspend fun sendEmail(to: String, subject: String, text: String){
 
         withContext(Dispatchers.IO){
-            val message = mailSender.createMimeMessage()
-            val helper = MimeMessageHelper(message, true)
-            message.setFrom(InternetAddress("SRU_LIBRARY"))
-            helper.setTo(to)
-            helper.setSubject(subject)
-            helper.setText(text, true)
-            mailSender.send(message)
+            mailSender.send(createMessage(to, subject, text))
             println("Email has sent")
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends [emails] in one call, so JavaMailSender delivers them over a single SMTP connection.
+     * Returns the id and error of every email that was not sent; empty when all went through.
+     * An email whose message can't be built (e.g. a bad address) fails alone, the others are still sent.
+     */
+    suspend fun sendBatch(emails: List<OutboxEmail>): Map<Long, Exception> {
+        if (emails.isEmpty()) return emptyMap()
+        return withContext(Dispatchers.IO) {
+            val notBuilt = HashMap<Long, Exception>()
+            val messages = HashMap<MimeMessage, OutboxEmail>()
+            emails.forEach { email ->
+                try {
+                    messages[createMessage(email.recipient, email.subject, email.body)] = email
+                } catch (e: Exception) {
+                    notBuilt[email.id!!] = e
+                }
+            }
+            if (messages.isEmpty()) return@withContext notBuilt
+            val notSent = try {
+                mailSender.send(*messages.keys.toTypedArray())
+                emptyMap()
+            } catch (e: MailSendException) {
+                val failed = e.failedMessages
+                if (failed.isEmpty())
+                    messages.values.associate { it.id!! to e }
+                else
+                    failed.entries.mapNotNull { (message, error) ->
+                        messages[message]?.let { it.id!! to error }
+                    }.toMap()
+            } catch (e: MailException) {
+                // connection / authentication failure, nothing was sent
+                messages.values.associate { it.id!! to e }
+            }
+            notBuilt + notSent
+        }
+    }
+
+    private fun createMessage(to: String, subject: String, text: String): MimeMessage {
+        val message = mailSender.createMimeMessage()
+        val helper = MimeMessageHelper(message, true)
+        message.setFrom(InternetAddress("SRU_LIBRARY"))
+        helper.setTo(to)
+        helper.setSubject(subject)
+        helper.setText(text, true)
+        return message
+    }
+}
@@ -7,20 +7,26 @@ package sru.edu.sru_lib_management.auth.domain.service
 
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.launch
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.scheduling.annotation.Scheduled
 import org.springframework.stereotype.Service
-import sru.edu.sru_lib_management.auth.domain.model.OtpDetails
+import sru.edu.sru_lib_management.auth.domain.model.OtpVerification
+import sru.edu.sru_lib_management.auth.domain.repository.OtpStore
 import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
-import java.util.concurrent.ConcurrentHashMap
+import java.time.Duration
 import kotlin.random.Random
 
 @Service
 class OtpService(
-    private val emailService: EmailService,
+    private val emailOutbox: EmailOutbox,
+    private val otpStore: OtpStore,
+    @param:Value("\${auth.otp.ttl:3m}") private val otpTtl: Duration
     //private val hunterService: HunterService
 ) {
-    private val otpMemory = ConcurrentHashMap <String, OtpDetails>()
     private val logger = org.slf4j.LoggerFactory.getLogger(this::class.java)
+    private val sweepScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
 
     fun generateOtp(): String{
         val codeLength = 6
@@ -33,7 +39,10 @@ class OtpService(
     suspend fun generateAndSent(email: String): String? {
         return try {
             val otpCode = generateOtp()
-            otpMemory[email] = OtpDetails(otpCode, indoChinaDateTime().plusMinutes(3))
+            if (!otpStore.save(email, otpCode, indoChinaDateTime().plus(otpTtl))) {
+                logger.warn("OTP not issued for $email (locked or store full)")
+                return null
+            }
             val message = """
                 <p>Hi $email,</p>
     
@@ -46,13 +55,8 @@ class OtpService(
                 <p>Thanks,<br>
                 The SRU Library account team</p>
             """
-            CoroutineScope(Dispatchers.IO).launch {
-                try {
-                    emailService.sendEmail(email, "Your OTP code", message)
-                } catch (e: Exception) {
-                    logger.error("Failed to send email: ${e.message}")
-                }
-            }
+            // delivered (and retried) by the outbox worker
+            emailOutbox.enqueue(email, "Your OTP code", message)
             otpCode
         }catch (e: Exception){
             logger.error("${e.message}")
@@ -60,13 +64,19 @@ class OtpService(
         }
     }
 
-    fun verifyOtp(otp: String, email: String): Boolean{
-        val otpDetails = otpMemory[email]
-        if (otpDetails != null && otpDetails.isValid() && otpDetails.otp == otp){
-            otpMemory.remove(email)
-            return true
+    suspend fun verifyOtp(otp: String, email: String): OtpVerification =
+        otpStore.verify(email, otp)
+
+    @Scheduled(fixedDelayString = "\${auth.otp.sweep-interval:1m}")
+    fun sweepExpiredOtp() {
+        sweepScope.launch {
+            try {
+                val removed = otpStore.purgeExpired()
+                if (removed > 0) logger.debug("Removed $removed expired OTP entries")
+            } catch (e: Exception) {
+                logger.error("Failed to sweep OTP store: ${e.message}")
+            }
         }
-        return false
     }
 
-}
\ No newline at end of file
+}
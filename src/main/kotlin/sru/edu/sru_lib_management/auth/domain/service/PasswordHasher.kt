@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.auth.domain.service
+
+import jakarta.annotation.PreDestroy
+import kotlinx.coroutines.future.await
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.http.HttpStatus
+import org.springframework.security.crypto.password.PasswordEncoder
+import org.springframework.stereotype.Service
+import org.springframework.web.server.ResponseStatusException
+import sru.edu.sru_lib_management.core.domain.dto.metrics.HashingStats
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Runs BCrypt hashing on a small dedicated pool instead of the Netty event loop.
+ * The pool's queue is bounded; when it is full the call fails with 429 Too Many Requests
+ * so a login burst cannot pile up work and starve the other requests.
+ */
+@Service
+class PasswordHasher(
+    private val encoder: PasswordEncoder,
+    @param:Value("\${auth.hashing.threads:2}") private val threads: Int,
+    @param:Value("\${auth.hashing.queue-capacity:64}") private val queueCapacity: Int
+) {
+    private val logger = LoggerFactory.getLogger(PasswordHasher::class.java)
+
+    private val completed = AtomicLong()
+    private val rejected = AtomicLong()
+    private val totalWaitNanos = AtomicLong()
+    private val totalHashNanos = AtomicLong()
+    private val maxHashNanos = AtomicLong()
+
+    private val executor = ThreadPoolExecutor(
+        threads, threads,
+        0L, TimeUnit.MILLISECONDS,
+        ArrayBlockingQueue(queueCapacity),
+        object : ThreadFactory {
+            private val count = AtomicInteger()
+            override fun newThread(r: Runnable) =
+                Thread(r, "password-hasher-${count.incrementAndGet()}").apply { isDaemon = true }
+        },
+        ThreadPoolExecutor.AbortPolicy()
+    )
+
+    suspend fun encode(rawPassword: String): String =
+        submit { encoder.encode(rawPassword) }
+
+    suspend fun matches(rawPassword: String, encodedPassword: String): Boolean =
+        submit { encoder.matches(rawPassword, encodedPassword) }
+
+    fun stats(): HashingStats {
+        val done = completed.get()
+        return HashingStats(
+            threads = threads,
+            activeThreads = executor.activeCount,
+            queueDepth = executor.queue.size,
+            queueCapacity = queueCapacity,
+            completed = done,
+            rejected = rejected.get(),
+            averageWaitMs = if (done == 0L) 0.0 else totalWaitNanos.get() / done / 1_000_000.0,
+            averageHashMs = if (done == 0L) 0.0 else totalHashNanos.get() / done / 1_000_000.0,
+            maxHashMs = maxHashNanos.get() / 1_000_000.0
+        )
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdown()
+    }
+
+    private suspend fun <T> submit(block: () -> T): T {
+        val queuedAt = System.nanoTime()
+        val future = try {
+            CompletableFuture.supplyAsync({
+                val startedAt = System.nanoTime()
+                try {
+                    block()
+                } finally {
+                    record(startedAt - queuedAt, System.nanoTime() - startedAt)
+                }
+            }, executor)
+        } catch (e: RejectedExecutionException) {
+            rejected.incrementAndGet()
+            logger.warn("Password hashing queue is full ($queueCapacity), rejecting request.")
+            throw ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many requests, please try again.")
+        }
+        return future.await()
+    }
+
+    private fun record(waitNanos: Long, hashNanos: Long) {
+        completed.incrementAndGet()
+        totalWaitNanos.addAndGet(waitNanos)
+        totalHashNanos.addAndGet(hashNanos)
+        maxHashNanos.accumulateAndGet(hashNanos, ::maxOf)
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.data.cache
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import org.slf4j.LoggerFactory
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.core.domain.model.Borrow
+import sru.edu.sru_lib_management.core.domain.repository.BorrowRepository
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * In-memory index of the loans that are not returned yet, by borrow id and by student,
+ * so "what does this student hold?" needs no query and the due date events can be queued.
+ *
+ * - Loaded from borrow_books when the application is ready, reloaded at midnight (Asia/Phnom_Penh)
+ *   to pick up loans written by other instances.
+ * - Kept up to date by BorrowServiceImp on borrow, update, return, extend and delete (write-through).
+ *
+ * The index is never used to refuse a write: the checkout transaction decides the limit and a loan
+ * found here is only tried first.
+ * Until the first load finished [isLoaded] is false and callers should fall back to the database.
+ */
+@Component
+class ActiveLoans(
+    private val borrowRepository: BorrowRepository
+) {
+
+    private val logger = LoggerFactory.getLogger(ActiveLoans::class.java)
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+
+    // borrow id -> loan
+    private val loans = ConcurrentHashMap<Long, Borrow>()
+
+    // student id -> borrow id -> loan, the inner map is replaced on every write
+    private val byStudent = ConcurrentHashMap<Long, Map<Long, Borrow>>()
+
+    // loans written while reload() reads the table; the written state wins over the loaded row
+    private val touched = ConcurrentHashMap.newKeySet<Long>()
+
+    private val reloadListeners = mutableListOf<(Collection<Borrow>) -> Unit>()
+
+    @Volatile
+    private var loaded = false
+
+    val isLoaded: Boolean get() = loaded
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun loadOnStartup() {
+        scope.launch { reload() }
+    }
+
+    @Scheduled(cron = "0 0 0 * * ?", zone = "Asia/Phnom_Penh")
+    fun reloadDaily() {
+        scope.launch { reload() }
+    }
+
+    /** [listener] gets all loans after every reload, e.g. to rebuild state derived from them. */
+    fun onReload(listener: (Collection<Borrow>) -> Unit) {
+        synchronized(reloadListeners) { reloadListeners.add(listener) }
+    }
+
+    /** Rebuilds the index from the database. */
+    suspend fun reload() {
+        touched.clear()
+        val fresh = HashMap<Long, Borrow>()
+        try {
+            borrowRepository.getActiveBorrows().collect { borrow ->
+                borrow.borrowId?.let { fresh[it] = borrow }
+            }
+        } catch (e: Exception) {
+            logger.error("Active loans not loaded: ${e.message}")
+            return
+        }
+        val snapshot = synchronized(this) {
+            fresh.forEach { (id, borrow) -> if (id !in touched) loans[id] = borrow }
+            loans.keys.removeIf { it !in fresh && it !in touched }
+            byStudent.clear()
+            loans.values.groupBy { it.studentId }.forEach { (studentId, list) ->
+                byStudent[studentId] = list.associateBy { it.borrowId!! }
+            }
+            loaded = true
+            loans.values.toList()
+        }
+        synchronized(reloadListeners) { reloadListeners.forEach { it(snapshot) } }
+        logger.info("Active loans loaded: ${snapshot.size} loans of ${byStudent.size} students")
+    }
+
+    /** Records a new or changed loan; a returned loan is removed. */
+    fun put(borrow: Borrow) {
+        val borrowId = borrow.borrowId ?: return
+        if (borrow.isBringBack) {
+            remove(borrowId)
+            return
+        }
+        synchronized(this) {
+            touched.add(borrowId)
+            loans.put(borrowId, borrow)?.let { old -> unindex(old) }
+            byStudent[borrow.studentId] = (byStudent[borrow.studentId] ?: emptyMap()) + (borrowId to borrow)
+        }
+    }
+
+    /** Removes a returned or deleted loan. */
+    fun remove(borrowId: Long) {
+        synchronized(this) {
+            touched.add(borrowId)
+            loans.remove(borrowId)?.let { old -> unindex(old) }
+        }
+    }
+
+    operator fun get(borrowId: Long): Borrow? = loans[borrowId]
+
+    /** Loans [studentId] holds, earliest due date first. */
+    fun loansOf(studentId: Long): List<Borrow> =
+        byStudent[studentId]?.values?.sortedWith(compareBy({ it.giveBackDate }, { it.borrowId })) ?: emptyList()
+
+    fun countOf(studentId: Long): Int = byStudent[studentId]?.size ?: 0
+
+    private fun unindex(borrow: Borrow) {
+        val borrowId = borrow.borrowId ?: return
+        val remaining = (byStudent[borrow.studentId] ?: return) - borrowId
+        if (remaining.isEmpty()) byStudent.remove(borrow.studentId)
+        else byStudent[borrow.studentId] = remaining
+    }
+}
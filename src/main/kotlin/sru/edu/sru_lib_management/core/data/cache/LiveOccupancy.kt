@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.data.cache
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.slf4j.LoggerFactory
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.core.domain.model.Attend
+import sru.edu.sru_lib_management.core.domain.model.TodayVisit
+import sru.edu.sru_lib_management.core.domain.repository.AttendRepository
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
+import java.time.LocalDate
+import java.time.LocalTime
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * In-memory index of today's visits, so "is this visitor inside?" and
+ * "how many people are inside?" don't need a query.
+ *
+ * - Loaded from the attend table when the application is ready.
+ * - Cleared at midnight (Asia/Phnom_Penh).
+ * - Kept up to date by the scan paths and admin edits in AttendServiceImp (write-through).
+ *
+ * Until the first load finished [isLoaded] is false and callers should fall back to the database.
+ */
+@Component
+class LiveOccupancy(
+    private val attendRepository: AttendRepository
+) {
+
+    private val logger = LoggerFactory.getLogger(LiveOccupancy::class.java)
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+
+    private class Day(val date: LocalDate) {
+        // entry id (student id / staff id) -> visitor id
+        val visitorIds = ConcurrentHashMap<String, Long>()
+        // visitor id -> latest visit of the day
+        val lastVisits = ConcurrentHashMap<Long, TodayVisit>()
+        // visitor id -> attend id of the visit that is still open
+        val openVisits = ConcurrentHashMap<Long, Long>()
+
+        // writes made while this index is loading, so a row read before the write doesn't undo it:
+        // visitor id -> exit time, the last auto exit, and attend ids edited or deleted
+        val exits = ConcurrentHashMap<Long, LocalTime>()
+        @Volatile
+        var autoExit: LocalTime? = null
+        val edited: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+    }
+
+    @Volatile
+    private var day = Day(indoChinaDate())
+
+    // index being rebuilt by reload(); scan writes go to it as well
+    @Volatile
+    private var loading: Day? = null
+
+    @Volatile
+    private var loaded = false
+
+    // one reload at a time, a second one waits and then loads the newer state
+    private val reloadLock = Mutex()
+
+    val isLoaded: Boolean get() = loaded
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun loadOnStartup() {
+        scope.launch { reload() }
+    }
+
+    @Scheduled(cron = "0 0 0 * * ?", zone = "Asia/Phnom_Penh")
+    fun rollOver() {
+        currentDay()
+        logger.info("Live occupancy rolled over to ${day.date}")
+    }
+
+    /**
+     * Rebuilds today's index from the database and swaps it in when complete.
+     * Scans that happen while loading are written to both indexes, and a loaded row
+     * never replaces a newer visit or reopens a closed one.
+     */
+    suspend fun reload() = reloadLock.withLock {
+        val today = Day(indoChinaDate())
+        loading = today
+        runCatching {
+            attendRepository.getVisitsByDate(today.date).collect { merge(today, it) }
+        }.onSuccess {
+            day = today
+            loaded = true
+            logger.info("Live occupancy loaded: ${today.lastVisits.size} visitors, ${today.openVisits.size} inside")
+        }.onFailure {
+            logger.error("Live occupancy load failed", it)
+        }
+        loading = null
+    }
+
+    fun visitorIdOf(entryId: String): Long? = currentDay().visitorIds[entryId]
+
+    fun lastVisit(entryId: String): TodayVisit? {
+        val current = currentDay()
+        val visitorId = current.visitorIds[entryId] ?: return null
+        return current.lastVisits[visitorId]
+    }
+
+    fun openAttendId(visitorId: Long): Long? = currentDay().openVisits[visitorId]
+
+    fun isInside(visitorId: Long): Boolean = currentDay().openVisits.containsKey(visitorId)
+
+    fun insideCount(): Int = currentDay().openVisits.size
+
+    /**
+     * New attend inserted for [entryId]. Any earlier open visit of the same visitor
+     * was closed by the same call, so the new attend simply replaces it.
+     */
+    fun recordEntry(entryId: String, attend: Attend) {
+        val visit = TodayVisit(
+            attendId = attend.attendId!!,
+            visitorId = attend.visitorId!!,
+            studentId = entryId.toLongOrNull(),
+            staffId = if (entryId.toLongOrNull() == null) entryId else null,
+            entryTime = attend.entryTimes,
+            exitTime = attend.exitTimes
+        )
+        targets(attend.attendDate).forEach { target ->
+            target.visitorIds[entryId] = visit.visitorId
+            target.lastVisits[visit.visitorId] = visit
+            if (visit.exitTime == null) target.openVisits[visit.visitorId] = visit.attendId
+            else target.openVisits.remove(visit.visitorId)
+        }
+    }
+
+    fun recordExit(visitorId: Long, exitTime: LocalTime) {
+        targets(indoChinaDate()).forEach { target ->
+            if (target === loading) target.exits[visitorId] = exitTime
+            target.openVisits.remove(visitorId)
+            target.lastVisits.computeIfPresent(visitorId) { _, visit ->
+                if (visit.exitTime == null) visit.copy(exitTime = exitTime) else visit
+            }
+        }
+    }
+
+    /**
+     * Session auto exit closed every open visit that entered at or before [exitTime].
+     */
+    fun recordAutoExit(exitTime: LocalTime) {
+        targets(indoChinaDate()).forEach { target ->
+            if (target === loading) target.autoExit = exitTime
+            target.openVisits.forEach { (visitorId, attendId) ->
+                val visit = target.lastVisits[visitorId]
+                if (visit != null && visit.attendId == attendId && !visit.entryTime.isAfter(exitTime)) {
+                    target.openVisits.remove(visitorId)
+                    target.lastVisits[visitorId] = visit.copy(exitTime = exitTime)
+                }
+            }
+        }
+    }
+
+    /**
+     * An admin edited or deleted visit [attendId] of [visitorId] on [date]; [visits] are the
+     * visitor's visits of that day as stored now. Replaces only that visitor's state.
+     */
+    fun recordEdit(attendId: Long, visitorId: Long, date: LocalDate, visits: List<TodayVisit>) {
+        val latest = visits.maxByOrNull { it.attendId }
+        targets(date).forEach { target ->
+            if (target === loading) target.edited.add(attendId)
+            if (latest == null) {
+                target.lastVisits.remove(visitorId)
+                target.openVisits.remove(visitorId)
+                return@forEach
+            }
+            target.visitorIds[latest.entryId] = visitorId
+            target.lastVisits[visitorId] = latest
+            if (latest.exitTime == null) target.openVisits[visitorId] = latest.attendId
+            else target.openVisits.remove(visitorId)
+        }
+    }
+
+    private fun merge(target: Day, row: TodayVisit) {
+        if (row.attendId in target.edited) return
+        val visit = if (row.exitTime == null) target.exitOf(row)?.let { row.copy(exitTime = it) } ?: row else row
+        target.visitorIds.putIfAbsent(visit.entryId, visit.visitorId)
+        val merged = target.lastVisits.merge(visit.visitorId, visit) { old, new ->
+            when {
+                new.attendId > old.attendId -> new
+                else -> old
+            }
+        }
+        if (merged === visit && visit.exitTime == null)
+            target.openVisits.putIfAbsent(visit.visitorId, visit.attendId)
+    }
+
+    // exit recorded during the load that closes an open visit read from the database
+    private fun Day.exitOf(visit: TodayVisit): LocalTime? =
+        exits[visit.visitorId]?.takeUnless { visit.entryTime.isAfter(it) }
+            ?: autoExit?.takeUnless { visit.entryTime.isAfter(it) }
+
+    private fun targets(date: LocalDate): List<Day> =
+        listOfNotNull(currentDay(), loading).filter { it.date == date }
+
+    private fun currentDay(): Day {
+        val current = day
+        val today = indoChinaDate()
+        if (current.date == today) return current
+        synchronized(this) {
+            if (day.date != today) day = Day(today)
+            return day
+        }
+    }
+
+}
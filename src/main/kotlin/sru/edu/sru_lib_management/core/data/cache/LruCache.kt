@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.data.cache
+
+import sru.edu.sru_lib_management.core.domain.dto.metrics.CacheStats
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Small thread-safe LRU cache with hit/miss counters.
+ * The least recently used entry is evicted once [maxSize] is reached.
+ */
+class LruCache<K : Any, V : Any>(
+    private val name: String,
+    private val maxSize: Int
+) {
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val evictions = AtomicLong()
+
+    private val entries = object : LinkedHashMap<K, V>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<K, V>?): Boolean {
+            val evict = size > maxSize
+            if (evict) evictions.incrementAndGet()
+            return evict
+        }
+    }
+
+    fun get(key: K): V? {
+        val value = synchronized(entries) { entries[key] }
+        if (value != null) hits.incrementAndGet() else misses.incrementAndGet()
+        return value
+    }
+
+    fun put(key: K, value: V) {
+        synchronized(entries) { entries[key] = value }
+    }
+
+    fun remove(key: K) {
+        synchronized(entries) { entries.remove(key) }
+    }
+
+    /** Removes every entry matching [predicate]; a full scan, meant for rare invalidations. */
+    fun removeIf(predicate: (K, V) -> Boolean) {
+        synchronized(entries) { entries.entries.removeIf { predicate(it.key, it.value) } }
+    }
+
+    fun clear() {
+        synchronized(entries) { entries.clear() }
+    }
+
+    /** Returns the cached value, or loads it and caches it when [loader] returns non-null. */
+    suspend fun getOrLoad(key: K, loader: suspend (K) -> V?): V? {
+        get(key)?.let { return it }
+        return loader(key)?.also { put(key, it) }
+    }
+
+    fun stats(): CacheStats {
+        val hit = hits.get()
+        val miss = misses.get()
+        return CacheStats(
+            name = name,
+            size = synchronized(entries) { entries.size },
+            maxSize = maxSize,
+            hits = hit,
+            misses = miss,
+            evictions = evictions.get(),
+            hitRate = if (hit + miss == 0L) 0.0 else hit.toDouble() / (hit + miss)
+        )
+    }
+}
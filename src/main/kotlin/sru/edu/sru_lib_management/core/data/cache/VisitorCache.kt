@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.data.cache
+
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.core.domain.dto.metrics.CacheStats
+import sru.edu.sru_lib_management.core.domain.model.Visitor
+
+/**
+ * Student id / staff id -> [Visitor] mapping used by VisitorRepositoryImp.
+ * A visitor row never changes once created; it goes away only with its student or staff
+ * member (ON DELETE CASCADE), so a student delete evicts the entry. Staff rows have no
+ * delete path in the application.
+ */
+@Component
+class VisitorCache(
+    @Value("\${cache.visitor.max-size:10000}") maxSize: Int
+) {
+    private val byStudentId = LruCache<Long, Visitor>("visitor-by-student", maxSize)
+    private val byStaffId = LruCache<String, Visitor>("visitor-by-staff", maxSize)
+
+    suspend fun studentVisitor(studentId: Long, loader: suspend (Long) -> Visitor?): Visitor? =
+        byStudentId.getOrLoad(studentId, loader)
+
+    suspend fun staffVisitor(staffId: String, loader: suspend (String) -> Visitor?): Visitor? =
+        byStaffId.getOrLoad(staffId, loader)
+
+    fun put(visitor: Visitor) {
+        if (visitor.visitorId == null || visitor.visitorId == 0L) return
+        visitor.studentId?.let { byStudentId.put(it, visitor) }
+        visitor.sruStaffId?.let { byStaffId.put(it, visitor) }
+    }
+
+    fun evictStudent(studentId: Long) = byStudentId.remove(studentId)
+
+    fun stats(): List<CacheStats> = listOf(byStudentId.stats(), byStaffId.stats())
+}
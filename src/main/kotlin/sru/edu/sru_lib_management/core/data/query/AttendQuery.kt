@@ -47,4 +47,45 @@ object AttendQuery {
           AND attend_date = :date
           AND exit_time IS NULL
     """
+
+    // visits that entered after the cutoff belong to the next session and stay open
+    const val CLOSE_OPEN_VISITS = """
+        UPDATE attend
+        SET exit_time = :exitTime
+        WHERE attend_date = :date
+          AND exit_time IS NULL
+          AND entry_time <= :exitTime
+    """
+
+    const val SAVE_ENTRY_SCAN = """
+        CALL SaveEntryScan(:studentId, :staffId, :entryTime, :exitTime, :purpose, :date)
+    """
+
+    const val GET_VISITS_BY_DATE = """
+        SELECT
+            a.attend_id,
+            a.visitor_id,
+            v.student_id,
+            v.sru_staff_id,
+            a.entry_time,
+            a.exit_time
+        FROM attend a
+        JOIN visitors v ON a.visitor_id = v.visitor_id
+        WHERE a.attend_date = :date
+        ORDER BY a.attend_id
+    """
+
+    const val GET_VISITOR_VISITS_BY_DATE = """
+        SELECT
+            a.attend_id,
+            a.visitor_id,
+            v.student_id,
+            v.sru_staff_id,
+            a.entry_time,
+            a.exit_time
+        FROM attend a
+        JOIN visitors v ON a.visitor_id = v.visitor_id
+        WHERE a.attend_date = :date AND a.visitor_id = :visitorId
+        ORDER BY a.attend_id
+    """
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package sru.edu.sru_lib_management.core.data.query
+
+import sru.edu.sru_lib_management.core.domain.model.RollupDimension
+
+object AttendRollupQuery {
+    const val MARK_DIRTY_QUERY = """
+        INSERT INTO attend_rollup_dirty(attend_date, marked_at) VALUES (:attendDate, :markedAt)
+        ON DUPLICATE KEY UPDATE marked_at = VALUES(marked_at)
+    """
+
+    const val DIRTY_DATES_QUERY = """
+        SELECT attend_date FROM attend_rollup_dirty
+        WHERE (:startDate IS NULL OR attend_date >= :startDate)
+            AND (:endDate IS NULL OR attend_date <= :endDate)
+        ORDER BY attend_date
+    """
+
+    const val CLEAR_DIRTY_QUERY = """
+        DELETE FROM attend_rollup_dirty
+        WHERE attend_date BETWEEN :startDate AND :endDate
+    """
+
+    const val DELETE_ROLLUP_QUERY = """
+        DELETE FROM attend_daily_rollup
+        WHERE attend_date BETWEEN :startDate AND :endDate
+    """
+
+    // time slots follow OpeningTime
+    const val INSERT_ROLLUP_QUERY = """
+        INSERT INTO attend_daily_rollup(
+            attend_date, visitor_type, major_name, degree_level, generation, gender,
+            time_slot, purpose, visits, closed_visits, total_minutes
+        )
+        SELECT
+            a.attend_date,
+            v.visitor_type,
+            COALESCE(m.major_name, ''),
+            COALESCE(d.degree_level, ''),
+            COALESCE(s.generation, 0),
+            COALESCE(s.gender, st.gender, ''),
+            CASE
+                WHEN a.entry_time BETWEEN '07:00:00' AND '11:00:00' THEN 'MORNING'
+                WHEN a.entry_time BETWEEN '14:00:00' AND '17:00:00' THEN 'AFTERNOON'
+                WHEN a.entry_time BETWEEN '17:30:00' AND '19:30:00' THEN 'EVENING'
+                ELSE 'OTHER'
+            END AS time_slot,
+            a.purpose,
+            COUNT(*),
+            COUNT(a.exit_time),
+            COALESCE(SUM(TIMESTAMPDIFF(MINUTE, a.entry_time, a.exit_time)), 0)
+        FROM attend a
+        JOIN visitors v ON a.visitor_id = v.visitor_id
+        LEFT JOIN students s ON v.student_id = s.student_id
+        LEFT JOIN majors m ON s.major_id = m.major_id
+        LEFT JOIN degree_level d ON s.degree_level_id = d.degree_level_id
+        LEFT JOIN sru_staff st ON v.sru_staff_id = st.sru_staff_id
+        WHERE a.attend_date BETWEEN :startDate AND :endDate
+        GROUP BY 1, 2, 3, 4, 5, 6, 7, 8
+    """
+
+    const val STUDENT_ATTEND_DATES_QUERY = """
+        SELECT DISTINCT a.attend_date
+        FROM attend a
+        JOIN visitors v ON a.visitor_id = v.visitor_id
+        WHERE v.student_id = :studentId
+    """
+
+    const val ATTEND_DATE_RANGE_QUERY = "SELECT MIN(attend_date) AS first_date, MAX(attend_date) AS last_date FROM attend;"
+
+    /** Select expression and alias of each dimension in attend_daily_rollup. */
+    val DIMENSION_COLUMNS: Map<RollupDimension, String> = mapOf(
+        RollupDimension.DATE to "attend_date",
+        RollupDimension.MONTH to "DATE_FORMAT(attend_date, '%Y-%m') AS month",
+        RollupDimension.WEEKEND to "CASE WHEN DAYOFWEEK(attend_date) IN (1, 7) THEN 1 ELSE 0 END AS weekend",
+        RollupDimension.VISITOR_TYPE to "visitor_type",
+        RollupDimension.MAJOR to "major_name",
+        RollupDimension.DEGREE to "degree_level",
+        RollupDimension.GENERATION to "generation",
+        RollupDimension.GENDER to "gender",
+        RollupDimension.TIME_SLOT to "time_slot",
+        RollupDimension.PURPOSE to "purpose"
+    )
+
+    fun sumRollupQuery(groupBy: List<RollupDimension>, conditions: List<String>): String {
+        val columns = groupBy.map { DIMENSION_COLUMNS.getValue(it) }
+        val aliases = columns.map { it.substringAfterLast(" AS ") }
+        return buildString {
+            append("SELECT ")
+            columns.forEach { append(it).append(", ") }
+            append("CAST(SUM(visits) AS SIGNED) AS visits, ")
+            append("CAST(SUM(closed_visits) AS SIGNED) AS closed_visits, ")
+            append("CAST(SUM(total_minutes) AS SIGNED) AS total_minutes ")
+            append("FROM attend_daily_rollup")
+            if (conditions.isNotEmpty()) append(" WHERE ").append(conditions.joinToString(" AND "))
+            if (aliases.isNotEmpty()) append(" GROUP BY ").append(aliases.joinToString(", "))
+        }
+    }
+}
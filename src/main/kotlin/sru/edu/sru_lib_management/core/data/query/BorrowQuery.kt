@@ -14,10 +14,43 @@ object BorrowQuery {
         VALUES (:bookId, :studentId, :bookQuan, :borrowDate, :giveBackDate, :isBringBack, :isExtend);
     """
     const val UPDATE_BORROW_QUERY: String =
-        "UPDATE borrow_books set book_id = :bookId, student_id = :studentId, borrow_date = :borrowDate, " +
-                "give_back_date = :givBackDate, is_bring_back = :isBringBack, is_extend = :isExtend WHERE borrow_id = :borrowId;"
-    const val DELETE_BORROW_QUERY: String = "DELETE borrow_books WHERE borrow_id = :borrowId;"
+        "UPDATE borrow_books set book_id = :bookId, student_id = :studentId, book_quan = :bookQuan, borrow_date = :borrowDate, " +
+                "give_back_date = :giveBackDate, is_bring_back = :isBringBack, is_extend = :isExtend WHERE borrow_id = :borrowId;"
+    const val DELETE_BORROW_QUERY: String = "DELETE FROM borrow_books WHERE borrow_id = :borrowId;"
     const val GET_BORROWS_QUERY: String = "SELECT * FROM borrow_books;"
+    const val GET_ACTIVE_BORROWS_QUERY: String = "SELECT * FROM borrow_books WHERE is_bring_back IS NOT TRUE;"
+    const val GET_ACTIVE_BORROWS_DUE_QUERY: String =
+        "SELECT * FROM borrow_books WHERE give_back_date = :dueDate AND is_bring_back IS NOT TRUE;"
+    const val FIRST_BORROW_DATE_QUERY: String = "SELECT MIN(borrow_date) AS first_date FROM borrow_books;"
+
+    // two range scans (borrow_date, give_back_date indexes), each grouped by month before the union
+    const val COUNT_BORROW_RETURN_BY_MONTH_QUERY: String = """
+        SELECT month, CAST(SUM(borrowed) AS SIGNED) AS borrowed, CAST(SUM(returned) AS SIGNED) AS returned
+        FROM (
+            SELECT DATE_FORMAT(borrow_date, '%Y-%m') AS month, COUNT(*) AS borrowed, 0 AS returned
+            FROM borrow_books
+            WHERE borrow_date BETWEEN :startDate AND :endDate
+            GROUP BY month
+            UNION ALL
+            SELECT DATE_FORMAT(give_back_date, '%Y-%m') AS month, 0 AS borrowed, COUNT(*) AS returned
+            FROM borrow_books
+            WHERE give_back_date BETWEEN :startDate AND :endDate AND is_bring_back = TRUE
+            GROUP BY month
+        ) m
+        GROUP BY month
+    """
+    const val GET_OVERDUE_BORROWS_QUERY: String =
+        "SELECT * FROM borrow_books WHERE give_back_date < :today AND is_bring_back IS NOT TRUE ORDER BY give_back_date;"
+
+    const val BORROW_DETAIL_QUERY: String = """
+        SELECT bb.borrow_id, bb.book_id, b.book_title,
+        bb.book_quan, bb.student_id, s.student_name,
+        bb.borrow_date, bb.give_back_date, bb.is_bring_back,
+        bb.is_extend
+        FROM borrow_books bb
+            inner join books b on bb.book_id = b.book_id
+            inner join students s on bb.student_id = s.student_id
+    """
     const val GET_BORROW_QUERY: String = "SELECT * FROM borrow_books WHERE borrow_id = :borrowId;" ////
 
     const val BOOK_RETURN = "Update borrow_books set give_back_date = :givBackDate, is_bring_back = 1 Where borrow_id = :borrowId;"
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.data.query
+
+// copies available = books.bookQuan - book_inventory.on_loan, so editing bookQuan needs no counter update
+object InventoryQuery {
+    const val LOCK_STUDENT_QUERY = "SELECT student_id FROM students WHERE student_id = :studentId FOR UPDATE;"
+    const val COUNT_ACTIVE_LOANS_QUERY =
+        "SELECT COUNT(*) AS active FROM borrow_books WHERE student_id = :studentId AND is_bring_back IS NOT TRUE;"
+    const val LOCK_BORROW_QUERY = "SELECT * FROM borrow_books WHERE borrow_id = :borrowId FOR UPDATE;"
+
+    // first checkout of a book: start its counter from the loans it already has
+    const val INIT_INVENTORY_QUERY = """
+        INSERT IGNORE INTO book_inventory (book_id, on_loan)
+        SELECT b.book_id,
+            (SELECT COALESCE(SUM(bb.book_quan), 0) FROM borrow_books bb
+             WHERE bb.book_id = b.book_id AND bb.is_bring_back IS NOT TRUE)
+        FROM books b
+        WHERE b.book_id = :bookId
+          AND NOT EXISTS (SELECT 1 FROM book_inventory i WHERE i.book_id = :bookId)
+    """
+    const val RESERVE_COPIES_QUERY = """
+        UPDATE book_inventory i
+            INNER JOIN books b ON b.book_id = i.book_id
+        SET i.on_loan = i.on_loan + :quan
+        WHERE i.book_id = :bookId AND b.bookQuan - i.on_loan >= :quan
+    """
+    const val RELEASE_COPIES_QUERY =
+        "UPDATE book_inventory SET on_loan = GREATEST(on_loan - :quan, 0) WHERE book_id = :bookId;"
+
+    // batch checkout / return, :studentIds, :bookIds and :borrowIds are expanded lists, :rows a list of tuples
+    const val LOCK_STUDENTS_QUERY =
+        "SELECT student_id FROM students WHERE student_id IN (:studentIds) ORDER BY student_id FOR UPDATE;"
+    const val COUNT_ACTIVE_LOANS_BY_STUDENT_QUERY = """
+        SELECT student_id, COUNT(*) AS active FROM borrow_books
+        WHERE student_id IN (:studentIds) AND is_bring_back IS NOT TRUE
+        GROUP BY student_id
+    """
+    const val INIT_INVENTORIES_QUERY = """
+        INSERT IGNORE INTO book_inventory (book_id, on_loan)
+        SELECT b.book_id,
+            (SELECT COALESCE(SUM(bb.book_quan), 0) FROM borrow_books bb
+             WHERE bb.book_id = b.book_id AND bb.is_bring_back IS NOT TRUE)
+        FROM books b
+            LEFT JOIN book_inventory i ON i.book_id = b.book_id
+        WHERE b.book_id IN (:bookIds) AND i.book_id IS NULL
+    """
+    const val LOCK_INVENTORIES_QUERY = """
+        SELECT i.book_id, b.bookQuan - i.on_loan AS available
+        FROM book_inventory i
+            INNER JOIN books b ON b.book_id = i.book_id
+        WHERE i.book_id IN (:bookIds)
+        ORDER BY i.book_id
+        FOR UPDATE OF i
+    """
+    const val SAVE_LEDGER_ENTRIES_QUERY = """
+        INSERT INTO inventory_ledger (book_id, borrow_id, student_id, entry_type, quantity)
+        VALUES :rows
+    """
+    const val FIND_ACTIVE_LOANS_QUERY = """
+        SELECT borrow_id FROM borrow_books
+        WHERE (student_id, book_id) IN (:pairs) AND is_bring_back IS NOT TRUE
+    """
+    const val LOCK_BORROWS_QUERY = "SELECT * FROM borrow_books WHERE borrow_id IN (:borrowIds) ORDER BY borrow_id FOR UPDATE;"
+    const val RETURN_BORROWS_QUERY =
+        "UPDATE borrow_books SET give_back_date = :givBackDate, is_bring_back = 1 WHERE borrow_id IN (:borrowIds);"
+
+    // one statement for every book of the batch: on_loan += / -= the copies per book
+    fun changeOnLoanQuery(books: Int, release: Boolean): String {
+        val cases = (0 until books).joinToString(" ") { "WHEN :book$it THEN :quan$it" }
+        val onLoan = if (release) "GREATEST(on_loan - CASE book_id $cases END, 0)" else "on_loan + CASE book_id $cases END"
+        return "UPDATE book_inventory SET on_loan = $onLoan WHERE book_id IN (:bookIds);"
+    }
+}
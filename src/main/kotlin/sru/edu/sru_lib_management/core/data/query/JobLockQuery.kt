@@ -0,0 +1,42 @@
+package sru.edu.sru_lib_management.core.data.query
+
+// lease times use the database clock, so nodes with skewed clocks agree on expiry
+object JobLockQuery {
+    const val INSERT_LOCK_QUERY = """
+        INSERT IGNORE INTO job_lock(job_name, locked_until, locked_at, locked_by, fencing_token)
+        VALUES (:jobName, NOW(3), NOW(3), '', 0)
+    """
+    const val ACQUIRE_LOCK_QUERY = """
+        UPDATE job_lock
+        SET fencing_token = fencing_token + 1,
+            locked_by = :node,
+            locked_at = NOW(3),
+            locked_until = TIMESTAMPADD(MICROSECOND, :lockAtMostMicros, NOW(3))
+        WHERE job_name = :jobName AND locked_until <= NOW(3)
+    """
+    const val GET_TOKEN_QUERY = "SELECT fencing_token FROM job_lock WHERE job_name = :jobName AND locked_by = :node;"
+    const val RELEASE_LOCK_QUERY = """
+        UPDATE job_lock
+        SET locked_until = GREATEST(NOW(3), TIMESTAMPADD(MICROSECOND, :lockAtLeastMicros, locked_at))
+        WHERE job_name = :jobName AND fencing_token = :fencingToken
+    """
+    const val IS_HELD_QUERY = """
+        SELECT COUNT(*) AS held FROM job_lock
+        WHERE job_name = :jobName AND fencing_token = :fencingToken AND locked_until > NOW(3)
+    """
+    const val SAVE_RUN_QUERY = """
+        INSERT INTO job_run(job_name, fencing_token, node, started_at, finished_at, duration_ms, rows_affected, status, error)
+        VALUES (:jobName, :fencingToken, :node, :startedAt, :finishedAt, :durationMs, :rowsAffected, :status, :error)
+    """
+    const val RECENT_RUNS_QUERY = "SELECT * FROM job_run ORDER BY run_id DESC LIMIT :limit;"
+
+    const val GET_WATERMARK_QUERY = "SELECT watermark FROM job_watermark WHERE job_name = :jobName;"
+    // written only by the current holder of the job's lock
+    const val SAVE_WATERMARK_QUERY = """
+        INSERT INTO job_watermark(job_name, watermark, updated_at)
+        SELECT :jobName, :watermark, :updatedAt
+        FROM job_lock
+        WHERE job_name = :jobName AND fencing_token = :fencingToken AND locked_until > NOW(3)
+        ON DUPLICATE KEY UPDATE watermark = VALUES(watermark), updated_at = VALUES(updated_at)
+    """
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.data.query
+
+import io.r2dbc.spi.Row
+import kotlinx.coroutines.flow.toList
+import org.springframework.http.HttpStatus
+import org.springframework.r2dbc.core.DatabaseClient
+import org.springframework.r2dbc.core.flow
+import org.springframework.web.server.ResponseStatusException
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
+import java.util.Base64
+
+/**
+ * A sort order usable for keyset pagination: rows are ordered by [column], then by the
+ * unique [idColumn] so the order is total. Both columns should be covered by an index.
+ * [sortValue] / [idValue] read the keys back from a mapped row to build the next cursor,
+ * [parseSort] / [parseId] turn the cursor text into bind values.
+ */
+class KeysetSort<T>(
+    val key: String,
+    val column: String,
+    val idColumn: String,
+    val sortValue: (T) -> Any,
+    val idValue: (T) -> Any,
+    val parseSort: (String) -> Any,
+    val parseId: (String) -> Any
+) {
+    val singleKey: Boolean get() = column == idColumn
+}
+
+/**
+ * Runs [select] (no WHERE / ORDER BY / LIMIT, no trailing ';') one keyset page at a time:
+ * `WHERE (column, id) > cursor ORDER BY column, id LIMIT size + 1`.
+ * The work per request is bounded by the page size whatever the table size.
+ * [where] is an optional extra condition, combined with AND.
+ */
+suspend fun <T : Any> DatabaseClient.keysetPage(
+    select: String,
+    sorts: List<KeysetSort<T>>,
+    request: PageRequest,
+    where: String? = null,
+    mapper: (Row) -> T
+): CursorPage<T> {
+    val descending = request.sort.startsWith("-")
+    val sortKey = request.sort.removePrefix("-")
+    val sort = sorts.firstOrNull { it.key == sortKey }
+        ?: throw ResponseStatusException(
+            HttpStatus.BAD_REQUEST,
+            "Unknown sort '$sortKey', expected one of ${sorts.map { it.key }}"
+        )
+    val size = request.size.coerceIn(1, PageRequest.MAX_SIZE)
+    val after = request.cursor?.let { KeysetCursor.decode(it, request.sort) }
+
+    val direction = if (descending) "DESC" else "ASC"
+    val compare = if (descending) "<" else ">"
+    val conditions = buildList {
+        where?.let { add("($it)") }
+        if (after != null) add(
+            if (sort.singleKey) "${sort.idColumn} $compare :keysetId"
+            else "(${sort.column} $compare :keysetSort OR (${sort.column} = :keysetSort AND ${sort.idColumn} $compare :keysetId))"
+        )
+    }
+    val orderBy = if (sort.singleKey) "${sort.idColumn} $direction"
+        else "${sort.column} $direction, ${sort.idColumn} $direction"
+    val sql = buildString {
+        append(select.trim().removeSuffix(";"))
+        if (conditions.isNotEmpty()) append(" WHERE ").append(conditions.joinToString(" AND "))
+        append(" ORDER BY ").append(orderBy)
+        append(" LIMIT :keysetLimit")
+    }
+
+    var spec = sql(sql).bind("keysetLimit", size + 1)
+    if (after != null) {
+        try {
+            spec = spec.bind("keysetId", sort.parseId(after.id))
+            if (!sort.singleKey) spec = spec.bind("keysetSort", sort.parseSort(after.sortValue))
+        } catch (e: RuntimeException) {
+            throw ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor")
+        }
+    }
+    val rows = spec.map { row: Row, _ -> mapper(row) }.flow().toList()
+
+    val items = rows.take(size)
+    val next = if (rows.size > size) items.last().let { last ->
+        KeysetCursor.encode(request.sort, sort.sortValue(last).toString(), sort.idValue(last).toString())
+    } else null
+    return CursorPage(items = items, size = size, sort = request.sort, nextCursor = next)
+}
+
+/** Opaque continuation token: sort key plus the keys of the last row, base64url encoded. */
+internal object KeysetCursor {
+    private const val SEPARATOR = '\n'
+
+    class Position(val sortValue: String, val id: String)
+
+    fun encode(sort: String, sortValue: String, id: String): String =
+        Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("$sort$SEPARATOR$sortValue$SEPARATOR$id".toByteArray())
+
+    fun decode(cursor: String, sort: String): Position {
+        val parts = try {
+            String(Base64.getUrlDecoder().decode(cursor)).split(SEPARATOR)
+        } catch (e: IllegalArgumentException) {
+            throw ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor")
+        }
+        if (parts.size != 3) throw ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor")
+        if (parts[0] != sort) throw ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor was issued for sort '${parts[0]}'")
+        return Position(parts[1], parts[2])
+    }
+}
@@ -22,6 +22,12 @@ import sru.edu.sru_lib_management.core.data.query.AttendQuery.GET_ATTEND_QUERY
 import sru.edu.sru_lib_management.core.data.query.AttendQuery.GET_ALL_ATTEND_QUERY
 import sru.edu.sru_lib_management.core.data.query.AttendQuery.GET_ALL_STAFF_ATTEND
 import sru.edu.sru_lib_management.core.data.query.AttendQuery.UPDATE_EXIT_TIME_BY_VISITOR
+import sru.edu.sru_lib_management.core.data.query.AttendQuery.SAVE_ENTRY_SCAN
+import sru.edu.sru_lib_management.core.data.query.AttendQuery.CLOSE_OPEN_VISITS
+import sru.edu.sru_lib_management.core.data.query.AttendQuery.GET_VISITOR_VISITS_BY_DATE
+import sru.edu.sru_lib_management.core.data.query.AttendQuery.GET_VISITS_BY_DATE
+import sru.edu.sru_lib_management.core.data.query.KeysetSort
+import sru.edu.sru_lib_management.core.data.query.keysetPage
 import sru.edu.sru_lib_management.core.domain.dto.CompareValue
 import sru.edu.sru_lib_management.core.domain.dto.MajorPurpose
 import sru.edu.sru_lib_management.core.domain.dto.attend.AttendDetail
@@ -29,8 +35,13 @@ import sru.edu.sru_lib_management.core.domain.dto.attend.StaffAttendDto
 import sru.edu.sru_lib_management.core.domain.dto.attend.StudentAttendDetail
 import sru.edu.sru_lib_management.core.domain.dto.dashboard.DayVisitor
 import sru.edu.sru_lib_management.core.domain.dto.dashboard.TotalMajorVisitor
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Attend
+import sru.edu.sru_lib_management.core.domain.model.EntryScanResult
+import sru.edu.sru_lib_management.core.domain.model.EntryScanStatus
 import sru.edu.sru_lib_management.core.domain.model.ExitUpdateResult
+import sru.edu.sru_lib_management.core.domain.model.TodayVisit
 import sru.edu.sru_lib_management.core.domain.model.VisitorDetail
 import sru.edu.sru_lib_management.core.domain.model.VisitorType
 import sru.edu.sru_lib_management.core.domain.repository.AttendRepository
@@ -114,6 +125,9 @@ class AttendRepositoryImp(
             }.flow()
     }
 
+    override suspend fun getPage(page: PageRequest): CursorPage<Attend> =
+        client.keysetPage(GET_ALL_ATTEND_QUERY, attendSorts, page) { it.mapToAttend() }
+
     override suspend fun delete(id: Long): Boolean {
         val rowEffect = client.sql(DELETE_ATTEND_QUERY)
             .bind("attendId", id)
@@ -152,6 +166,63 @@ class AttendRepositoryImp(
             .awaitRowsUpdated() > 0
     }
 
+    override suspend fun closeOpenVisits(date: LocalDate, exitTime: LocalTime): Long {
+        return client.sql(CLOSE_OPEN_VISITS)
+            .bind("exitTime", exitTime)
+            .bind("date", date)
+            .fetch()
+            .awaitRowsUpdated()
+    }
+
+    override suspend fun saveEntryScan(
+        studentId: Long?,
+        staffId: String?,
+        entryTime: LocalTime,
+        exitTime: LocalTime?,
+        purpose: String,
+        date: LocalDate
+    ): EntryScanResult {
+        return client.sql(SAVE_ENTRY_SCAN)
+            .bind("studentId", studentId)
+            .bind("staffId", staffId)
+            .bind("entryTime", entryTime)
+            .bind("exitTime", exitTime)
+            .bind("purpose", purpose)
+            .bind("date", date)
+            .map { row: Row, _ ->
+                val status = EntryScanStatus.valueOf(row.get("status", String::class.java)!!)
+                if (status != EntryScanStatus.OK)
+                    EntryScanResult(status, null, 0)
+                else
+                    EntryScanResult(
+                        status = status,
+                        attend = row.mapToAttend(),
+                        closedVisits = row.get("closed_visits", Int::class.java) ?: 0
+                    )
+            }
+            .awaitSingle()
+    }
+
+    override fun getVisitsByDate(date: LocalDate): Flow<TodayVisit> {
+        return client.sql(GET_VISITS_BY_DATE)
+            .bind("date", date)
+            .map { row: Row, _ ->
+                row.mapToTodayVisit()
+            }
+            .flow()
+    }
+
+    override suspend fun getVisitorVisitsByDate(visitorId: Long, date: LocalDate): List<TodayVisit> {
+        return client.sql(GET_VISITOR_VISITS_BY_DATE)
+            .bind("visitorId", visitorId)
+            .bind("date", date)
+            .map { row: Row, _ ->
+                row.mapToTodayVisit()
+            }
+            .flow()
+            .toList()
+    }
+
     override suspend fun count(date: LocalDate, period: Int): Int? {
         return if (period != 0){
             client.sql("CALL CountAttendByPeriod(:date, :period)")
@@ -381,6 +452,15 @@ class AttendRepositoryImp(
         "attendDate" to attend.attendDate
     )
 
+    private fun Row.mapToTodayVisit(): TodayVisit = TodayVisit(
+        attendId = get("attend_id", Long::class.java)!!,
+        visitorId = get("visitor_id", Long::class.java)!!,
+        studentId = get("student_id", java.lang.Long::class.java)?.toLong(),
+        staffId = get("sru_staff_id", String::class.java),
+        entryTime = get("entry_time", LocalTime::class.java)!!,
+        exitTime = get("exit_time", LocalTime::class.java)
+    )
+
     private fun Row.mapToAttend(): Attend = Attend(
         attendId = this.get("attend_id", Long::class.java)!!,
         visitorId = this.get("visitor_id", Long::class.java)!!,
@@ -425,5 +505,8 @@ class AttendRepositoryImp(
         status = null
     )
 
-
-}
\ No newline at end of file
+    private val attendSorts = listOf(
+        KeysetSort<Attend>("id", "attend_id", "attend_id", { it.attendId!! }, { it.attendId!! }, String::toLong, String::toLong),
+        KeysetSort<Attend>("date", "attend_date", "attend_id", { it.attendDate }, { it.attendId!! }, LocalDate::parse, String::toLong)
+    )
+}
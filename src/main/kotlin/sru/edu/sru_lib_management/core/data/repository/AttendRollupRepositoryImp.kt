@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.data.repository
+
+import io.r2dbc.spi.Row
+import kotlinx.coroutines.flow.toList
+import org.springframework.r2dbc.core.*
+import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
+import sru.edu.sru_lib_management.core.data.query.AttendRollupQuery.ATTEND_DATE_RANGE_QUERY
+import sru.edu.sru_lib_management.core.data.query.AttendRollupQuery.CLEAR_DIRTY_QUERY
+import sru.edu.sru_lib_management.core.data.query.AttendRollupQuery.DELETE_ROLLUP_QUERY
+import sru.edu.sru_lib_management.core.data.query.AttendRollupQuery.DIRTY_DATES_QUERY
+import sru.edu.sru_lib_management.core.data.query.AttendRollupQuery.INSERT_ROLLUP_QUERY
+import sru.edu.sru_lib_management.core.data.query.AttendRollupQuery.MARK_DIRTY_QUERY
+import sru.edu.sru_lib_management.core.data.query.AttendRollupQuery.STUDENT_ATTEND_DATES_QUERY
+import sru.edu.sru_lib_management.core.data.query.AttendRollupQuery.sumRollupQuery
+import sru.edu.sru_lib_management.core.domain.dto.attend.AttendRollupTotal
+import sru.edu.sru_lib_management.core.domain.model.RollupDimension
+import sru.edu.sru_lib_management.core.domain.model.TimeSlot
+import sru.edu.sru_lib_management.core.domain.model.VisitorType
+import sru.edu.sru_lib_management.core.domain.repository.AttendRollupRepository
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
+import java.time.LocalDate
+import java.time.YearMonth
+
+@Component
+class AttendRollupRepositoryImp(
+    private val client: DatabaseClient
+) : AttendRollupRepository {
+
+    override suspend fun markDirty(date: LocalDate) {
+        client.sql(MARK_DIRTY_QUERY)
+            .bind("attendDate", date)
+            .bind("markedAt", indoChinaDateTime())
+            .await()
+    }
+
+    override suspend fun dirtyDates(startDate: LocalDate?, endDate: LocalDate?): List<LocalDate> {
+        return client.sql(DIRTY_DATES_QUERY)
+            .let { spec -> startDate?.let { spec.bind("startDate", it) } ?: spec.bindNull("startDate", LocalDate::class.java) }
+            .let { spec -> endDate?.let { spec.bind("endDate", it) } ?: spec.bindNull("endDate", LocalDate::class.java) }
+            .map { row: Row, _ -> row.get("attend_date", LocalDate::class.java)!! }
+            .flow()
+            .toList()
+    }
+
+    @Transactional
+    override suspend fun rebuild(startDate: LocalDate, endDate: LocalDate): Long {
+        // a write committed after this delete marks its date again
+        client.sql(CLEAR_DIRTY_QUERY)
+            .bind("startDate", startDate)
+            .bind("endDate", endDate)
+            .await()
+        client.sql(DELETE_ROLLUP_QUERY)
+            .bind("startDate", startDate)
+            .bind("endDate", endDate)
+            .await()
+        return client.sql(INSERT_ROLLUP_QUERY)
+            .bind("startDate", startDate)
+            .bind("endDate", endDate)
+            .fetch()
+            .awaitRowsUpdated()
+    }
+
+    override suspend fun sum(
+        startDate: LocalDate?,
+        endDate: LocalDate?,
+        groupBy: List<RollupDimension>,
+        visitorType: VisitorType?,
+        major: String?
+    ): List<AttendRollupTotal> {
+        val params = buildMap<String, Any> {
+            startDate?.let { put("startDate", it) }
+            endDate?.let { put("endDate", it) }
+            visitorType?.let { put("visitorType", it.name) }
+            major?.let { put("major", it) }
+        }
+        val conditions = params.keys.map {
+            when (it) {
+                "startDate" -> "attend_date >= :startDate"
+                "endDate" -> "attend_date <= :endDate"
+                "visitorType" -> "visitor_type = :visitorType"
+                else -> "major_name = :major"
+            }
+        }
+        return client.sql(sumRollupQuery(groupBy, conditions))
+            .bindValues(params)
+            .map { row: Row, _ -> row.rollupTotalMapping(groupBy) }
+            .flow()
+            .toList()
+    }
+
+    override suspend fun studentAttendDates(studentId: Long): List<LocalDate> {
+        return client.sql(STUDENT_ATTEND_DATES_QUERY)
+            .bind("studentId", studentId)
+            .map { row: Row, _ -> row.get("attend_date", LocalDate::class.java)!! }
+            .flow()
+            .toList()
+    }
+
+    override suspend fun attendDateRange(): Pair<LocalDate, LocalDate>? {
+        return client.sql(ATTEND_DATE_RANGE_QUERY)
+            .map { row: Row, _ ->
+                val first = row.get("first_date", LocalDate::class.java)
+                val last = row.get("last_date", LocalDate::class.java)
+                if (first != null && last != null) first to last else null
+            }
+            .awaitOneOrNull()
+    }
+
+    private fun Row.rollupTotalMapping(groupBy: List<RollupDimension>): AttendRollupTotal {
+        fun has(dimension: RollupDimension) = dimension in groupBy
+        return AttendRollupTotal(
+            date = if (has(RollupDimension.DATE)) get("attend_date", LocalDate::class.java) else null,
+            month = if (has(RollupDimension.MONTH)) get("month", String::class.java)?.let(YearMonth::parse) else null,
+            weekend = if (has(RollupDimension.WEEKEND)) get("weekend", java.lang.Long::class.java)?.toInt() == 1 else null,
+            visitorType = if (has(RollupDimension.VISITOR_TYPE)) get("visitor_type", String::class.java)?.let(VisitorType::valueOf) else null,
+            major = if (has(RollupDimension.MAJOR)) get("major_name", String::class.java) else null,
+            degreeLevel = if (has(RollupDimension.DEGREE)) get("degree_level", String::class.java) else null,
+            generation = if (has(RollupDimension.GENERATION)) get("generation", java.lang.Long::class.java)?.toInt() else null,
+            gender = if (has(RollupDimension.GENDER)) get("gender", String::class.java) else null,
+            timeSlot = if (has(RollupDimension.TIME_SLOT)) get("time_slot", String::class.java)?.let(TimeSlot::valueOf) else null,
+            purpose = if (has(RollupDimension.PURPOSE)) get("purpose", String::class.java) else null,
+            visits = get("visits", java.lang.Long::class.java)?.toLong() ?: 0,
+            closedVisits = get("closed_visits", java.lang.Long::class.java)?.toLong() ?: 0,
+            totalMinutes = get("total_minutes", java.lang.Long::class.java)?.toLong() ?: 0
+        )
+    }
+}
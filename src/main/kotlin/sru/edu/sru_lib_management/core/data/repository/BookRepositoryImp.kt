@@ -19,8 +19,12 @@ import sru.edu.sru_lib_management.core.data.query.BookQuery.GET_BOOKS_QUERY
 import sru.edu.sru_lib_management.core.data.query.BookQuery.GET_BOOK_QUERY
 import sru.edu.sru_lib_management.core.data.query.BookQuery.SAVE_BOOK_QUERY
 import sru.edu.sru_lib_management.core.data.query.BookQuery.UPDATE_BOOK_QUERY
+import sru.edu.sru_lib_management.core.data.query.KeysetSort
+import sru.edu.sru_lib_management.core.data.query.keysetPage
 import sru.edu.sru_lib_management.core.domain.dto.BookAvailableDto
 import sru.edu.sru_lib_management.core.domain.dto.FundCount
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Books
 import sru.edu.sru_lib_management.core.domain.repository.BookRepository
 import java.time.LocalDate
@@ -185,6 +189,9 @@ class BookRepositoryImp(
             }.flow()
     }
 
+    override suspend fun getPage(page: PageRequest): CursorPage<Books> =
+        client.keysetPage(GET_BOOKS_QUERY, bookSorts, page) { it.rowMapping() }
+
     override suspend fun delete(id: String): Boolean {
         val rowEffect = client.sql(DELETE_BOOK_QUERY)
             .bind("bookId", id)
@@ -247,5 +254,8 @@ class BookRepositoryImp(
         }
     }
 
-
+    private val bookSorts = listOf(
+        KeysetSort<Books>("id", "book_id", "book_id", { it.bookId }, { it.bookId }, { it }, { it }),
+        KeysetSort<Books>("title", "book_title", "book_id", { it.bookTitle }, { it.bookId }, { it }, { it })
+    )
 }
@@ -6,26 +6,61 @@
 package sru.edu.sru_lib_management.core.data.repository
 
 import io.r2dbc.spi.Row
+import io.r2dbc.spi.Statement
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.flow.toSet
 import kotlinx.coroutines.reactive.asFlow
 import kotlinx.coroutines.reactor.awaitSingle
 import org.springframework.r2dbc.core.*
+import org.springframework.r2dbc.core.flow
 import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.COUNT_ACTIVE_LOANS_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.INIT_INVENTORY_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.LOCK_BORROW_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.LOCK_STUDENT_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.RELEASE_COPIES_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.RESERVE_COPIES_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.COUNT_ACTIVE_LOANS_BY_STUDENT_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.FIND_ACTIVE_LOANS_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.INIT_INVENTORIES_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.LOCK_BORROWS_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.LOCK_INVENTORIES_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.LOCK_STUDENTS_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.RETURN_BORROWS_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.SAVE_LEDGER_ENTRIES_QUERY
+import sru.edu.sru_lib_management.core.data.query.InventoryQuery.changeOnLoanQuery
 import sru.edu.sru_lib_management.core.data.query.BorrowQuery.BOOK_RETURN
+import sru.edu.sru_lib_management.core.data.query.BorrowQuery.BORROW_DETAIL_QUERY
+import sru.edu.sru_lib_management.core.data.query.BorrowQuery.COUNT_BORROW_RETURN_BY_MONTH_QUERY
 import sru.edu.sru_lib_management.core.data.query.BorrowQuery.DELETE_BORROW_QUERY
+import sru.edu.sru_lib_management.core.data.query.BorrowQuery.FIRST_BORROW_DATE_QUERY
 import sru.edu.sru_lib_management.core.data.query.BorrowQuery.FIND_BORROW_BY_STUDENT_ID_BOOK_ID
+import sru.edu.sru_lib_management.core.data.query.BorrowQuery.GET_ACTIVE_BORROWS_DUE_QUERY
+import sru.edu.sru_lib_management.core.data.query.BorrowQuery.GET_ACTIVE_BORROWS_QUERY
 import sru.edu.sru_lib_management.core.data.query.BorrowQuery.GET_BORROWS_QUERY
 import sru.edu.sru_lib_management.core.data.query.BorrowQuery.GET_BORROW_QUERY
+import sru.edu.sru_lib_management.core.data.query.BorrowQuery.GET_OVERDUE_BORROWS_QUERY
 import sru.edu.sru_lib_management.core.data.query.BorrowQuery.SAVE_BORROW_QUERY
 import sru.edu.sru_lib_management.core.data.query.BorrowQuery.UPDATE_BORROW_QUERY
+import sru.edu.sru_lib_management.core.data.query.KeysetSort
+import sru.edu.sru_lib_management.core.data.query.keysetPage
 import sru.edu.sru_lib_management.core.domain.dto.BorrowDetail
 import sru.edu.sru_lib_management.core.domain.dto.CompareValue
+import sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowReturnDto
+import sru.edu.sru_lib_management.core.domain.dto.analytic.BorrowReturn
 import sru.edu.sru_lib_management.core.domain.dto.analytic.MostBorrow
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Borrow
+import sru.edu.sru_lib_management.core.domain.model.CheckoutResult
+import sru.edu.sru_lib_management.core.domain.model.CheckoutStatus
+import sru.edu.sru_lib_management.core.domain.model.InventoryEntryType
 import sru.edu.sru_lib_management.core.domain.repository.BorrowRepository
 import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
 import java.time.LocalDate
+import java.time.YearMonth
 
 @Component
 class BorrowRepositoryImp(
@@ -64,28 +99,101 @@ class BorrowRepositoryImp(
             .awaitSingle()
     }
 
+    @Transactional
     override suspend fun extendBorrow(borrowId: Long): Long {
+        val borrow = lockBorrow(borrowId) ?: return 0L
         val rowEffected = client
             .sql("Update borrow_books set give_back_date = DATE_ADD(give_back_date, INTERVAL 2 WEEK), is_extend = true WHERE borrow_id = :borrowId")
             .bind("borrowId", borrowId)
             .fetch()
             .awaitRowsUpdated()
-        return if (rowEffected > 0)
-            borrowId
-        else
-            0L
+        if (rowEffected == 0L) return 0L
+        appendLedger(borrow, InventoryEntryType.EXTEND)
+        return borrowId
+    }
+
+    @Transactional
+    override suspend fun checkout(borrow: Borrow, maxLoans: Int): CheckoutResult {
+        // checkouts of one student queue on the student row, other students don't wait
+        client.sql(LOCK_STUDENT_QUERY)
+            .bind("studentId", borrow.studentId)
+            .map { row -> row.get("student_id", Long::class.java) }
+            .awaitOneOrNull()
+            ?: return CheckoutResult(CheckoutStatus.STUDENT_NOT_FOUND, null, 0)
+        val activeLoans = client.sql(COUNT_ACTIVE_LOANS_QUERY)
+            .bind("studentId", borrow.studentId)
+            .map { row -> row.get("active", Long::class.java)!!.toInt() }
+            .awaitSingle()
+        if (activeLoans >= maxLoans || (activeLoans > 0 && activeLoans + borrow.bookQuan > maxLoans))
+            return CheckoutResult(CheckoutStatus.LOAN_LIMIT, null, activeLoans)
+
+        // the conditional update locks only this book's counter and never takes more copies than exist
+        client.sql(INIT_INVENTORY_QUERY)
+            .bind("bookId", borrow.bookId)
+            .fetch()
+            .awaitRowsUpdated()
+        val reserved = client.sql(RESERVE_COPIES_QUERY)
+            .bind("bookId", borrow.bookId)
+            .bind("quan", borrow.bookQuan)
+            .fetch()
+            .awaitRowsUpdated()
+        if (reserved == 0L)
+            return CheckoutResult(CheckoutStatus.BOOK_UNAVAILABLE, null, activeLoans)
+
+        val saved = save(borrow)
+        appendLedger(saved, InventoryEntryType.BORROW)
+        return CheckoutResult(CheckoutStatus.OK, saved, activeLoans)
     }
 
     override suspend fun save(entity: Borrow): Borrow {
-        client.sql(SAVE_BORROW_QUERY)
+        val result = client.sql(SAVE_BORROW_QUERY)
+            .filter { s: Statement, next: ExecuteFunction ->
+                next.execute(s.returnGeneratedValues("borrow_id"))
+            }
             .bindValues(paramsMap(entity))
-            .await()
-        return entity
+            .fetch()
+            .awaitOneOrNull()
+        val borrowId = (result?.get("borrow_id") as? Number)?.toLong() ?: entity.borrowId
+        return entity.copyOf(borrowId = borrowId)
+    }
+
+    @Transactional
+    override suspend fun updateLoan(borrow: Borrow): CheckoutResult {
+        val old = lockBorrow(borrow.borrowId!!) ?: return CheckoutResult(CheckoutStatus.LOAN_NOT_FOUND, null, 0)
+        val oldHeld = if (old.isBringBack) 0 else old.bookQuan
+        val newHeld = if (borrow.isBringBack) 0 else borrow.bookQuan
+        val moved = old.bookId != borrow.bookId || old.studentId != borrow.studentId || oldHeld != newHeld
+        if (moved) {
+            val bookIds = listOf(old.bookId, borrow.bookId).distinct().sorted()
+            client.sql(INIT_INVENTORIES_QUERY)
+                .bind("bookIds", bookIds)
+                .fetch()
+                .awaitRowsUpdated()
+            val available = client.sql(LOCK_INVENTORIES_QUERY)
+                .bind("bookIds", bookIds)
+                .map { row -> row.get("book_id", String::class.java)!! to row.get("available", Int::class.java)!! }
+                .flow()
+                .toList()
+                .toMap()
+            val copies = available[borrow.bookId] ?: return CheckoutResult(CheckoutStatus.BOOK_NOT_FOUND, null, 0)
+            // the copies the loan already holds of the same book count as available
+            val freed = if (old.bookId == borrow.bookId) oldHeld else 0
+            if (copies + freed < newHeld) return CheckoutResult(CheckoutStatus.BOOK_UNAVAILABLE, null, 0)
+            if (oldHeld > 0) {
+                changeOnLoan(listOf(old), release = true)
+                appendLedger(old, InventoryEntryType.RETURN)
+            }
+            if (newHeld > 0) {
+                changeOnLoan(listOf(borrow), release = false)
+                appendLedger(borrow, InventoryEntryType.BORROW)
+            }
+        }
+        return CheckoutResult(CheckoutStatus.OK, update(borrow), 0)
     }
 
     override suspend fun update(entity: Borrow): Borrow {
         client.sql(UPDATE_BORROW_QUERY)
-            .bind("borrow_id", entity.borrowId)
+            .bind("borrowId", entity.borrowId!!)
             .bindValues(paramsMap(entity))
             .fetch()
             .awaitRowsUpdated()
@@ -107,33 +215,208 @@ class BorrowRepositoryImp(
         .flow()
 
 
+    @Transactional
     override suspend fun delete(id: Long): Boolean {
+        val borrow = lockBorrow(id) ?: return false
+        // a loan deleted before it was returned gives its copies back
+        if (!borrow.isBringBack) {
+            client.sql(RELEASE_COPIES_QUERY)
+                .bind("bookId", borrow.bookId)
+                .bind("quan", borrow.bookQuan)
+                .fetch()
+                .awaitRowsUpdated()
+            appendLedger(borrow, InventoryEntryType.RETURN)
+        }
         val rowEffected = client.sql(DELETE_BORROW_QUERY)
-            .bind("borrow_id", id)
+            .bind("borrowId", id)
             .fetch()
             .awaitRowsUpdated()
         return rowEffected > 0
     }
 
-    override fun findOverDueBook(): Flow<Borrow> {
-        val query = "SELECT * FROM borrow_books where give_back_date <= curdate();"
-        return client.sql(query)
+    override fun findOverDueBook(today: LocalDate): Flow<Borrow> {
+        return client.sql(GET_OVERDUE_BORROWS_QUERY)
+            .bind("today", today)
             .map { row: Row, _ ->
                 row.rowMapping()
             }
-            .all()
-            .asFlow()
+            .flow()
+    }
+
+    override fun getActiveBorrows(): Flow<Borrow> = client
+        .sql(GET_ACTIVE_BORROWS_QUERY)
+        .map { row: Row, _ ->
+            row.rowMapping()
+        }
+        .flow()
+
+    override suspend fun getActiveBorrowsDueOn(dueDate: LocalDate): List<Borrow> {
+        return client.sql(GET_ACTIVE_BORROWS_DUE_QUERY)
+            .bind("dueDate", dueDate)
+            .map { row: Row, _ ->
+                row.rowMapping()
+            }
+            .flow()
+            .toList()
+    }
+
+    @Transactional
+    override suspend fun checkoutBatch(borrows: List<Borrow>, maxLoans: Int): List<CheckoutResult> {
+        if (borrows.isEmpty()) return emptyList()
+        val studentIds = borrows.map { it.studentId }.distinct().sorted()
+        val bookIds = borrows.map { it.bookId }.distinct().sorted()
+
+        // rows are locked in a fixed order (students, then book counters) so concurrent batches can't deadlock
+        val students = client.sql(LOCK_STUDENTS_QUERY)
+            .bind("studentIds", studentIds)
+            .map { row -> row.get("student_id", Long::class.java)!! }
+            .flow()
+            .toSet()
+        val activeLoans = client.sql(COUNT_ACTIVE_LOANS_BY_STUDENT_QUERY)
+            .bind("studentIds", studentIds)
+            .map { row -> row.get("student_id", Long::class.java)!! to row.get("active", Long::class.java)!!.toInt() }
+            .flow()
+            .toList()
+            .toMap(HashMap())
+        client.sql(INIT_INVENTORIES_QUERY)
+            .bind("bookIds", bookIds)
+            .fetch()
+            .awaitRowsUpdated()
+        val available = client.sql(LOCK_INVENTORIES_QUERY)
+            .bind("bookIds", bookIds)
+            .map { row -> row.get("book_id", String::class.java)!! to row.get("available", Int::class.java)!! }
+            .flow()
+            .toList()
+            .toMap(HashMap())
+
+        // items are decided in request order against the locked counts
+        val results = borrows.map { borrow ->
+            val loans = activeLoans[borrow.studentId] ?: 0
+            val copies = available[borrow.bookId]
+            when {
+                borrow.studentId !in students -> CheckoutResult(CheckoutStatus.STUDENT_NOT_FOUND, null, 0)
+                copies == null -> CheckoutResult(CheckoutStatus.BOOK_NOT_FOUND, null, loans)
+                loans >= maxLoans || (loans > 0 && loans + borrow.bookQuan > maxLoans) ->
+                    CheckoutResult(CheckoutStatus.LOAN_LIMIT, null, loans)
+                copies < borrow.bookQuan -> CheckoutResult(CheckoutStatus.BOOK_UNAVAILABLE, null, loans)
+                else -> {
+                    activeLoans[borrow.studentId] = loans + 1
+                    available[borrow.bookId] = copies - borrow.bookQuan
+                    CheckoutResult(CheckoutStatus.OK, borrow, loans)
+                }
+            }
+        }
+        val accepted = results.mapNotNull { it.borrow }
+        if (accepted.isEmpty()) return results
+
+        changeOnLoan(accepted, release = false)
+        // one insert per loan, each returns its own id (a multi-row insert only reports the first one)
+        val saved = results.map { result ->
+            result.borrow?.let { result.copy(borrow = save(it)) } ?: result
+        }
+        appendLedger(saved.mapNotNull { it.borrow }, InventoryEntryType.BORROW)
+        return saved
+    }
+
+    @Transactional
+    override suspend fun returnBatch(items: List<BorrowReturnDto>, returnDate: LocalDate): List<Borrow?> {
+        if (items.isEmpty()) return emptyList()
+        val borrowIds = client.sql(FIND_ACTIVE_LOANS_QUERY)
+            .bind("pairs", items.map { arrayOf<Any>(it.studentId, it.bookId) })
+            .map { row -> row.get("borrow_id", Long::class.java)!! }
+            .flow()
+            .toList()
+        if (borrowIds.isEmpty()) return items.map { null }
+
+        // locked by primary key and checked again, a loan returned in the meantime is skipped
+        val open = client.sql(LOCK_BORROWS_QUERY)
+            .bind("borrowIds", borrowIds)
+            .map { row: Row, _ ->
+                row.rowMapping()
+            }
+            .flow()
+            .toList()
+            .filter { !it.isBringBack }
+            .groupByTo(HashMap()) { it.studentId to it.bookId }
+        // one open loan per item, oldest first
+        val returned = items.map { open[it.studentId to it.bookId]?.removeFirstOrNull() }
+        val done = returned.filterNotNull()
+        if (done.isEmpty()) return returned
+
+        client.sql(RETURN_BORROWS_QUERY)
+            .bind("givBackDate", returnDate)
+            .bind("borrowIds", done.map { it.borrowId!! })
+            .fetch()
+            .awaitRowsUpdated()
+        changeOnLoan(done, release = true)
+        appendLedger(done, InventoryEntryType.RETURN)
+        return returned.map { it?.copyOf(giveBackDate = returnDate, isBringBack = true) }
     }
 
+    @Transactional
     override suspend fun bookReturned(borrowId: Long): Boolean {
+        val borrow = lockBorrow(borrowId) ?: return false
+        if (borrow.isBringBack) return false
         val rowEffected = client.sql(BOOK_RETURN)
             .bind("borrowId", borrowId)
             .bind("givBackDate", indoChinaDate())
             .fetch()
             .awaitRowsUpdated()
-        return rowEffected > 0
+        if (rowEffected == 0L) return false
+        client.sql(RELEASE_COPIES_QUERY)
+            .bind("bookId", borrow.bookId)
+            .bind("quan", borrow.bookQuan)
+            .fetch()
+            .awaitRowsUpdated()
+        appendLedger(borrow, InventoryEntryType.RETURN)
+        return true
     }
 
+    private suspend fun lockBorrow(borrowId: Long): Borrow? = client.sql(LOCK_BORROW_QUERY)
+        .bind("borrowId", borrowId)
+        .map { row: Row, _ ->
+            row.rowMapping()
+        }
+        .awaitOneOrNull()
+
+    private suspend fun appendLedger(borrow: Borrow, type: InventoryEntryType) =
+        appendLedger(listOf(borrow), type)
+
+    private suspend fun appendLedger(borrows: List<Borrow>, type: InventoryEntryType) {
+        client.sql(SAVE_LEDGER_ENTRIES_QUERY)
+            .bind("rows", borrows.map {
+                arrayOf<Any>(it.bookId, it.borrowId!!, it.studentId, type.name, it.bookQuan)
+            })
+            .await()
+    }
+
+    // one update for all books of [borrows]
+    private suspend fun changeOnLoan(borrows: List<Borrow>, release: Boolean) {
+        val copies = borrows.groupBy { it.bookId }.mapValues { (_, loans) -> loans.sumOf { it.bookQuan } }
+        val bookIds = copies.keys.sorted()
+        var spec = client.sql(changeOnLoanQuery(bookIds.size, release))
+            .bind("bookIds", bookIds)
+        bookIds.forEachIndexed { i, bookId ->
+            spec = spec.bind("book$i", bookId).bind("quan$i", copies.getValue(bookId))
+        }
+        spec.fetch().awaitRowsUpdated()
+    }
+
+    private fun Borrow.copyOf(
+        borrowId: Long? = this.borrowId,
+        giveBackDate: LocalDate = this.giveBackDate,
+        isBringBack: Boolean = this.isBringBack
+    ): Borrow = Borrow(
+        borrowId = borrowId,
+        bookId = bookId,
+        bookQuan = bookQuan,
+        studentId = studentId,
+        borrowDate = borrowDate,
+        giveBackDate = giveBackDate,
+        isBringBack = isBringBack,
+        isExtend = isExtend
+    )
+
     override suspend fun findBorrowByStudentIdBookId(
         studentId: Long,
         bookId: String
@@ -148,9 +431,9 @@ class BorrowRepositoryImp(
             .toList()
     }
 
-    override suspend fun getAllBorrowForEachMajor(
+    override fun getAllBorrowForEachMajor(
         startDate: LocalDate, endDate: LocalDate
-    ): Flow<Map<String, Int>> {
+    ): Flow<Pair<String, Int>> {
         val query = """
             SELECT m.major_name AS major_name, COUNT(bb.borrow_id) AS borrow_count 
             FROM borrow_books bb 
@@ -165,7 +448,7 @@ class BorrowRepositoryImp(
             .map { row ->
                 val majorName = row.get("major_name", String::class.java)!!
                 val count = row.get("borrow_count", Int::class.java)!!
-                mapOf(majorName to count)
+                majorName to count
             }
             .all()
             .asFlow()
@@ -200,6 +483,27 @@ class BorrowRepositoryImp(
             }.flow()
     }
 
+    override suspend fun countBorrowReturnByMonth(startDate: LocalDate, endDate: LocalDate): List<BorrowReturn> {
+        return client.sql(COUNT_BORROW_RETURN_BY_MONTH_QUERY)
+            .bind("startDate", startDate)
+            .bind("endDate", endDate)
+            .map { row ->
+                BorrowReturn(
+                    month = YearMonth.parse(row.get("month", String::class.java)!!),
+                    borrow = row.get("borrowed", Long::class.java)!!.toInt(),
+                    returned = row.get("returned", Long::class.java)!!.toInt()
+                )
+            }
+            .flow()
+            .toList()
+    }
+
+    override suspend fun firstBorrowDate(): LocalDate? {
+        return client.sql(FIRST_BORROW_DATE_QUERY)
+            .map { row -> row.get("first_date", LocalDate::class.java) }
+            .awaitOneOrNull()
+    }
+
     override suspend fun getNotBringBackByStudentId(studentId: Long): List<Borrow?> {
         return client.sql("Select * from borrow_books where student_id = :studentId and is_bring_back = false;")
             .bind("studentId", studentId)
@@ -211,20 +515,21 @@ class BorrowRepositoryImp(
     }
 
     override suspend fun getAllBorrowDetail(): List<BorrowDetail> {
-        return client.sql("""
-            SELECT bb.borrow_id, bb.book_id, b.book_title,
-            bb.book_quan, bb.student_id, s.student_name,
-            bb.borrow_date, bb.give_back_date, bb.is_bring_back,
-            bb.is_extend
-            FROM borrow_books bb 
-                inner join books b on bb.book_id = b.book_id
-                inner join students s on bb.student_id = s.student_id;
-                """
-        ).map { row, _ ->
+        return getBorrowDetailStream().toList()
+    }
+
+    override fun getBorrowDetailStream(): Flow<BorrowDetail> {
+        return client.sql(BORROW_DETAIL_QUERY).map { row, _ ->
             row.borrowDetailMapping()
-        }.all().collectList().awaitSingle()
+        }.flow()
     }
 
+    override suspend fun getPage(page: PageRequest): CursorPage<Borrow> =
+        client.keysetPage(GET_BORROWS_QUERY, borrowSorts, page) { it.rowMapping() }
+
+    override suspend fun getBorrowDetailPage(page: PageRequest): CursorPage<BorrowDetail> =
+        client.keysetPage(BORROW_DETAIL_QUERY, borrowDetailSorts, page) { it.borrowDetailMapping() }
+
     override suspend fun searchBorrow(keyword: String): List<BorrowDetail> {
         return client.sql("""
             SELECT bb.borrow_id, bb.book_id, b.book_title,
@@ -297,4 +602,14 @@ class BorrowRepositoryImp(
         "isBringBack" to borrow.isBringBack,
         "isExtend" to borrow.isExtend
     )
+
+    private val borrowSorts = listOf(
+        KeysetSort<Borrow>("id", "borrow_id", "borrow_id", { it.borrowId!! }, { it.borrowId!! }, String::toLong, String::toLong),
+        KeysetSort<Borrow>("date", "borrow_date", "borrow_id", { it.borrowDate }, { it.borrowId!! }, LocalDate::parse, String::toLong)
+    )
+
+    private val borrowDetailSorts = listOf(
+        KeysetSort<BorrowDetail>("id", "bb.borrow_id", "bb.borrow_id", { it.borrowId!! }, { it.borrowId!! }, String::toLong, String::toLong),
+        KeysetSort<BorrowDetail>("date", "bb.borrow_date", "bb.borrow_id", { it.borrowDate }, { it.borrowId!! }, LocalDate::parse, String::toLong)
+    )
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.data.repository
+
+import io.r2dbc.spi.Row
+import kotlinx.coroutines.flow.toList
+import org.springframework.r2dbc.core.*
+import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.ACQUIRE_LOCK_QUERY
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.GET_TOKEN_QUERY
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.GET_WATERMARK_QUERY
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.INSERT_LOCK_QUERY
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.IS_HELD_QUERY
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.RECENT_RUNS_QUERY
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.RELEASE_LOCK_QUERY
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.SAVE_RUN_QUERY
+import sru.edu.sru_lib_management.core.data.query.JobLockQuery.SAVE_WATERMARK_QUERY
+import sru.edu.sru_lib_management.core.domain.model.JobRun
+import sru.edu.sru_lib_management.core.domain.model.JobRunStatus
+import sru.edu.sru_lib_management.core.domain.repository.JobLockRepository
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
+import java.time.Duration
+import java.time.LocalDate
+import java.time.LocalDateTime
+
+@Component
+class JobLockRepositoryImp(
+    private val client: DatabaseClient
+) : JobLockRepository {
+
+    // one transaction: the row lock of the update keeps the token read below ours
+    @Transactional
+    override suspend fun tryAcquire(jobName: String, node: String, lockAtMostFor: Duration): Long? {
+        client.sql(INSERT_LOCK_QUERY)
+            .bind("jobName", jobName)
+            .await()
+        val acquired = client.sql(ACQUIRE_LOCK_QUERY)
+            .bind("jobName", jobName)
+            .bind("node", node)
+            .bind("lockAtMostMicros", lockAtMostFor.toNanos() / 1000)
+            .fetch()
+            .awaitRowsUpdated()
+        if (acquired == 0L) return null
+        return client.sql(GET_TOKEN_QUERY)
+            .bind("jobName", jobName)
+            .bind("node", node)
+            .map { row: Row, _ -> row.get("fencing_token", java.lang.Long::class.java)!!.toLong() }
+            .awaitOne()
+    }
+
+    override suspend fun release(jobName: String, fencingToken: Long, lockAtLeastFor: Duration) {
+        client.sql(RELEASE_LOCK_QUERY)
+            .bind("jobName", jobName)
+            .bind("fencingToken", fencingToken)
+            .bind("lockAtLeastMicros", lockAtLeastFor.toNanos() / 1000)
+            .await()
+    }
+
+    override suspend fun isHeld(jobName: String, fencingToken: Long): Boolean {
+        return client.sql(IS_HELD_QUERY)
+            .bind("jobName", jobName)
+            .bind("fencingToken", fencingToken)
+            .map { row: Row, _ -> row.get("held", java.lang.Long::class.java)!!.toLong() }
+            .awaitOne() > 0
+    }
+
+    override suspend fun getWatermark(jobName: String): LocalDate? {
+        return client.sql(GET_WATERMARK_QUERY)
+            .bind("jobName", jobName)
+            .map { row: Row, _ -> row.get("watermark", LocalDate::class.java) }
+            .awaitOneOrNull()
+    }
+
+    override suspend fun saveWatermark(jobName: String, fencingToken: Long, watermark: LocalDate): Boolean {
+        return client.sql(SAVE_WATERMARK_QUERY)
+            .bind("jobName", jobName)
+            .bind("fencingToken", fencingToken)
+            .bind("watermark", watermark)
+            .bind("updatedAt", indoChinaDateTime())
+            .fetch()
+            .awaitRowsUpdated() > 0
+    }
+
+    override suspend fun saveRun(run: JobRun) {
+        client.sql(SAVE_RUN_QUERY)
+            .bind("jobName", run.jobName)
+            .bind("fencingToken", run.fencingToken)
+            .bind("node", run.node)
+            .bind("startedAt", run.startedAt)
+            .bind("finishedAt", run.finishedAt)
+            .bind("durationMs", run.durationMs)
+            .let { spec -> run.rowsAffected?.let { spec.bind("rowsAffected", it) } ?: spec.bindNull("rowsAffected", java.lang.Long::class.java) }
+            .bind("status", run.status.name)
+            .let { spec -> run.error?.let { spec.bind("error", it.take(500)) } ?: spec.bindNull("error", String::class.java) }
+            .await()
+    }
+
+    override suspend fun recentRuns(limit: Int): List<JobRun> {
+        return client.sql(RECENT_RUNS_QUERY)
+            .bind("limit", limit)
+            .map { row: Row, _ ->
+                JobRun(
+                    runId = row.get("run_id", java.lang.Long::class.java)!!.toLong(),
+                    jobName = row.get("job_name", String::class.java)!!,
+                    fencingToken = row.get("fencing_token", java.lang.Long::class.java)!!.toLong(),
+                    node = row.get("node", String::class.java)!!,
+                    startedAt = row.get("started_at", LocalDateTime::class.java)!!,
+                    finishedAt = row.get("finished_at", LocalDateTime::class.java)!!,
+                    durationMs = row.get("duration_ms", java.lang.Long::class.java)!!.toLong(),
+                    rowsAffected = row.get("rows_affected", java.lang.Long::class.java)?.toLong(),
+                    status = JobRunStatus.valueOf(row.get("status", String::class.java)!!),
+                    error = row.get("error", String::class.java)
+                )
+            }
+            .flow()
+            .toList()
+    }
+}
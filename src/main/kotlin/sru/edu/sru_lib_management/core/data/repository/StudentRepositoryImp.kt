@@ -14,6 +14,8 @@ import org.springframework.r2dbc.core.awaitOneOrNull
 import org.springframework.r2dbc.core.awaitRowsUpdated
 import org.springframework.stereotype.Component
 import org.springframework.transaction.annotation.Transactional
+import sru.edu.sru_lib_management.core.data.cache.VisitorCache
+import sru.edu.sru_lib_management.core.data.query.KeysetSort
 import sru.edu.sru_lib_management.core.data.query.StudentQuery.DELETE_STUDENT_QUERY
 import sru.edu.sru_lib_management.core.data.query.StudentQuery.GET_STUDENTS_DETAIL_QUERY
 import sru.edu.sru_lib_management.core.data.query.StudentQuery.GET_STUDENTS_QUERY
@@ -21,14 +23,18 @@ import sru.edu.sru_lib_management.core.data.query.StudentQuery.GET_STUDENT_DETAI
 import sru.edu.sru_lib_management.core.data.query.StudentQuery.GET_STUDENT_QUERY
 import sru.edu.sru_lib_management.core.data.query.StudentQuery.SAVE_STUDENT_QUERY
 import sru.edu.sru_lib_management.core.data.query.StudentQuery.UPDATE_STUDENT_QUERY
+import sru.edu.sru_lib_management.core.data.query.keysetPage
 import sru.edu.sru_lib_management.core.domain.dto.StudentDto
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Students
 import sru.edu.sru_lib_management.core.domain.repository.StudentRepository
 import java.time.LocalDate
 
 @Component
 class StudentRepositoryImp (
-    private val client: DatabaseClient
+    private val client: DatabaseClient,
+    private val visitorCache: VisitorCache
 ): StudentRepository {
 
     override fun getStudentDetail(): Flow<StudentDto> {
@@ -40,6 +46,9 @@ class StudentRepositoryImp (
             .asFlow()
     }
 
+    override suspend fun getStudentDetailPage(page: PageRequest): CursorPage<StudentDto> =
+        client.keysetPage(GET_STUDENTS_DETAIL_QUERY, studentSorts, page) { it.mapToStudentDto() }
+
     override suspend fun getStudentDetailById(studentId: Long): StudentDto? {
         return client.sql(GET_STUDENT_DETAIL_QUERY)
             .bind("studentId", studentId)
@@ -91,6 +100,8 @@ class StudentRepositoryImp (
             .bind("studentId", id)
             .fetch()
             .awaitRowsUpdated()
+        // the visitor row is deleted with the student
+        visitorCache.evictStudent(id)
         return rowEffect > 0
     }
 
@@ -124,4 +135,9 @@ class StudentRepositoryImp (
         majorName = this.get("majorName", String::class.java)!!,
         generation = this.get("generation", Int::class.java)!!
     )
+
+    private val studentSorts = listOf(
+        KeysetSort<StudentDto>("id", "s.student_id", "s.student_id", { it.studentId!! }, { it.studentId!! }, String::toLong, String::toLong),
+        KeysetSort<StudentDto>("name", "s.student_name", "s.student_id", { it.studentName }, { it.studentId!! }, { it }, String::toLong)
+    )
 }
@@ -5,13 +5,15 @@ import org.springframework.r2dbc.core.DatabaseClient
 import org.springframework.r2dbc.core.awaitOneOrNull
 import org.springframework.r2dbc.core.awaitSingleOrNull
 import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.core.data.cache.VisitorCache
 import sru.edu.sru_lib_management.core.domain.model.Visitor
 import sru.edu.sru_lib_management.core.domain.model.VisitorType
 import sru.edu.sru_lib_management.core.domain.repository.VisitorRepository
 
 @Component
 class VisitorRepositoryImp(
-    private val client: DatabaseClient
+    private val client: DatabaseClient,
+    private val visitorCache: VisitorCache
 ) : VisitorRepository {
 
     companion object {
@@ -29,31 +31,23 @@ class VisitorRepositoryImp(
             INSERT INTO visitors (visitor_type, student_id, sru_staff_id)
             VALUES (:visitorType, :studentId, :sruStaffId)
         """
-        const val FIND_VISITOR_BY_STUDENT = """
-            SELECT visitor_id
-            FROM visitors
-            WHERE student_id = :studentId
-        """
-        const val FIND_VISITOR_BY_STAFF = """
-            SELECT visitor_id
-            FROM visitors
-            WHERE sru_staff_id = :staffId
-        """
     }
 
-    override suspend fun findByStudentId(studentId: Long): Visitor? {
-        return client.sql(FIND_BY_STUDENT_ID)
-            .bind("studentId", studentId)
-            .map { row: Row, _ -> row.rowMapping() }
-            .awaitSingleOrNull()
-    }
+    override suspend fun findByStudentId(studentId: Long): Visitor? =
+        visitorCache.studentVisitor(studentId) { id ->
+            client.sql(FIND_BY_STUDENT_ID)
+                .bind("studentId", id)
+                .map { row: Row, _ -> row.rowMapping() }
+                .awaitSingleOrNull()
+        }
 
-    override suspend fun findByStaffId(staffId: String): Visitor? {
-        return client.sql(FIND_BY_STAFF_ID)
-            .bind("staffId", staffId)
-            .map { row: Row, _ -> row.rowMapping() }
-            .awaitSingleOrNull()
-    }
+    override suspend fun findByStaffId(staffId: String): Visitor? =
+        visitorCache.staffVisitor(staffId) { id ->
+            client.sql(FIND_BY_STAFF_ID)
+                .bind("staffId", id)
+                .map { row: Row, _ -> row.rowMapping() }
+                .awaitSingleOrNull()
+        }
 
     override suspend fun save(visitor: Visitor): Visitor {
         var visitorId = 0L
@@ -84,20 +78,15 @@ class VisitorRepositoryImp(
             visitorId = (result["visitor_id"] as Number).toLong()
         }
 
-        return visitor.copy(visitorId = visitorId)
+        return visitor.copy(visitorId = visitorId).also { visitorCache.put(it) }
     }
 
+    // served from the visitor cache, a miss loads the whole visitor row
     override suspend fun findVisitorIdByStudentId(studentId: Long): Long? =
-        client.sql(FIND_VISITOR_BY_STUDENT)
-            .bind("studentId", studentId)
-            .map { row, _ -> row.get("visitor_id", java.lang.Long::class.java)!!.toLong() }
-            .awaitOneOrNull()
+        findByStudentId(studentId)?.visitorId
 
     override suspend fun findVisitorIdByStaffId(staffId: String): Long? =
-        client.sql(FIND_VISITOR_BY_STAFF)
-            .bind("staffId", staffId)
-            .map { row, _ -> row.get("visitor_id", java.lang.Long::class.java)!!.toLong() }
-            .awaitOneOrNull()
+        findByStaffId(staffId)?.visitorId
 
     private fun Row.rowMapping(): Visitor = Visitor(
         visitorId = this.get("visitor_id", java.lang.Long::class.java)?.toLong(),
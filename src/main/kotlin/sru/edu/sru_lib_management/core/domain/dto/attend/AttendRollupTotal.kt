@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.attend
+
+import sru.edu.sru_lib_management.core.domain.model.TimeSlot
+import sru.edu.sru_lib_management.core.domain.model.VisitorType
+import java.time.LocalDate
+import java.time.YearMonth
+
+/**
+ * Sum of attend rollup rows. Only the dimensions that were grouped by are set.
+ */
+data class AttendRollupTotal(
+    val date: LocalDate? = null,
+    val month: YearMonth? = null,
+    val weekend: Boolean? = null,
+    val visitorType: VisitorType? = null,
+    val major: String? = null,
+    val degreeLevel: String? = null,
+    val generation: Int? = null,
+    val gender: String? = null,
+    val timeSlot: TimeSlot? = null,
+    val purpose: String? = null,
+    val visits: Long,
+    val closedVisits: Long,
+    val totalMinutes: Long
+)
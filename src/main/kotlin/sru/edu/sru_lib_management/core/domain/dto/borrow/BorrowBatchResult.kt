@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.borrow
+
+import sru.edu.sru_lib_management.core.domain.model.Borrow
+
+// result of one item of a batch checkout / return, index is its position in the request
+data class BorrowBatchResult(
+    val index: Int,
+    val studentId: Long,
+    val bookId: String,
+    val success: Boolean,
+    val message: String?,
+    val borrow: Borrow?
+)
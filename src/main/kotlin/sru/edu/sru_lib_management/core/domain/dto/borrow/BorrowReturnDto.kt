@@ -0,0 +1,11 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.borrow
+
+data class BorrowReturnDto(
+    val studentId: Long,
+    val bookId: String
+)
@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.metrics
+
+data class CacheStats(
+    val name: String,
+    val size: Int,
+    val maxSize: Int,
+    val hits: Long,
+    val misses: Long,
+    val evictions: Long,
+    val hitRate: Double
+)
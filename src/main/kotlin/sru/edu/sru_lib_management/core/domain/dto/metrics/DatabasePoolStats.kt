@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.metrics
+
+data class DatabasePoolStats(
+    val acquired: Int,
+    val allocated: Int,
+    val idle: Int,
+    val pendingAcquires: Int,
+    val maxAllocated: Int,
+    val maxPendingAcquires: Int,
+    val connectionsCreated: Long,
+    val avgCreateLatencyMs: Double,
+    val maxCreateLatencyMs: Double,
+    val acquireCount: Long,
+    val acquireFailures: Long,
+    val avgAcquireLatencyMs: Double,
+    val maxAcquireLatencyMs: Double
+)
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.metrics
+
+data class EmailOutboxStats(
+    val pending: Long,
+    val sending: Long,
+    val sent: Long,
+    val dead: Long,
+    // counters of this instance since start
+    val batches: Long,
+    val delivered: Long,
+    val retried: Long,
+    val deadLettered: Long
+)
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.metrics
+
+data class HashingStats(
+    val threads: Int,
+    val activeThreads: Int,
+    val queueDepth: Int,
+    val queueCapacity: Int,
+    val completed: Long,
+    val rejected: Long,
+    val averageWaitMs: Double,
+    val averageHashMs: Double,
+    val maxHashMs: Double
+)
@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.metrics
+
+data class OutboxStats(
+    val sessionId: String,
+    val userId: String,
+    val channel: String,
+    val depth: Int,
+    val capacity: Int,
+    val enqueued: Long,
+    val sent: Long,
+    val dropped: Long
+)
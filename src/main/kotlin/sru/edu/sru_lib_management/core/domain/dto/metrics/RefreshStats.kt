@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.metrics
+
+data class RefreshStats(
+    val name: String,
+    val requests: Long,
+    val runs: Long,
+    val coalesced: Long,
+    val failures: Long
+)
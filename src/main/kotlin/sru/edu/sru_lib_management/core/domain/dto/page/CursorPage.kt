@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.page
+
+/** One page of a list; pass [nextCursor] back as `cursor` to get the next one, null on the last page. */
+data class CursorPage<T>(
+    val items: List<T>,
+    val size: Int,
+    val sort: String,
+    val nextCursor: String?
+)
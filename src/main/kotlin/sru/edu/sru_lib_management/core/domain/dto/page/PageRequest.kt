@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.page
+
+/**
+ * Keyset page request.
+ * [sort] is one of the sort keys of the resource, prefixed with "-" for descending (e.g. "-date").
+ * [cursor] is the nextCursor of the previous page, null for the first page.
+ */
+data class PageRequest(
+    val sort: String,
+    val size: Int = DEFAULT_SIZE,
+    val cursor: String? = null
+) {
+    companion object {
+        const val DEFAULT_SIZE = 50
+        const val MAX_SIZE = 500
+    }
+}
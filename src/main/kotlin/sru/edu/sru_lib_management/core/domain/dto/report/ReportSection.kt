@@ -0,0 +1,15 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.dto.report
+
+/**
+ * One record of a streamed report. List sections (monthly entries, donations)
+ * are written one element per record, the others as a single record.
+ */
+data class ReportSection(
+    val section: String,
+    val data: Any
+)
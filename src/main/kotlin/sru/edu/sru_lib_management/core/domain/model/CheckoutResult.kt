@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.model
+
+data class CheckoutResult(
+    val status: CheckoutStatus,
+    val borrow: Borrow?,
+    // the student's loans not returned, before this checkout
+    val activeLoans: Int
+)
+
+enum class CheckoutStatus {
+    OK, STUDENT_NOT_FOUND, BOOK_NOT_FOUND, LOAN_LIMIT, BOOK_UNAVAILABLE, LOAN_NOT_FOUND
+}
+
+// entry_type of inventory_ledger
+enum class InventoryEntryType {
+    BORROW, RETURN, EXTEND
+}
@@ -0,0 +1,15 @@
+package sru.edu.sru_lib_management.core.domain.model
+
+/**
+ * Result of the SaveEntryScan procedure.
+ * [attend] is only set when [status] is [EntryScanStatus.OK].
+ */
+data class EntryScanResult(
+    val status: EntryScanStatus,
+    val attend: Attend?,
+    val closedVisits: Int
+)
+
+enum class EntryScanStatus {
+    OK, STUDENT_NOT_FOUND, STAFF_NOT_FOUND
+}
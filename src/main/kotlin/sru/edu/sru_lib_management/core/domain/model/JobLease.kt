@@ -0,0 +1,15 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.model
+
+/**
+ * Lock held by a running job. [fencingToken] increases with every acquire of [jobName],
+ * so a holder whose lease expired can find out it was taken over.
+ */
+data class JobLease(
+    val jobName: String,
+    val fencingToken: Long
+)
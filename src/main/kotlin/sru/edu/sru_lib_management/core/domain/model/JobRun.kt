@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.model
+
+import com.fasterxml.jackson.annotation.JsonFormat
+import java.time.LocalDateTime
+
+data class JobRun(
+    val runId: Long? = null,
+    val jobName: String,
+    val fencingToken: Long,
+    val node: String,
+    @field:JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    val startedAt: LocalDateTime,
+    @field:JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    val finishedAt: LocalDateTime,
+    val durationMs: Long,
+    val rowsAffected: Long?,
+    val status: JobRunStatus,
+    val error: String? = null
+)
+
+enum class JobRunStatus {
+    SUCCESS,
+    FAILED
+}
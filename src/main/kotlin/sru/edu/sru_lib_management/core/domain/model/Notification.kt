@@ -32,7 +32,9 @@ data class Notification(
 enum class NotificationType {
     BOOK_TRASH_ALERT,
     BOOK_APPROVAL_REQUEST,
-    CHAT
+    CHAT,
+    BORROW_DUE_SOON,
+    BORROW_OVERDUE
 }
 
 enum class NotificationStatus {
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.model
+
+/**
+ * Columns attend rollup totals can be grouped by.
+ * [MONTH] and [WEEKEND] are derived from the rollup date.
+ */
+enum class RollupDimension {
+    DATE,
+    MONTH,
+    WEEKEND,
+    VISITOR_TYPE,
+    MAJOR,
+    DEGREE,
+    GENERATION,
+    GENDER,
+    TIME_SLOT,
+    PURPOSE
+}
@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.model
+
+/**
+ * Opening session an entry time falls in, see [sru.edu.sru_lib_management.utils.OpeningTime].
+ */
+enum class TimeSlot {
+    MORNING,
+    AFTERNOON,
+    EVENING,
+    OTHER
+}
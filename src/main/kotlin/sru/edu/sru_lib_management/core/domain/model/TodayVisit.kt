@@ -0,0 +1,18 @@
+package sru.edu.sru_lib_management.core.domain.model
+
+import java.time.LocalTime
+
+/**
+ * One attend row joined with its visitor, used to (re)build the live occupancy.
+ */
+data class TodayVisit(
+    val attendId: Long,
+    val visitorId: Long,
+    val studentId: Long?,
+    val staffId: String?,
+    val entryTime: LocalTime,
+    val exitTime: LocalTime?
+) {
+    // the id scanned at the gate: student id or staff id
+    val entryId: String get() = studentId?.toString() ?: staffId!!
+}
@@ -14,8 +14,12 @@ import sru.edu.sru_lib_management.core.domain.dto.attend.AttendDetail
 import sru.edu.sru_lib_management.core.domain.dto.attend.StaffAttendDto
 import sru.edu.sru_lib_management.core.domain.dto.dashboard.DayVisitor
 import sru.edu.sru_lib_management.core.domain.dto.dashboard.TotalMajorVisitor
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Attend
+import sru.edu.sru_lib_management.core.domain.model.EntryScanResult
 import sru.edu.sru_lib_management.core.domain.model.ExitUpdateResult
+import sru.edu.sru_lib_management.core.domain.model.TodayVisit
 import sru.edu.sru_lib_management.core.domain.model.VisitorDetail
 import sru.edu.sru_lib_management.core.domain.model.VisitorType
 import sru.edu.sru_lib_management.core.domain.repository.crud.ICrudRepository
@@ -31,6 +35,23 @@ interface AttendRepository : ICrudRepository<Attend, Long> {
 
     suspend fun updateExitTimeByVisitorId(visitorId: Long, exitTime: LocalTime, date: LocalDate): Boolean
 
+    // close every visit of the day still open at the session cutoff, returns the rows closed
+    suspend fun closeOpenVisits(date: LocalDate, exitTime: LocalTime): Long
+
+    // resolve visitor, close open visits and insert the attend in one call
+    suspend fun saveEntryScan(
+        studentId: Long?,
+        staffId: String?,
+        entryTime: LocalTime,
+        exitTime: LocalTime?,
+        purpose: String,
+        date: LocalDate
+    ): EntryScanResult
+
+    // every visit of the day with its visitor ids, used by the live occupancy
+    fun getVisitsByDate(date: LocalDate): Flow<TodayVisit>
+    suspend fun getVisitorVisitsByDate(visitorId: Long, date: LocalDate): List<TodayVisit>
+
     suspend fun count(date: LocalDate, period: Int): Int?
     suspend fun getAttendByEntryId(visitorId: Long, date: LocalDate): List<Attend?>
     suspend fun getWeeklyVisit(): List<DayVisitor>
@@ -49,4 +70,7 @@ interface AttendRepository : ICrudRepository<Attend, Long> {
 
     fun getAllStaffAttend(): Flow<StaffAttendDto>
 
+    // keyset page, sort: id | date
+    suspend fun getPage(page: PageRequest): CursorPage<Attend>
+
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.repository
+
+import sru.edu.sru_lib_management.core.domain.dto.attend.AttendRollupTotal
+import sru.edu.sru_lib_management.core.domain.model.RollupDimension
+import sru.edu.sru_lib_management.core.domain.model.VisitorType
+import java.time.LocalDate
+
+interface AttendRollupRepository {
+    /** Records [date] as waiting for a refresh. */
+    suspend fun markDirty(date: LocalDate)
+
+    /** Dates waiting for a refresh within the range (open ended when null). */
+    suspend fun dirtyDates(startDate: LocalDate?, endDate: LocalDate?): List<LocalDate>
+
+    /**
+     * Replaces the rollup rows of [startDate]..[endDate] with a fresh aggregate of the attend table
+     * and clears the dirty dates of the range, in one transaction.
+     */
+    suspend fun rebuild(startDate: LocalDate, endDate: LocalDate): Long
+
+    /** Sums the rollup rows of the range (open ended when null), grouped by [groupBy]. */
+    suspend fun sum(
+        startDate: LocalDate?,
+        endDate: LocalDate?,
+        groupBy: List<RollupDimension>,
+        visitorType: VisitorType?,
+        major: String?
+    ): List<AttendRollupTotal>
+
+    /** Dates the student has attend rows on. */
+    suspend fun studentAttendDates(studentId: Long): List<LocalDate>
+
+    /** First and last attend date, null when there is no attend yet. */
+    suspend fun attendDateRange(): Pair<LocalDate, LocalDate>?
+}
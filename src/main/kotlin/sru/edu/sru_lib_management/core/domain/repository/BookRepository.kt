@@ -9,6 +9,8 @@ import kotlinx.coroutines.flow.Flow
 import org.springframework.stereotype.Repository
 import sru.edu.sru_lib_management.core.domain.dto.BookAvailableDto
 import sru.edu.sru_lib_management.core.domain.dto.FundCount
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Books
 import sru.edu.sru_lib_management.core.domain.repository.crud.ICrudRepository
 import java.time.LocalDate
@@ -27,4 +29,7 @@ interface BookRepository : ICrudRepository<Books, String>{
     suspend fun universityFunding(): List<FundCount>
     suspend fun allBookDonation(): List<FundCount>
     suspend fun getCurrentAvailableBook(): List<Books>
+
+    // keyset page, sort: id | title
+    suspend fun getPage(page: PageRequest): CursorPage<Books>
 }
\ No newline at end of file
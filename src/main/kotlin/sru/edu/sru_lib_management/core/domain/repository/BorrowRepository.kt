@@ -9,8 +9,13 @@ import kotlinx.coroutines.flow.Flow
 import org.springframework.stereotype.Repository
 import sru.edu.sru_lib_management.core.domain.dto.BorrowDetail
 import sru.edu.sru_lib_management.core.domain.dto.CompareValue
+import sru.edu.sru_lib_management.core.domain.dto.analytic.BorrowReturn
 import sru.edu.sru_lib_management.core.domain.dto.analytic.MostBorrow
+import sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowReturnDto
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Borrow
+import sru.edu.sru_lib_management.core.domain.model.CheckoutResult
 import sru.edu.sru_lib_management.core.domain.repository.crud.ICrudRepository
 import java.sql.Date
 import java.time.LocalDate
@@ -22,17 +27,38 @@ interface BorrowRepository : ICrudRepository<Borrow, Long> {
 
     suspend fun extendBorrow(borrowId: Long): Long
 
-    //
-    fun findOverDueBook(): Flow<Borrow>
+    // one transaction: loan limit, conditional copy reservation, insert and ledger entry
+    suspend fun checkout(borrow: Borrow, maxLoans: Int): CheckoutResult
+
+    // one transaction: moves the copies of a changed book, quantity, student or return state and records it in the ledger
+    suspend fun updateLoan(borrow: Borrow): CheckoutResult
+
+    // batches in one transaction, results are in the order of the input
+    suspend fun checkoutBatch(borrows: List<Borrow>, maxLoans: Int): List<CheckoutResult>
+    suspend fun returnBatch(items: List<BorrowReturnDto>, returnDate: LocalDate): List<Borrow?>
+
+    // not returned and due before today
+    fun findOverDueBook(today: LocalDate): Flow<Borrow>
+    fun getActiveBorrows(): Flow<Borrow>
+    suspend fun getActiveBorrowsDueOn(dueDate: LocalDate): List<Borrow>
     suspend fun bookReturned(borrowId: Long): Boolean
     suspend fun findBorrowByStudentIdBookId(studentId: Long, bookId: String): List<Borrow>
-    suspend fun getAllBorrowForEachMajor(startDate: LocalDate, endDate: LocalDate): Flow<Map<String, Int>>
+    // (major name, borrow count)
+    fun getAllBorrowForEachMajor(startDate: LocalDate, endDate: LocalDate): Flow<Pair<String, Int>>
 
     fun getMostBorrow(startDate: LocalDate, endDate: LocalDate): Flow<MostBorrow>
+    // months without borrows or returns are left out
+    suspend fun countBorrowReturnByMonth(startDate: LocalDate, endDate: LocalDate): List<BorrowReturn>
+    suspend fun firstBorrowDate(): LocalDate?
     suspend fun getNotBringBackByStudentId(studentId: Long): List<Borrow?>
 
     suspend fun getAllBorrowDetail(): List<BorrowDetail>
+    fun getBorrowDetailStream(): Flow<BorrowDetail>
     suspend fun searchBorrow(keyword: String): List<BorrowDetail>
 
     fun getActiveBorrowDetail(): Flow<BorrowDetail>
+
+    // keyset pages, sort: id | date
+    suspend fun getPage(page: PageRequest): CursorPage<Borrow>
+    suspend fun getBorrowDetailPage(page: PageRequest): CursorPage<BorrowDetail>
 }
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.repository
+
+import sru.edu.sru_lib_management.core.domain.model.JobRun
+import java.time.Duration
+import java.time.LocalDate
+
+interface JobLockRepository {
+    /** Takes the lock of [jobName] for [lockAtMostFor] if it is free. Returns the fencing token, null when held elsewhere. */
+    suspend fun tryAcquire(jobName: String, node: String, lockAtMostFor: Duration): Long?
+
+    /** Frees the lock, but not before [lockAtLeastFor] after it was taken. No-op when [fencingToken] is stale. */
+    suspend fun release(jobName: String, fencingToken: Long, lockAtLeastFor: Duration)
+
+    /** True while [fencingToken] is the current, unexpired holder of [jobName]. */
+    suspend fun isHeld(jobName: String, fencingToken: Long): Boolean
+
+    suspend fun getWatermark(jobName: String): LocalDate?
+
+    /** Stores the watermark of [jobName] if [fencingToken] still holds the lock. */
+    suspend fun saveWatermark(jobName: String, fencingToken: Long, watermark: LocalDate): Boolean
+
+    suspend fun saveRun(run: JobRun)
+    suspend fun recentRuns(limit: Int): List<JobRun>
+}
@@ -8,6 +8,8 @@ package sru.edu.sru_lib_management.core.domain.repository
 import kotlinx.coroutines.flow.Flow
 import org.springframework.stereotype.Repository
 import sru.edu.sru_lib_management.core.domain.dto.StudentDto
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Students
 import sru.edu.sru_lib_management.core.domain.repository.crud.ICrudRepository
 
@@ -15,4 +17,7 @@ import sru.edu.sru_lib_management.core.domain.repository.crud.ICrudRepository
 interface StudentRepository : ICrudRepository<Students, Long>{
     fun getStudentDetail(): Flow<StudentDto>
     suspend fun getStudentDetailById(studentId: Long): StudentDto?
+
+    // keyset page, sort: id | name
+    suspend fun getStudentDetailPage(page: PageRequest): CursorPage<StudentDto>
 }
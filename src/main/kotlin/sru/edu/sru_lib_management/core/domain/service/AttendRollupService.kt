@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.domain.service
+
+import jakarta.annotation.PreDestroy
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Service
+import sru.edu.sru_lib_management.core.domain.dto.attend.AttendRollupTotal
+import sru.edu.sru_lib_management.core.domain.model.RollupDimension
+import sru.edu.sru_lib_management.core.domain.model.VisitorType
+import sru.edu.sru_lib_management.core.domain.repository.AttendRollupRepository
+import java.time.Duration
+import java.time.LocalDate
+
+/**
+ * Keeps the attend_daily_rollup table in step with the attend table.
+ *
+ * Every attend write marks its date dirty in attend_rollup_dirty; dirty dates are
+ * re-aggregated by a background worker after `attend.rollup.refresh-delay`, so a burst
+ * of scans costs one refresh of the day. The marks survive a restart: the worker
+ * refreshes whatever is left at startup. Reads refresh the dirty dates of their range
+ * first and then only sum rollup rows. [rebuild] re-aggregates history month by month.
+ */
+@Service
+class AttendRollupService(
+    private val attendRollupRepository: AttendRollupRepository,
+    @param:Value("\${attend.rollup.refresh-delay:2s}") private val refreshDelay: Duration
+) {
+    private val logger = LoggerFactory.getLogger(AttendRollupService::class.java)
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private val wakeUp = Channel<Unit>(Channel.CONFLATED)
+    // refreshes of the same date must not interleave (delete + insert)
+    private val mutex = Mutex()
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun start() {
+        // dates marked before a restart
+        wakeUp.trySend(Unit)
+        scope.launch {
+            while (isActive) {
+                wakeUp.receive()
+                delay(refreshDelay.toMillis())
+                try {
+                    refreshDirty(null, null)
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    logger.error("Attend rollup refresh failed: ${e.message}")
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        scope.cancel()
+    }
+
+    suspend fun markDirty(vararg dates: LocalDate) {
+        // the attend write is committed already, a lost mark must not fail it
+        try {
+            dates.distinct().forEach { attendRollupRepository.markDirty(it) }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            logger.error("Attend rollup mark of ${dates.joinToString()} failed, rebuild these dates: ${e.message}")
+        }
+        wakeUp.trySend(Unit)
+    }
+
+    /**
+     * Dates whose rollup rows count [studentId], to be marked dirty after a change of
+     * the student's rollup dimensions or a delete that cascades to the attend rows.
+     */
+    suspend fun studentAttendDates(studentId: Long): List<LocalDate> =
+        attendRollupRepository.studentAttendDates(studentId)
+
+    /**
+     * Sums rollup rows of [startDate]..[endDate] (open ended when null) grouped by [groupBy].
+     */
+    suspend fun totals(
+        startDate: LocalDate?,
+        endDate: LocalDate?,
+        groupBy: List<RollupDimension>,
+        visitorType: VisitorType? = VisitorType.STUDENT,
+        major: String? = null
+    ): List<AttendRollupTotal> {
+        refreshDirty(startDate, endDate)
+        return attendRollupRepository.sum(startDate, endDate, groupBy, visitorType, major)
+    }
+
+    /**
+     * Re-aggregates [startDate]..[endDate], the whole attend history when null.
+     * Runs one transaction per month. Returns the number of rollup rows written.
+     */
+    suspend fun rebuild(startDate: LocalDate?, endDate: LocalDate?): Long {
+        val range = attendRollupRepository.attendDateRange()
+        val from = startDate ?: range?.first ?: return 0
+        val to = endDate ?: range?.second ?: return 0
+        var rows = 0L
+        var monthStart = from
+        while (!monthStart.isAfter(to)) {
+            val monthEnd = minOf(monthStart.withDayOfMonth(monthStart.lengthOfMonth()), to)
+            rows += mutex.withLock { attendRollupRepository.rebuild(monthStart, monthEnd) }
+            monthStart = monthEnd.plusDays(1)
+        }
+        logger.info("Attend rollup rebuilt for $from..$to: $rows rows")
+        return rows
+    }
+
+    private suspend fun refreshDirty(startDate: LocalDate?, endDate: LocalDate?) {
+        val dates = attendRollupRepository.dirtyDates(startDate, endDate)
+        if (dates.isEmpty()) return
+        mutex.withLock {
+            // the mark is cleared in the transaction of the refresh, a failed one keeps it
+            dates.forEach { attendRollupRepository.rebuild(it, it) }
+        }
+    }
+}
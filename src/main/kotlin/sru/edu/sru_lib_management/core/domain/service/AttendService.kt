@@ -17,6 +17,8 @@ import sru.edu.sru_lib_management.core.domain.dto.attend.AttendDto
 import sru.edu.sru_lib_management.core.domain.dto.attend.StaffAttendDto
 import sru.edu.sru_lib_management.core.domain.dto.dashboard.TotalMajorVisitor
 import sru.edu.sru_lib_management.core.domain.dto.dashboard.WeeklyVisitor
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Attend
 import sru.edu.sru_lib_management.core.domain.model.VisitorDetail
 import java.time.LocalDate
@@ -26,6 +28,7 @@ import java.time.YearMonth
 @Service
 interface AttendService {
     fun getAllAttend(): CoreResult<Flow<Attend>>
+    suspend fun getAttendPage(page: PageRequest): CoreResult<CursorPage<Attend>>
     fun getAllAttendByDate(date: LocalDate): Flow<VisitorDetail>
     fun getAttendDetails(date: LocalDate): Flow<AttendDetail>
 
@@ -39,6 +42,14 @@ interface AttendService {
     suspend fun updateExitingTime(visitorId: Long, exitingTime: LocalTime): CoreResult<String>
 
     suspend fun updateExitTimeByVisitorId(entryId: String, exitTime: LocalTime): CoreResult<String>
+
+    // session auto exit: closes all of today's open visits at once, returns how many were closed
+    // closes the open visits of today in the database, run by one node
+    suspend fun autoExitOpenVisits(exitTime: LocalTime): CoreResult<Long>
+    // closes them in this node's live occupancy index, run by the node that ran the UPDATE
+    fun recordAutoExit(exitTime: LocalTime)
+    // re-reads today's visits into this node's live occupancy index
+    suspend fun reloadOccupancy()
     suspend fun countAttendCustomTime(date: LocalDate, period: Int): CoreResult<Int?>
 
     suspend fun getWeeklyVisit(): CoreResult<WeeklyVisitor>
@@ -53,6 +64,10 @@ interface AttendService {
         onEachAttend: (StudentAttendDetail) -> Unit
     ): Flow<StudentAttendDetail>
 
+    // live occupancy: null when the in-memory index is not loaded yet or doesn't know the visitor
+    fun getVisitStatus(entryId: String, sessionStart: LocalTime, sessionEnd: LocalTime): String?
+    fun countVisitorsInside(): Int
+
     // get attend detail by id
     suspend fun getAttendDetailById(attendId: Long): StudentAttendDetail?
 
@@ -13,6 +13,8 @@ import sru.edu.sru_lib_management.core.domain.dto.BookDto
 import sru.edu.sru_lib_management.core.domain.dto.analytic.BookEachCollege
 import sru.edu.sru_lib_management.core.domain.dto.analytic.BookIncome
 import sru.edu.sru_lib_management.core.domain.dto.analytic.TotalBook
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Books
 import java.time.LocalDate
 import java.time.YearMonth
@@ -20,6 +22,7 @@ import java.time.YearMonth
 @Service
 interface BookService {
     fun getAllBooks(): Flow<Books>
+    suspend fun getBookPage(page: PageRequest): CursorPage<Books>
     fun searchBooks(keyword: String): Flow<BookDto>
     suspend fun saveBook(books: List<BookDto>): CoreResult<List<BookDto>>
     suspend fun updateBook(books: BookDto): CoreResult<BookDto>
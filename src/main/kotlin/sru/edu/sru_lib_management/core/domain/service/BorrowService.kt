@@ -11,9 +11,13 @@ import sru.edu.sru_lib_management.common.CoreResult
 import sru.edu.sru_lib_management.core.domain.dto.Analyze
 import sru.edu.sru_lib_management.core.domain.dto.BorrowDetail
 import sru.edu.sru_lib_management.core.domain.dto.BorrowDto
+import sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowBatchResult
+import sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowReturnDto
 import sru.edu.sru_lib_management.core.domain.dto.analytic.BorrowReturn
 import sru.edu.sru_lib_management.core.domain.dto.analytic.MajorAttendBorrowed
 import sru.edu.sru_lib_management.core.domain.dto.analytic.MostBorrow
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Borrow
 import java.time.LocalDate
 
@@ -21,9 +25,11 @@ import java.time.LocalDate
 interface BorrowService {
     // CRUD
     suspend fun saveBorrow(borrowDto: BorrowDto): CoreResult<Borrow>
+    suspend fun saveBorrows(borrowDtos: List<BorrowDto>): CoreResult<List<BorrowBatchResult>>
     suspend fun updateBorrow(borrow: Borrow): CoreResult<Borrow>
     suspend fun getBorrow(borrowID: Long): CoreResult<Borrow?>
     fun getBorrows(): Flow<Borrow>
+    suspend fun getBorrowPage(page: PageRequest): CursorPage<Borrow>
     suspend fun deleteBorrow(borrowID: Long): CoreResult<Boolean>
 
     //
@@ -32,8 +38,11 @@ interface BorrowService {
 
     // Check
     suspend fun bookReturned(studentId: Long, bookId: String): CoreResult<Boolean>
+    suspend fun booksReturned(items: List<BorrowReturnDto>): CoreResult<List<BorrowBatchResult>>
     suspend fun findBorrowByStudentIdBookId(studentId: Long, bookId: String): List<Borrow>
     fun overDueService(): Flow<Borrow>
+    // loans the student has not returned, earliest due date first
+    suspend fun getStudentLoans(studentId: Long): List<Borrow>
 
     suspend fun extendBorrow(borrowId: Long): CoreResult<Long>
 
@@ -43,6 +52,8 @@ interface BorrowService {
 
     suspend fun getBorrowAndReturn(startDate: LocalDate?, endDate: LocalDate?): List<BorrowReturn>
     suspend fun getBorrowDetail(): List<BorrowDetail>
+    fun streamBorrowDetail(): Flow<BorrowDetail>
+    suspend fun getBorrowDetailPage(page: PageRequest): CursorPage<BorrowDetail>
     suspend fun searchBorrow(keyword: String): List<BorrowDetail>
     fun getActiveBorrowed(): Flow<BorrowDetail>
 }
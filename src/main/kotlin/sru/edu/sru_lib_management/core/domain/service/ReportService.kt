@@ -5,20 +5,20 @@
 
 package sru.edu.sru_lib_management.core.domain.service
 
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.asFlow
 import kotlinx.coroutines.flow.filter
 import kotlinx.coroutines.flow.flow
-import kotlinx.coroutines.withContext
 import org.slf4j.LoggerFactory
 import org.springframework.http.HttpStatus
 import org.springframework.stereotype.Service
 import org.springframework.web.server.ResponseStatusException
 import sru.edu.sru_lib_management.core.domain.dto.DonationDetailDto
+import sru.edu.sru_lib_management.core.domain.dto.attend.AttendRollupTotal
 import sru.edu.sru_lib_management.core.domain.dto.attend.StaffAttendDto
 import sru.edu.sru_lib_management.core.domain.dto.attend.StudentAttendDetail
 import sru.edu.sru_lib_management.core.domain.dto.report.MonthlyEntry
+import sru.edu.sru_lib_management.core.domain.model.RollupDimension
+import sru.edu.sru_lib_management.core.domain.model.TimeSlot
 import sru.edu.sru_lib_management.core.domain.repository.AttendRepository
 import sru.edu.sru_lib_management.core.domain.repository.BookRepository
 import sru.edu.sru_lib_management.utils.OpeningTime.ELEVEN_AM
@@ -35,7 +35,8 @@ import java.time.YearMonth
 class ReportService(
     private val attendRepository: AttendRepository,
     private val bookRepository: BookRepository,
-    private val donationService: DonationService
+    private val donationService: DonationService,
+    private val attendRollupService: AttendRollupService
 ) {
 
     private val logger = LoggerFactory.getLogger(this::class.java)
@@ -81,19 +82,36 @@ class ReportService(
 
     suspend fun studentAttendList(startMonth: YearMonth?, endMonth: YearMonth?): Flow<MonthlyEntry> = flow {
         try {
-            val allStudentAttendList = withContext(Dispatchers.IO) {
-                attendRepository.getCustomAttendDetail(null, null)
-            }.asFlow()
-
-            val categories = AttendanceCategories<StudentAttendDetail>()
-
-            withContext(Dispatchers.IO) {
-                allStudentAttendList
-                    .filter { isWithinDateRange(it.date, startMonth, endMonth) }
-                    .collect { attend -> categorizeAttendance(attend, categories) }
+            // summed from the daily rollup instead of every attend row of the period
+            val totals = attendRollupService.totals(
+                startMonth?.atDay(1),
+                endMonth?.atEndOfMonth(),
+                listOf(RollupDimension.MONTH, RollupDimension.WEEKEND, RollupDimension.TIME_SLOT, RollupDimension.GENDER)
+            )
+            val periods = listOf<Pair<String, (AttendRollupTotal) -> Boolean>>(
+                "Morning" to { it.timeSlot == TimeSlot.MORNING },
+                "Afternoon" to { it.timeSlot == TimeSlot.AFTERNOON },
+                "Evening" to { it.timeSlot == TimeSlot.EVENING },
+                "Saturday & Sunday" to { it.weekend == true }
+            )
+            periods.forEach { (timePeriod, inPeriod) ->
+                totals.filter(inPeriod)
+                    .groupBy { it.month!! }
+                    .toSortedMap()
+                    .forEach { (month, monthTotals) ->
+                        val totalAttend = monthTotals.sumOf { it.visits }.toInt()
+                        val femaleAttend = monthTotals
+                            .filter { it.gender.equals("Female", ignoreCase = true) }
+                            .sumOf { it.visits }.toInt()
+                        emit(
+                            MonthlyEntry(
+                                time = timePeriod,
+                                month = month.toString(),
+                                entry = mapOf("TotalAttend" to totalAttend, "FemaleAttend" to femaleAttend)
+                            )
+                        )
+                    }
             }
-
-            buildMonthlyEntries(categories).forEach { emit(it) }
         } catch (e: Exception) {
             e.printStackTrace()
             throw ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -7,6 +7,8 @@ package sru.edu.sru_lib_management.core.domain.service
 
 import kotlinx.coroutines.flow.Flow
 import org.springframework.stereotype.Service
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Students
 import sru.edu.sru_lib_management.common.CoreResult
 import sru.edu.sru_lib_management.core.domain.dto.StudentDto
@@ -19,4 +21,5 @@ interface StudentService {
     fun getStudents(): Flow<Students>
     suspend fun getStudent(studentId: Long): CoreResult<StudentDto?>
     fun getAllStudentDetail(): Flow<StudentDto>
+    suspend fun getStudentDetailPage(page: PageRequest): CursorPage<StudentDto>
 }
@@ -7,7 +7,6 @@ package sru.edu.sru_lib_management.core.domain.service.implementation
 
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.*
-import kotlinx.coroutines.reactor.awaitSingleOrNull
 import kotlinx.coroutines.withContext
 import org.slf4j.LoggerFactory
 import org.springframework.http.HttpStatus
@@ -15,6 +14,8 @@ import org.springframework.stereotype.Component
 import org.springframework.web.server.ResponseStatusException
 import sru.edu.sru_lib_management.common.APIException
 import sru.edu.sru_lib_management.common.CoreResult
+import sru.edu.sru_lib_management.core.data.cache.LiveOccupancy
+import sru.edu.sru_lib_management.core.data.cache.VisitorCache
 import sru.edu.sru_lib_management.core.domain.dto.Analyze
 import sru.edu.sru_lib_management.core.domain.dto.DurationSpent
 import sru.edu.sru_lib_management.core.domain.dto.PurposeByMonthDto
@@ -23,19 +24,26 @@ import sru.edu.sru_lib_management.core.domain.dto.analytic.MajorAttendBorrowed
 import sru.edu.sru_lib_management.core.domain.dto.analytic.TotalStudentAttendByTime
 import sru.edu.sru_lib_management.core.domain.dto.attend.AttendDetail
 import sru.edu.sru_lib_management.core.domain.dto.attend.AttendDto
+import sru.edu.sru_lib_management.core.domain.dto.attend.AttendRollupTotal
 import sru.edu.sru_lib_management.core.domain.dto.attend.StaffAttendDto
 import sru.edu.sru_lib_management.core.domain.dto.attend.StudentAttendDetail
 import sru.edu.sru_lib_management.core.domain.dto.dashboard.TotalMajorVisitor
 import sru.edu.sru_lib_management.core.domain.dto.dashboard.WeeklyVisitor
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Attend
+import sru.edu.sru_lib_management.core.domain.model.EntryScanStatus
+import sru.edu.sru_lib_management.core.domain.model.RollupDimension
+import sru.edu.sru_lib_management.core.domain.model.TimeSlot
 import sru.edu.sru_lib_management.core.domain.model.Visitor
 import sru.edu.sru_lib_management.core.domain.model.VisitorDetail
 import sru.edu.sru_lib_management.core.domain.model.VisitorType
 import sru.edu.sru_lib_management.core.domain.repository.AttendRepository
-import sru.edu.sru_lib_management.core.domain.repository.SruStaffRepository
 import sru.edu.sru_lib_management.core.domain.repository.StudentRepository
 import sru.edu.sru_lib_management.core.domain.repository.VisitorRepository
+import sru.edu.sru_lib_management.core.domain.service.AttendRollupService
 import sru.edu.sru_lib_management.core.domain.service.AttendService
+import sru.edu.sru_lib_management.utils.aggregateShares
 import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
 import sru.edu.sru_lib_management.utils.OpeningTime.ELEVEN_AM
 import sru.edu.sru_lib_management.utils.OpeningTime.FIVE_PM
@@ -52,8 +60,10 @@ import java.time.YearMonth
 class AttendServiceImp(
     private val attendRepository: AttendRepository,
     private val studentRepository: StudentRepository,
-    private val sruStaffRepository: SruStaffRepository,
-    private val visitorRepository: VisitorRepository
+    private val visitorRepository: VisitorRepository,
+    private val liveOccupancy: LiveOccupancy,
+    private val visitorCache: VisitorCache,
+    private val attendRollupService: AttendRollupService
 ) : AttendService {
 
     private val logger = LoggerFactory.getLogger(AttendServiceImp::class.java)
@@ -75,62 +85,35 @@ class AttendServiceImp(
             if (attendDto.studentId != null && attendDto.sruStaffId != null) {
                 return CoreResult.ClientError("Only one visitor type is allowed")
             }
-            val visitor = when {
-                attendDto.studentId != null -> {
-                    studentRepository.getById(attendDto.studentId)
-                        ?: return CoreResult.ClientError("Student not found!")
-
-                    visitorRepository.findByStudentId(attendDto.studentId)
-                        ?: visitorRepository.save(
-                            Visitor(
-                                visitorId = null,
-                                visitorType = VisitorType.STUDENT,
-                                studentId = attendDto.studentId,
-                                sruStaffId = null
-                            )
-                        )
-                }
-                else -> {
-                    val staff = sruStaffRepository
-                        .findById(attendDto.sruStaffId!!)
-                        .awaitSingleOrNull()
-                        ?: return CoreResult.ClientError("Staff not found")
-
-                    visitorRepository.findByStaffId(attendDto.sruStaffId)
-                        ?: visitorRepository.save(
-                            Visitor(
-                                visitorId = null,
-                                visitorType = VisitorType.SRU_STAFF,
-                                studentId = null,
-                                sruStaffId = staff._getSruStaffId()
-                            )
-                        )
-                }
-            }
-
-            val existingAttend = attendRepository.getAttendByEntryId(visitor.visitorId!!, indoChinaDate())
-
-            // update exitTime when they forgot to Scan out
-            existingAttend.forEach { attend ->
-                if (attend != null && attend.exitTimes == null){
-                    attendRepository.updateExitingTime(
-                        attendId = attend.attendId!!,
-                        exitingTimes = attendDto.entryTimes,
-                        date = indoChinaDate()
-                    )
-                    logger.info("Auto-updated exit time for attend_id: ${attend.attendId} to ${attendDto.entryTimes}")
-                }
-            }
-
-            val attend = Attend(
-                attendId = null,
-                visitorId = visitor.visitorId,
-                entryTimes = attendDto.entryTimes,
-                exitTimes = attendDto.exitingTimes,
+            // visitor lookup, auto exit of open visits and insert run in one procedure call
+            val result = attendRepository.saveEntryScan(
+                studentId = attendDto.studentId,
+                staffId = attendDto.sruStaffId,
+                entryTime = attendDto.entryTimes,
+                exitTime = attendDto.exitingTimes,
                 purpose = attendDto.purpose,
-                attendDate = indoChinaDate(),
+                date = indoChinaDate()
+            )
+            when (result.status) {
+                EntryScanStatus.STUDENT_NOT_FOUND -> return CoreResult.ClientError("Student not found!")
+                EntryScanStatus.STAFF_NOT_FOUND -> return CoreResult.ClientError("Staff not found")
+                EntryScanStatus.OK -> Unit
+            }
+            if (result.closedVisits > 0)
+                logger.info("Auto-updated exit time of ${result.closedVisits} visit(s) for visitor_id: ${result.attend?.visitorId} to ${attendDto.entryTimes}")
+            val attend = result.attend!!
+            // the procedure may have created the visitor, remember it for the exit scan
+            visitorCache.put(
+                Visitor(
+                    visitorId = attend.visitorId,
+                    visitorType = if (attendDto.studentId != null) VisitorType.STUDENT else VisitorType.SRU_STAFF,
+                    studentId = attendDto.studentId,
+                    sruStaffId = attendDto.sruStaffId
+                )
             )
-            attendRepository.save(attend)
+            liveOccupancy.recordEntry(attendDto.studentId?.toString() ?: attendDto.sruStaffId!!, attend)
+            attendRollupService.markDirty(attend.attendDate)
+            attend
         }.fold(
             onSuccess = {att ->
                 CoreResult.Success(att)
@@ -151,9 +134,12 @@ class AttendServiceImp(
     * */
     override suspend fun updateAttend(attend: Attend): CoreResult<Attend> {
         return runCatching {
-            attendRepository.getById(attend.attendId!!)
+            val old = attendRepository.getById(attend.attendId!!)
                 ?: return CoreResult.ClientError("not found!")
-            attendRepository.update(attend)
+            attendRepository.update(attend).also {
+                refreshOccupancy(attend.attendId, listOf(old, attend))
+                attendRollupService.markDirty(old.attendDate, attend.attendDate)
+            }
         }.fold(
             onSuccess = { att ->
                 CoreResult.Success(att)
@@ -170,7 +156,13 @@ class AttendServiceImp(
     * */
     override suspend fun deleteAttend(attendId: Long): CoreResult<Boolean> {
         return runCatching{
-            attendRepository.delete(attendId)
+            val old = attendRepository.getById(attendId)
+            attendRepository.delete(attendId).also { deleted ->
+                if (deleted && old != null) {
+                    refreshOccupancy(attendId, listOf(old))
+                    attendRollupService.markDirty(old.attendDate)
+                }
+            }
         }.fold(
             onSuccess = {
                 CoreResult.Success(true)
@@ -213,6 +205,17 @@ class AttendServiceImp(
         )
     }
 
+    override suspend fun getAttendPage(page: PageRequest): CoreResult<CursorPage<Attend>> {
+        return try {
+            CoreResult.Success(attendRepository.getPage(page))
+        } catch (e: ResponseStatusException) {
+            // unknown sort or invalid cursor
+            CoreResult.ClientError(e.reason ?: "Invalid page request.")
+        } catch (e: Exception) {
+            CoreResult.Failure(e.message ?: "Unknown error occurred while get attend page.")
+        }
+    }
+
     override fun getAllAttendByDate(date: LocalDate): Flow<VisitorDetail> {
         return try {
             attendRepository.getAllAttendByDate(date)
@@ -283,16 +286,20 @@ class AttendServiceImp(
     * */
     override suspend fun updateExitingTime(visitorId: Long, exitingTime: LocalTime): CoreResult<String> {
         return runCatching {
-            val existAttend = attendRepository.getAttendByEntryId(visitorId, indoChinaDate())
-            logger.info("Exist attend: $existAttend")
-            var attendId = 0L
-            if (existAttend.isEmpty())
-                CoreResult.ClientError("Can not find attend with this student id: $visitorId")
-            existAttend.forEach { attend ->
-                if (attend!!.exitTimes == null)
-                    attendId = attend.attendId!!
-            }
-            attendRepository.updateExitingTime(attendId,exitingTime,indoChinaDate())
+            val today = indoChinaDate()
+            // the live occupancy is a hint: a visit it doesn't know, or closed on another instance, is looked up
+            val hinted = liveOccupancy.openAttendId(visitorId)
+                ?.let { attendRepository.updateExitingTime(it, exitingTime, today) }
+            val updated = hinted ?: run {
+                val existAttend = attendRepository.getAttendByEntryId(visitorId, today)
+                logger.info("Exist attend: $existAttend")
+                val attendId = existAttend.lastOrNull { it?.exitTimes == null }?.attendId
+                    ?: return CoreResult.ClientError("Can not find attend with this student id: $visitorId")
+                attendRepository.updateExitingTime(attendId, exitingTime, today)
+            } ?: return CoreResult.ClientError("Can not find attend with this student id: $visitorId")
+            liveOccupancy.recordExit(visitorId, exitingTime)
+            attendRollupService.markDirty(today)
+            updated
 
         }.fold(
             onSuccess = {
@@ -308,7 +315,11 @@ class AttendServiceImp(
     override suspend fun updateExitTimeByVisitorId(entryId: String, exitTime: LocalTime): CoreResult<String> {
         return runCatching {
 
-            val visitorId = if (entryId.all { it.isDigit() }) {
+            // today's visitors are known to the live occupancy, skip the visitor lookup for them;
+            // whether the visit is open is decided by the UPDATE, the index can miss other instances' scans
+            val knownVisitorId = liveOccupancy.visitorIdOf(entryId)
+
+            val visitorId = knownVisitorId ?: if (entryId.all { it.isDigit() }) {
                 visitorRepository.findVisitorIdByStudentId(entryId.toLong())
             } else {
                 visitorRepository.findVisitorIdByStaffId(entryId)
@@ -322,6 +333,8 @@ class AttendServiceImp(
 
             if (!updated)
                 return CoreResult.ClientError("No active attendance to scan out")
+            liveOccupancy.recordExit(visitorId, exitTime)
+            attendRollupService.markDirty(indoChinaDate())
 
             "Scan-out successful"
 
@@ -331,6 +344,27 @@ class AttendServiceImp(
         )
     }
 
+    override suspend fun autoExitOpenVisits(exitTime: LocalTime): CoreResult<Long> {
+        return runCatching {
+            val date = indoChinaDate()
+            // idempotent: a second node running the same job finds nothing left to close
+            attendRepository.closeOpenVisits(date, exitTime).also { closed ->
+                if (closed > 0) attendRollupService.markDirty(date)
+            }
+        }.fold(
+            onSuccess = { CoreResult.Success(it) },
+            onFailure = { CoreResult.Failure(it.message ?: "Auto exit failed") }
+        )
+    }
+
+    override fun recordAutoExit(exitTime: LocalTime) {
+        liveOccupancy.recordAutoExit(exitTime)
+    }
+
+    override suspend fun reloadOccupancy() {
+        liveOccupancy.reload()
+    }
+
     /*
     * Count Attends custom by time
     * */
@@ -431,6 +465,27 @@ class AttendServiceImp(
         }
     }
 
+    override fun getVisitStatus(entryId: String, sessionStart: LocalTime, sessionEnd: LocalTime): String? {
+        if (!liveOccupancy.isLoaded) return null
+        // a miss may be a visit made on another instance, the caller then asks the database
+        val visit = liveOccupancy.lastVisit(entryId) ?: return null
+        return when {
+            visit.entryTime !in sessionStart..sessionEnd -> "new attend!"
+            visit.exitTime == null -> "not exited"
+            else -> "exited"
+        }
+    }
+
+    override fun countVisitorsInside(): Int = liveOccupancy.insideCount()
+
+    // re-reads today's visits of the visitors an admin edit touched, not the whole day
+    private suspend fun refreshOccupancy(attendId: Long, attends: List<Attend>) {
+        val today = indoChinaDate()
+        attends.filter { it.attendDate == today }.mapNotNull { it.visitorId }.distinct().forEach { visitorId ->
+            liveOccupancy.recordEdit(attendId, visitorId, today, attendRepository.getVisitorVisitsByDate(visitorId, today))
+        }
+    }
+
     override suspend fun getAttendDetailById(attendId: Long): StudentAttendDetail? {
         return try {
             attendRepository.getAttendDetailById(attendId)
@@ -486,19 +541,15 @@ class AttendServiceImp(
         endDate: LocalDate
     ): List<PurposeDto> {
         return try {
-            val data = attendRepository.getMajorPurpose().toList()
-                .filter { !it.date.isBefore(startDate) && !it.date.isAfter(endDate) }
-            val filterByMajor = if (major != null) {
-                val filtered = data.filter { it.majorName == major }
-                if (filtered.isEmpty()) throw ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid major name: $major")
-                filtered
-            } else data
+            val data = attendRollupService.totals(startDate, endDate, listOf(RollupDimension.PURPOSE), major = major)
+            if (major != null && data.isEmpty())
+                throw ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid major name: $major")
 
+            // a visit can have several purposes, "Reading, Use PC"
             val purposeCountByMajor = mutableMapOf<String, Int>()
-            filterByMajor.onEach { m ->
-                val purpose = m.purpose.split(", ").map { it.trim() }
-                purpose.forEach {
-                    purposeCountByMajor[it] = purposeCountByMajor.getOrDefault(it, 0) + 1
+            data.forEach { total ->
+                total.purpose!!.split(", ").map { it.trim() }.forEach {
+                    purposeCountByMajor[it] = purposeCountByMajor.getOrDefault(it, 0) + total.visits.toInt()
                 }
             }
             val mapReturn = purposeCountByMajor.map { (purpose, count) ->
@@ -517,17 +568,11 @@ class AttendServiceImp(
         endDate: LocalDate
     ): List<MajorAttendBorrowed> {
         return try {
-            val allMajor = attendRepository.getCustomAttendDetail(startDate, endDate).toList()
-            val totalMajor = allMajor.size.toFloat()
-            val majorCount = allMajor.groupingBy { it.major }.eachCount()
-            majorCount.map { (major, count) ->
-                val percentage = (count.toFloat() / totalMajor) * 100
-                MajorAttendBorrowed(
-                    major,
-                    count,
-                    String.format("%.2f", percentage).toFloat()
-                )
-            }.sortedByDescending { it.times }
+            attendRollupService.totals(startDate, endDate, listOf(RollupDimension.MAJOR))
+                .aggregateShares({ it.major!! }, { it.visits })
+                .groups
+                .map { MajorAttendBorrowed(it.key, it.count.toInt(), it.percentage) }
+                .sortedByDescending { it.times }
         }catch (e: Exception){
             throw ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.message)
         }
@@ -538,12 +583,16 @@ class AttendServiceImp(
         endDate: LocalDate
     ): TotalStudentAttendByTime {
         return try {
-            val allAttend = attendRepository.getCustomAttendDetail(startDate, endDate).toList()
-            val totalAttend: Int = allAttend.size
-            val totalFemale: Int = allAttend.count { it.gender === "Female" }
-            val totalMorningAttend: Int = allAttend.count { it.entryTimes in SEVEN_AM..ELEVEN_AM }
-            val totalAfternoonAttend: Int = allAttend.count { it.entryTimes in TWO_PM..FIVE_PM}
-            val totalEveningAttend: Int = allAttend.count { it.entryTimes in FIVE_THIRTY_PM..SEVEN_THIRTY_PM}
+            val totals = attendRollupService.totals(
+                startDate, endDate, listOf(RollupDimension.GENDER, RollupDimension.TIME_SLOT)
+            )
+            fun sumOf(predicate: (AttendRollupTotal) -> Boolean): Int =
+                totals.filter(predicate).sumOf { it.visits }.toInt()
+            val totalAttend: Int = sumOf { true }
+            val totalFemale: Int = sumOf { it.gender.equals("Female", ignoreCase = true) }
+            val totalMorningAttend: Int = sumOf { it.timeSlot == TimeSlot.MORNING }
+            val totalAfternoonAttend: Int = sumOf { it.timeSlot == TimeSlot.AFTERNOON }
+            val totalEveningAttend: Int = sumOf { it.timeSlot == TimeSlot.EVENING }
             TotalStudentAttendByTime(
                 totalAttend,
                 totalFemale,
@@ -566,29 +615,28 @@ class AttendServiceImp(
         val processEndMonth = endMonth ?: defaultEndMonth
 
         return try {
-            val data = attendRepository.getMajorPurpose().toList()
-                .filter {
-                    val yearMonth = YearMonth.from(it.date)
-                    !yearMonth.isBefore(processStartMonth) && !yearMonth.isAfter(processEndMonth)
-                }
-            val filterByMajor = if (major != null) {
-                val filtered = data.filter { it.majorName == major }
-                if (filtered.isEmpty()) throw ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid major name: $major")
-                filtered
-            } else data
+            val data = attendRollupService.totals(
+                processStartMonth.atDay(1),
+                processEndMonth.atEndOfMonth(),
+                listOf(RollupDimension.MONTH, RollupDimension.PURPOSE),
+                major = major
+            )
+            if (major != null && data.isEmpty())
+                throw ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid major name: $major")
 
-            filterByMajor.groupBy { YearMonth.from(it.date) }
+            data.groupBy { it.month!! }
+                .toSortedMap()
                 .map { (month, purposes) ->
-                    // Step 4: Count occurrences of each purpose for the month
+                    // Count occurrences of each purpose for the month
                     val purposeCount = mutableMapOf<String, Int>()
-                    purposes.forEach { m ->
-                        m.purpose.split(", ").forEach { purpose ->
+                    purposes.forEach { total ->
+                        total.purpose!!.split(", ").forEach { purpose ->
                             val trimmedPurpose = purpose.trim()
-                            purposeCount[trimmedPurpose] = purposeCount.getOrDefault(trimmedPurpose, 0) + 1
+                            purposeCount[trimmedPurpose] = purposeCount.getOrDefault(trimmedPurpose, 0) + total.visits.toInt()
                         }
                     }
 
-                    // Step 5: Create PurposeByMonthDto with counts for each purpose type
+                    // Create PurposeByMonthDto with counts for each purpose type
                     PurposeByMonthDto(
                         other = purposeCount.getOrDefault("Other", 0),
                         reading = purposeCount.getOrDefault("Reading", 0),
@@ -22,6 +22,8 @@ import sru.edu.sru_lib_management.core.domain.dto.DonationDetailDto
 import sru.edu.sru_lib_management.core.domain.dto.analytic.BookEachCollege
 import sru.edu.sru_lib_management.core.domain.dto.analytic.BookIncome
 import sru.edu.sru_lib_management.core.domain.dto.analytic.TotalBook
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Books
 import sru.edu.sru_lib_management.core.domain.repository.BookRepository
 import sru.edu.sru_lib_management.core.domain.repository.BorrowRepository
@@ -62,6 +64,9 @@ class BookServiceImp(
         }
     }
 
+    override suspend fun getBookPage(page: PageRequest): CursorPage<Books> =
+        bookRepository.getPage(page)
+
     override suspend fun saveBook(books: List<BookDto>): CoreResult<List<BookDto>> {
         return try {
             val saved = books.mapNotNull { dto ->
@@ -6,27 +6,32 @@
 package sru.edu.sru_lib_management.core.domain.service.implementation
 
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.map
-import kotlinx.coroutines.flow.reduce
-import kotlinx.coroutines.flow.toList
 import org.slf4j.LoggerFactory
 import org.springframework.http.HttpStatus
 import org.springframework.stereotype.Component
 import org.springframework.web.server.ResponseStatusException
 import sru.edu.sru_lib_management.common.APIException
 import sru.edu.sru_lib_management.common.CoreResult
+import sru.edu.sru_lib_management.core.data.cache.ActiveLoans
 import sru.edu.sru_lib_management.core.domain.dto.Analyze
 import sru.edu.sru_lib_management.core.domain.dto.BorrowDetail
 import sru.edu.sru_lib_management.core.domain.dto.BorrowDto
 import sru.edu.sru_lib_management.core.domain.dto.analytic.BorrowReturn
 import sru.edu.sru_lib_management.core.domain.dto.analytic.MajorAttendBorrowed
 import sru.edu.sru_lib_management.core.domain.dto.analytic.MostBorrow
+import sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowBatchResult
+import sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowReturnDto
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Borrow
+import sru.edu.sru_lib_management.core.domain.model.CheckoutResult
+import sru.edu.sru_lib_management.core.domain.model.CheckoutStatus
 import sru.edu.sru_lib_management.core.domain.repository.BookRepository
 import sru.edu.sru_lib_management.core.domain.repository.BorrowRepository
-import sru.edu.sru_lib_management.core.domain.repository.StudentRepository
 import sru.edu.sru_lib_management.core.domain.service.BorrowService
 import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
+import sru.edu.sru_lib_management.utils.aggregateShares
+import sru.edu.sru_lib_management.utils.schedule.DueDateScheduler
 import java.time.LocalDate
 import java.time.YearMonth
 
@@ -34,7 +39,8 @@ import java.time.YearMonth
 class BorrowServiceImp(
     private val borrowRepository: BorrowRepository,
     private val bookRepository: BookRepository,
-    private val studentRepository: StudentRepository
+    private val dueDateScheduler: DueDateScheduler,
+    private val activeLoans: ActiveLoans
 ) : BorrowService {
 
     private val logger = LoggerFactory.getLogger(BorrowServiceImp::class.java)
@@ -45,17 +51,9 @@ class BorrowServiceImp(
         if (borrowDto.bookId.isBlank() || borrowDto.bookQuan <= 0 || borrowDto.studentId <= 0){
             return CoreResult.ClientError("Field cannot be blank.")
         }
-        val book = bookRepository.getById(borrowDto.bookId)
+        // the loan limit is decided by the checkout transaction, the in-memory count can be stale
+        bookRepository.getById(borrowDto.bookId)
             ?: return CoreResult.ClientError("Not found book with this ID: ${borrowDto.bookId}.")
-        if(book.bookQuan < borrowDto.bookQuan)
-            return CoreResult.ClientError("Please check book quan!.")
-        studentRepository.getById(borrowDto.studentId)
-            ?: return CoreResult.ClientError("Not found student with this ID: ${borrowDto.studentId}.")
-        val borrowed = borrowRepository.getNotBringBackByStudentId(borrowDto.studentId)
-        if (borrowed.size >= 2)
-            return CoreResult.ClientError("You can not borrow more than two book in two weeks.")
-        if (borrowed.size == 1 && borrowDto.bookQuan > 1)
-            return CoreResult.ClientError("You can borrow only one book.")
         val borrow = Borrow(
             borrowId = null,
             bookId = borrowDto.bookId,
@@ -66,7 +64,9 @@ class BorrowServiceImp(
             isBringBack = false,
             isExtend = false
         )
-        borrowRepository.save(borrow)
+        val result = borrowRepository.checkout(borrow, MAX_ACTIVE_LOANS)
+        result.errorMessage(borrowDto)?.let { return CoreResult.ClientError(it) }
+        result.borrow!!.also(::loanSaved)
     }.fold(
         onSuccess = {data ->
             CoreResult.Success(data)
@@ -77,13 +77,59 @@ class BorrowServiceImp(
         }
     )
 
+    override suspend fun saveBorrows(
+        borrowDtos: List<BorrowDto>
+    ): CoreResult<List<BorrowBatchResult>> = runCatching {
+        if (borrowDtos.isEmpty() || borrowDtos.size > MAX_BATCH_SIZE)
+            return CoreResult.ClientError("Please send 1 to $MAX_BATCH_SIZE borrows at once.")
+        val today = indoChinaDate()
+        val valid = borrowDtos.withIndex().filter { (_, dto) ->
+            dto.bookId.isNotBlank() && dto.bookQuan > 0 && dto.studentId > 0
+        }
+        val results = borrowRepository.checkoutBatch(
+            valid.map { (_, dto) ->
+                Borrow(
+                    borrowId = null,
+                    bookId = dto.bookId,
+                    bookQuan = dto.bookQuan,
+                    studentId = dto.studentId,
+                    borrowDate = today,
+                    giveBackDate = today.plusWeeks(2),
+                    isBringBack = false,
+                    isExtend = false
+                )
+            },
+            MAX_ACTIVE_LOANS
+        )
+        val byIndex = valid.map { it.index }.zip(results).toMap()
+        borrowDtos.mapIndexed { index, dto ->
+            val result = byIndex[index]
+            val message = if (result == null) "Field cannot be blank." else result.errorMessage(dto)
+            result?.borrow?.let(::loanSaved)
+            BorrowBatchResult(index, dto.studentId, dto.bookId, message == null, message, result?.borrow)
+        }
+    }.fold(
+        onSuccess = { data ->
+            CoreResult.Success(data)
+        },
+        onFailure = { e ->
+            logger.error("Batch borrow failed: ${e.message}")
+            CoreResult.Failure(e.message.toString())
+        }
+    )
+
     override suspend fun updateBorrow(
         borrow: Borrow
     ): CoreResult<Borrow> = runCatching{
         if (borrow.borrowId == null)
             return CoreResult.ClientError("Please enter id for update")
-        borrowRepository.getById(borrow.borrowId) ?: return CoreResult.ClientError("Not found borrowing with this ID: ${borrow.borrowId}")
-        borrowRepository.update(borrow)
+        val result = borrowRepository.updateLoan(borrow)
+        when (result.status) {
+            CheckoutStatus.OK -> result.borrow!!.also(::loanSaved)
+            CheckoutStatus.LOAN_NOT_FOUND -> return CoreResult.ClientError("Not found borrowing with this ID: ${borrow.borrowId}")
+            CheckoutStatus.BOOK_NOT_FOUND -> return CoreResult.ClientError("Not found book with this ID: ${borrow.bookId}.")
+            else -> return CoreResult.ClientError("Please check book quan!.")
+        }
     }.fold(
         onSuccess = {data ->
             CoreResult.Success(data)
@@ -110,10 +156,14 @@ class BorrowServiceImp(
 
     override fun getBorrows():Flow<Borrow> = borrowRepository.getAll()
 
+    override suspend fun getBorrowPage(page: PageRequest): CursorPage<Borrow> =
+        borrowRepository.getPage(page)
+
     override suspend fun deleteBorrow(borrowID: Long): CoreResult<Boolean> {
         return try {
             borrowRepository.getById(borrowID) ?: return CoreResult.ClientError("Not Found")
             val deleted = borrowRepository.delete(borrowID)
+            if (deleted) activeLoans.remove(borrowID)
             CoreResult.Success(deleted)
         }catch (e: Exception){
             CoreResult.Failure(e.message.toString())
@@ -167,20 +217,58 @@ class BorrowServiceImp(
 
     override suspend fun bookReturned(studentId: Long, bookId: String): CoreResult<Boolean> {
         return try {
-            var borrowId = 0L
+            val cached = activeLoans.loansOf(studentId).firstOrNull { it.bookId == bookId }?.borrowId
+            if (cached != null) {
+                if (borrowRepository.bookReturned(cached)) {
+                    activeLoans.remove(cached)
+                    return CoreResult.Success(true)
+                }
+                // stale: returned or deleted on another instance, look for another open loan below
+                activeLoans.remove(cached)
+            }
+            // not in memory (not loaded yet, borrowed on another instance, or stale)
             val borrow = borrowRepository.findBorrowByStudentIdBookId(studentId, bookId)
             if (borrow.isEmpty()) return CoreResult.ClientError("Not found!")
+            var borrowId = 0L
             borrow.forEach {
                 if (!it.isBringBack)
                     borrowId = it.borrowId!!
             }
             val update = borrowRepository.bookReturned(borrowId)
+            if (update) activeLoans.remove(borrowId)
             CoreResult.Success(update)
         }catch (e: Exception){
             CoreResult.Failure(e.message.toString())
         }
     }
 
+    override suspend fun booksReturned(
+        items: List<BorrowReturnDto>
+    ): CoreResult<List<BorrowBatchResult>> = runCatching {
+        if (items.isEmpty() || items.size > MAX_BATCH_SIZE)
+            return CoreResult.ClientError("Please send 1 to $MAX_BATCH_SIZE returns at once.")
+        val returned = borrowRepository.returnBatch(items, indoChinaDate())
+        items.zip(returned).mapIndexed { index, (item, borrow) ->
+            borrow?.borrowId?.let(activeLoans::remove)
+            BorrowBatchResult(
+                index = index,
+                studentId = item.studentId,
+                bookId = item.bookId,
+                success = borrow != null,
+                message = if (borrow == null) "Not found!" else null,
+                borrow = borrow
+            )
+        }
+    }.fold(
+        onSuccess = { data ->
+            CoreResult.Success(data)
+        },
+        onFailure = { e ->
+            logger.error("Batch return failed: ${e.message}")
+            CoreResult.Failure(e.message.toString())
+        }
+    )
+
     override suspend fun findBorrowByStudentIdBookId(studentId: Long, bookId: String): List<Borrow> {
         return try {
             borrowRepository.findBorrowByStudentIdBookId(studentId, bookId)
@@ -189,12 +277,18 @@ class BorrowServiceImp(
         }
     }
 
-    override fun overDueService(): Flow<Borrow> = borrowRepository.findOverDueBook()
+    // read from the database, the in-memory index misses returns made on other instances until midnight
+    override fun overDueService(): Flow<Borrow> = borrowRepository.findOverDueBook(indoChinaDate())
+
+    override suspend fun getStudentLoans(studentId: Long): List<Borrow> =
+        if (activeLoans.isLoaded) activeLoans.loansOf(studentId)
+        else borrowRepository.getNotBringBackByStudentId(studentId).filterNotNull()
 
     override suspend fun extendBorrow(borrowId: Long): CoreResult<Long> {
         return try {
             borrowRepository.getById(borrowId) ?: return CoreResult.ClientError("Not found")
             val id = borrowRepository.extendBorrow(borrowId)
+            if (id != 0L) borrowRepository.getById(borrowId)?.let(::loanSaved)
             CoreResult.Success(id)
         }catch (e: Exception){
             CoreResult.Failure(e.message.toString())
@@ -206,28 +300,16 @@ class BorrowServiceImp(
         endDate: LocalDate
     ): List<MajorAttendBorrowed> {
         try {
-            val list = mutableListOf<MajorAttendBorrowed>()
-            val data: Flow<Map<String, Int>> = borrowRepository.getAllBorrowForEachMajor(startDate, endDate)
-            if (data.toList().isEmpty()) return emptyList()
-            val totalBorrow = data
-                .map { map ->
-                    map.values.sum()
-                }
-                .reduce { accumulator, value ->
-                    accumulator + value
-                }
-            data.collect{ map ->
-                map.forEach { (k, v) ->
-                    val percentage = (v.toFloat() / totalBorrow) * 100
-                    list.add(MajorAttendBorrowed(
-                        majorName = k,
-                        times = v,
-                        percentage = String.format("%.2f", percentage).toFloat())
-                    )
-                }
+            // one pass over the query, it is not run again for the total
+            val shares = borrowRepository.getAllBorrowForEachMajor(startDate, endDate)
+                .aggregateShares({ it.first }, { it.second.toLong() })
+            return shares.groups.map {
+                MajorAttendBorrowed(
+                    majorName = it.key,
+                    times = it.count.toInt(),
+                    percentage = it.percentage
+                )
             }
-            logger.info("$totalBorrow")
-            return list
         }catch (e: Exception){
             throw ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.message)
         }
@@ -246,31 +328,16 @@ class BorrowServiceImp(
         endDate: LocalDate?
     ): List<BorrowReturn> {
         return try {
-            val borrow = borrowRepository.getAll().toList()
-            val filterReturned = borrow.filter {
-                it.isBringBack &&
-                        (startDate == null || !it.giveBackDate.isBefore(startDate)) &&
-                        (endDate == null || !it.giveBackDate.isAfter(endDate))
-            }
-            val filterBorrowed = borrow.filter {
-                (startDate == null || !it.borrowDate.isBefore(startDate)) &&
-                        (endDate == null || !it.borrowDate.isAfter(endDate))
-            }
-
-            val borrowByMonth = filterBorrowed.groupBy { YearMonth.from(it.borrowDate) }
-            val returnByMonth = filterReturned.groupBy { YearMonth.from(it.giveBackDate) }
-            val result = mutableListOf<BorrowReturn>()
-
-            val allMonth = borrowByMonth.keys.union(returnByMonth.keys)
-
-            logger.info("$filterBorrowed")
-
-            allMonth.forEach{ month ->
-                val borrowCount = borrowByMonth[month]?.size ?: 0
-                val returnCount = returnByMonth[month]?.size ?: 0
-                result.add(BorrowReturn(month, borrowCount, returnCount))
-            }
-            result
+            // unbounded ends: from the first borrow up to today
+            val end = endDate ?: indoChinaDate()
+            val start = startDate ?: borrowRepository.firstBorrowDate() ?: return emptyList()
+            if (start.isAfter(end)) return emptyList()
+            val counts = borrowRepository.countBorrowReturnByMonth(start, end).associateBy { it.month }
+            // every month of the range, months without activity count 0
+            generateSequence(YearMonth.from(start)) { it.plusMonths(1) }
+                .takeWhile { !it.isAfter(YearMonth.from(end)) }
+                .map { month -> counts[month] ?: BorrowReturn(month, 0, 0) }
+                .toList()
         }catch (e: Exception){
             throw ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.message)
         }
@@ -284,6 +351,12 @@ class BorrowServiceImp(
         }
     }
 
+    override fun streamBorrowDetail(): Flow<BorrowDetail> =
+        borrowRepository.getBorrowDetailStream()
+
+    override suspend fun getBorrowDetailPage(page: PageRequest): CursorPage<BorrowDetail> =
+        borrowRepository.getBorrowDetailPage(page)
+
     override suspend fun searchBorrow(keyword: String): List<BorrowDetail> {
         return try {
             borrowRepository.searchBorrow(keyword)
@@ -300,4 +373,27 @@ class BorrowServiceImp(
         }
     }
 
-}
\ No newline at end of file
+    private fun loanSaved(borrow: Borrow) {
+        activeLoans.put(borrow)
+        dueDateScheduler.track(borrow)
+    }
+
+    // client error of a checkout, null when it succeeded
+    private fun CheckoutResult.errorMessage(borrowDto: BorrowDto): String? = when (status) {
+        CheckoutStatus.OK -> null
+        CheckoutStatus.STUDENT_NOT_FOUND -> "Not found student with this ID: ${borrowDto.studentId}."
+        CheckoutStatus.BOOK_NOT_FOUND -> "Not found book with this ID: ${borrowDto.bookId}."
+        CheckoutStatus.LOAN_LIMIT -> loanLimitMessage(this.activeLoans)
+        CheckoutStatus.BOOK_UNAVAILABLE -> "Please check book quan!."
+        CheckoutStatus.LOAN_NOT_FOUND -> "Not found borrowing of book ${borrowDto.bookId}."
+    }
+
+    private fun loanLimitMessage(held: Int): String =
+        if (held >= MAX_ACTIVE_LOANS) "You can not borrow more than two book in two weeks."
+        else "You can borrow only one book."
+
+    companion object {
+        private const val MAX_ACTIVE_LOANS = 2
+        private const val MAX_BATCH_SIZE = 100
+    }
+}
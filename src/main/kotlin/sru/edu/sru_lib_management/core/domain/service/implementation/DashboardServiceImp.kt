@@ -1,6 +1,12 @@
 package sru.edu.sru_lib_management.core.domain.service.implementation
 
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.withTimeoutOrNull
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Component
 import sru.edu.sru_lib_management.common.CoreResult
 import sru.edu.sru_lib_management.core.domain.dto.Analyze
@@ -13,14 +19,19 @@ import sru.edu.sru_lib_management.core.domain.service.BorrowService
 import sru.edu.sru_lib_management.core.domain.service.DashboardService
 import sru.edu.sru_lib_management.core.domain.service.DonationService
 import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
+import java.time.Duration
 
 @Component
 class DashboardServiceImp(
     private val bookService: BookService,
     private val attendService: AttendService,
     private val borrowService: BorrowService,
-    private val donationService: DonationService
+    private val donationService: DonationService,
+    @param:Value("\${dashboard.widget-timeout:3s}") private val widgetTimeout: Duration
 ): DashboardService {
+
+    private val logger = LoggerFactory.getLogger(DashboardServiceImp::class.java)
+
     /**
      * Fetches comprehensive dashboard data for library overview.
      *
@@ -34,53 +45,78 @@ class DashboardServiceImp(
      * - Weekly visitor statistics by day
      * - Total visitors grouped by major
      *
+     * The widgets are loaded concurrently, each with its own timeout (dashboard.widget-timeout);
+     * a widget that fails or times out falls back to its default value.
+     *
      * @return Dashboard object containing all aggregated data
      */
-    override suspend fun getDashboardData(): Dashboard {
-        val entryToday: Analyze = when (val result = attendService.analyticAttend(indoChinaDate(), 1)) {
-            is CoreResult.Success -> result.data
-            is CoreResult.Failure -> Analyze(-0, -0f)
-            is CoreResult.ClientError -> Analyze(-0, -0f)
-        }
+    override suspend fun getDashboardData(): Dashboard = coroutineScope {
+        val today = indoChinaDate()
 
-        val entryThisMonth: Analyze = when (val result = attendService.analyticAttend(indoChinaDate(), 30)) {
-            is CoreResult.Success -> result.data
-            is CoreResult.Failure -> Analyze(-0, -0f)
-            is CoreResult.ClientError -> Analyze(-0, -0f)
-        }
+        // every widget runs concurrently; a slow or failing one only falls back itself
+        val entryToday = async { widget("entryToday", Analyze(-0, -0f)) { attendService.analyticAttend(today, 1).analyzeOrFallback() } }
+        val entryThisMonth = async { widget("entryThisMonth", Analyze(-0, -0f)) { attendService.analyticAttend(today, 30).analyzeOrFallback() } }
+        val borrowToday = async { widget("borrowToday", Analyze(-0, -0f)) { borrowService.analyticBorrow(today, 1).analyzeOrFallback() } }
+        val sponsorToday = async { widget("sponsorToday", Analyze(-0, -0f)) { donationService.analyticDonation(today, 1).analyzeOrFallback() } }
 
-        val borrowToday: Analyze = when (val result = borrowService.analyticBorrow(indoChinaDate(), 1)) {
-            is CoreResult.Success -> result.data
-            is CoreResult.Failure -> Analyze(-0, -0f)
-            is CoreResult.ClientError -> Analyze(-0, -0f)
+        val bookAvailable = async {
+            widget<Any>("bookAvailable", TIMEOUT_MESSAGE) {
+                when (val result = bookService.getAvailableBook()) {
+                    is CoreResult.Success -> result.data
+                    is CoreResult.Failure -> result.errorMsg
+                    is CoreResult.ClientError -> result.clientErrMsg
+                }
+            }
         }
 
-        val sponsorToday: Analyze = when (val result = donationService.analyticDonation(indoChinaDate(), 1)) {
-            is CoreResult.Success -> result.data
-            is CoreResult.Failure -> Analyze(-0, -0f)
-            is CoreResult.ClientError -> Analyze(-0, -0f)
+        val customEntry = async {
+            widget("customEntry", emptyList<StudentAttendDetail>()) {
+                attendService.getAllStudentAttendDetail(today, 10).toList().reversed()
+            }
         }
 
-        val bookAvailable: Any = when (val result = bookService.getAvailableBook()) {
-            is CoreResult.Success -> result.data
-            is CoreResult.Failure -> result.errorMsg
-            is CoreResult.ClientError -> result.clientErrMsg
+        val weeklyVisitor = async {
+            widget<Any>("weeklyVisitor", TIMEOUT_MESSAGE) {
+                when (val result = attendService.getWeeklyVisit()) {
+                    is CoreResult.Success -> result.data
+                    is CoreResult.Failure -> result.errorMsg
+                    is CoreResult.ClientError -> result.clientErrMsg
+                }
+            }
         }
 
-        val customEntry: List<StudentAttendDetail> = attendService.getAllStudentAttendDetail(indoChinaDate(), 10).toList().reversed()
-
-        val weeklyVisitor: Any = when (val result = attendService.getWeeklyVisit()) {
-            is CoreResult.Success -> result.data
-            is CoreResult.Failure -> result.errorMsg
-            is CoreResult.ClientError -> result.clientErrMsg
+        val totalMajorVisitor = async {
+            widget<Any>("totalMajorVisitor", TIMEOUT_MESSAGE) {
+                when (val result = attendService.getTotalMajorVisit()) {
+                    is CoreResult.Success -> result.data
+                    is CoreResult.Failure -> result.errorMsg
+                    is CoreResult.ClientError -> result.clientErrMsg
+                }
+            }
         }
 
-        val totalMajorVisitor: Any = when (val result = attendService.getTotalMajorVisit()) {
-            is CoreResult.Success -> result.data
-            is CoreResult.Failure -> result.errorMsg
-            is CoreResult.ClientError -> result.clientErrMsg
-        }
+        buildDashboard(
+            entryToday = entryToday.await(),
+            entryThisMonth = entryThisMonth.await(),
+            borrowToday = borrowToday.await(),
+            sponsorToday = sponsorToday.await(),
+            bookAvailable = bookAvailable.await(),
+            customEntry = customEntry.await(),
+            weeklyVisitor = weeklyVisitor.await(),
+            totalMajorVisitor = totalMajorVisitor.await()
+        )
+    }
 
+    private fun buildDashboard(
+        entryToday: Analyze,
+        entryThisMonth: Analyze,
+        borrowToday: Analyze,
+        sponsorToday: Analyze,
+        bookAvailable: Any,
+        customEntry: List<StudentAttendDetail>,
+        weeklyVisitor: Any,
+        totalMajorVisitor: Any
+    ): Dashboard {
         val cardData = listOf(
             CardData("Entry", entryToday.currentValue, entryToday.percentage),
             CardData("Book Borrow", borrowToday.currentValue, borrowToday.percentage),
@@ -97,4 +133,30 @@ class DashboardServiceImp(
         )
     }
 
-}
\ No newline at end of file
+    /**
+     * Runs one widget with its own timeout. Timeouts and errors return [fallback]
+     * instead of failing the whole dashboard.
+     */
+    private suspend fun <T> widget(name: String, fallback: T, block: suspend () -> T): T {
+        return try {
+            withTimeoutOrNull(widgetTimeout.toMillis()) { block() }
+                ?: fallback.also { logger.warn("Dashboard widget $name timed out after $widgetTimeout") }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            logger.warn("Dashboard widget $name failed: ${e.message}")
+            fallback
+        }
+    }
+
+    private fun CoreResult<Analyze>.analyzeOrFallback(): Analyze = when (this) {
+        is CoreResult.Success -> data
+        is CoreResult.Failure -> Analyze(-0, -0f)
+        is CoreResult.ClientError -> Analyze(-0, -0f)
+    }
+
+    companion object {
+        private const val TIMEOUT_MESSAGE = "Not available, please try again."
+    }
+
+}
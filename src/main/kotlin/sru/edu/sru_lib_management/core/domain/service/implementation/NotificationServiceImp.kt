@@ -3,6 +3,9 @@ package sru.edu.sru_lib_management.core.domain.service.implementation
 import kotlinx.coroutines.flow.Flow
 import org.springframework.stereotype.Component
 import sru.edu.sru_lib_management.auth.domain.model.Role
+import sru.edu.sru_lib_management.auth.domain.model.User
+import sru.edu.sru_lib_management.auth.domain.repository.AuthRepository
+import sru.edu.sru_lib_management.auth.domain.service.EmailOutbox
 import sru.edu.sru_lib_management.core.domain.model.Notification
 import sru.edu.sru_lib_management.core.domain.model.NotificationType
 import sru.edu.sru_lib_management.core.domain.repository.NotificationRepository
@@ -14,7 +17,9 @@ import sru.edu.sru_lib_management.infrastructure.websocket.notification.Notifica
 class NotificationServiceImp (
     private val notificationRepository: NotificationRepository,
     private val dispatcher: NotificationDispatcher,
-    private val sessionRegistry: WebSocketSessionRegistry
+    private val sessionRegistry: WebSocketSessionRegistry,
+    private val emailOutbox: EmailOutbox,
+    private val authRepository: AuthRepository<User>
 ) : NotificationService {
 
     override suspend fun notifyRole(
@@ -33,6 +38,8 @@ class NotificationServiceImp (
 
         notificationRepository.save(notification)
         dispatcher.sendToRole(role, message)
+        // the email is queued, the outbox worker sends and retries it
+        emailOutbox.enqueueToRole(role, title, message)
     }
 
     override suspend fun notifyUser(
@@ -52,6 +59,7 @@ class NotificationServiceImp (
 
         notificationRepository.save(notification)
         dispatcher.sendToUser(userId, message)
+        authRepository.findByUserId(userId)?.let { emailOutbox.enqueue(it.email, title, message) }
     }
 
     override fun getUnreadForUser(
@@ -12,14 +12,18 @@ import org.springframework.stereotype.Component
 import org.springframework.web.server.ResponseStatusException
 import sru.edu.sru_lib_management.common.CoreResult
 import sru.edu.sru_lib_management.core.domain.dto.StudentDto
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Students
 import sru.edu.sru_lib_management.core.domain.repository.StudentRepository
+import sru.edu.sru_lib_management.core.domain.service.AttendRollupService
 import sru.edu.sru_lib_management.core.domain.service.StudentService
 import sru.edu.sru_lib_management.utils.ResponseStatus.INTERNAL_SERVER_ERROR
 
 @Component
 class StudentServiceImp(
-   private val studentRepository: StudentRepository
+   private val studentRepository: StudentRepository,
+   private val attendRollupService: AttendRollupService
 ) : StudentService {
 
     private val logger = LoggerFactory.getLogger(StudentService::class.java)
@@ -54,6 +58,10 @@ class StudentServiceImp(
                 generation = students.generation
             )
             studentRepository.update(updateStudents)
+            // the rollup rows of the student's visits are grouped by these
+            if (updateStudents.majorId != existingStudent.majorId || updateStudents.degreeLevelId != existingStudent.degreeLevelId ||
+                updateStudents.generation != existingStudent.generation || updateStudents.gender != existingStudent.gender)
+                attendRollupService.markDirty(*attendRollupService.studentAttendDates(studentId).toTypedArray())
         }.fold(
             onSuccess = {
                 CoreResult.Success(students)
@@ -65,7 +73,10 @@ class StudentServiceImp(
     }
     override suspend fun deleteStudent(studentId: Long): CoreResult<Boolean> {
         return runCatching {
+            // read before the delete cascades to the attend rows
+            val attendDates = attendRollupService.studentAttendDates(studentId)
             studentRepository.delete(studentId)
+            if (attendDates.isNotEmpty()) attendRollupService.markDirty(*attendDates.toTypedArray())
         }.fold(
             onSuccess = { CoreResult.Success(true) },
             onFailure = { e ->
@@ -91,6 +102,9 @@ class StudentServiceImp(
         }
     }
 
+    override suspend fun getStudentDetailPage(page: PageRequest): CursorPage<StudentDto> =
+        studentRepository.getStudentDetailPage(page)
+
     override fun getAllStudentDetail(): Flow<StudentDto> {
         return studentRepository.getStudentDetail()
             .catch { e ->
@@ -17,12 +17,17 @@ import org.springframework.web.reactive.function.server.*
 import sru.edu.sru_lib_management.common.CoreResult
 import sru.edu.sru_lib_management.core.domain.dto.attend.AttendDetail
 import sru.edu.sru_lib_management.core.domain.model.Attend
+import sru.edu.sru_lib_management.core.domain.service.AttendRollupService
 import sru.edu.sru_lib_management.core.domain.service.AttendService
 import sru.edu.sru_lib_management.infrastructure.websocket.dashboard.DashboardNotificationService
 import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
 import sru.edu.sru_lib_management.utils.ResponseStatus.ACCEPTED
 import sru.edu.sru_lib_management.utils.ResponseStatus.BAD_REQUEST
 import sru.edu.sru_lib_management.utils.ResponseStatus.INTERNAL_SERVER_ERROR
+import sru.edu.sru_lib_management.utils.listResponse
+import sru.edu.sru_lib_management.utils.pageRequest
+import sru.edu.sru_lib_management.utils.streamingMediaType
+import sru.edu.sru_lib_management.utils.unpagedRequest
 import java.time.LocalDate
 import java.time.LocalTime
 import java.time.format.DateTimeParseException
@@ -30,7 +35,8 @@ import java.time.format.DateTimeParseException
 @Component
 class AttendHandler(
     private val attendService: AttendService,
-    private val dashboardNotificationService: DashboardNotificationService
+    private val dashboardNotificationService: DashboardNotificationService,
+    private val attendRollupService: AttendRollupService
 ) {
 
     private val logger = LoggerFactory.getLogger(this::class.java)
@@ -57,15 +63,47 @@ class AttendHandler(
         }
     }
 
+    /*
+    * -> http://localhost:8090/api/v1/att/rollup/rebuild?startDate=&endDate=
+    * Rebuild the daily attend rollup, whole history without dates
+    * */
+    @PreAuthorize("hasRole('SUPER_ADMIN')")
+    suspend fun rebuildRollup(request: ServerRequest): ServerResponse {
+        val (startDate, endDate) = try {
+            request.queryParamOrNull("startDate")?.let(LocalDate::parse) to
+                request.queryParamOrNull("endDate")?.let(LocalDate::parse)
+        } catch (e: DateTimeParseException) {
+            return ServerResponse.badRequest().bodyValueAndAwait("Invalid date format, use yyyy-MM-dd")
+        }
+        if (startDate != null && endDate != null && startDate.isAfter(endDate))
+            return ServerResponse.badRequest().bodyValueAndAwait("startDate is after endDate")
+        val rows = attendRollupService.rebuild(startDate, endDate)
+        return ServerResponse.ok().bodyValueAndAwait(mapOf("rows" to rows))
+    }
+
     /*
     * ->  http://localhost:8090/api/v1/att
     * Get all attend
     * */
     @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
-    suspend fun getAllAttend(): ServerResponse = coroutineScope {
+    suspend fun getAllAttend(request: ServerRequest): ServerResponse = coroutineScope {
+        val page = request.pageRequest("id")
+        val type = request.streamingMediaType()
+        // plain JSON without size / cursor gets a capped array, only streaming returns the full list
+        if (page != null || type == null) {
+            return@coroutineScope when (val result = attendService.getAttendPage(page ?: unpagedRequest("id"))) {
+                is CoreResult.Success ->
+                    if (page == null) result.data.listResponse()
+                    else ServerResponse.ok().bodyValueAndAwait(result.data)
+                is CoreResult.Failure ->
+                    ServerResponse.status(500).bodyValueAndAwait(result.errorMsg)
+                is CoreResult.ClientError ->
+                    ServerResponse.badRequest().bodyValueAndAwait(result.clientErrMsg)
+            }
+        }
         when(val result = attendService.getAllAttend()){
             is CoreResult.Success ->
-                ServerResponse.ok().bodyAndAwait(result.data)
+                ServerResponse.ok().contentType(type).bodyAndAwait(result.data)
             is CoreResult.Failure ->
                 ServerResponse.status(500).bodyValueAndAwait(result.errorMsg)
             is CoreResult.ClientError ->
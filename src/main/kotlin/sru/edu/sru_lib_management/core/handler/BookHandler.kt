@@ -34,6 +34,10 @@ import sru.edu.sru_lib_management.utils.ResponseStatus.ACCEPTED
 import sru.edu.sru_lib_management.utils.ResponseStatus.BAD_REQUEST
 import sru.edu.sru_lib_management.utils.ResponseStatus.INTERNAL_SERVER_ERROR
 import sru.edu.sru_lib_management.utils.ResponseStatus.OK
+import sru.edu.sru_lib_management.utils.listResponse
+import sru.edu.sru_lib_management.utils.pageRequest
+import sru.edu.sru_lib_management.utils.streamingMediaType
+import sru.edu.sru_lib_management.utils.unpagedRequest
 import sru.edu.sru_lib_management.utils.toBookDto
 import java.io.File
 import java.io.InputStream
@@ -111,9 +115,14 @@ class BookHandler(
    * */
 
     @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
-    suspend fun getBooks(): ServerResponse = coroutineScope {
-        val allBooks = bookService.getAllBooks()
-        ServerResponse.ok().bodyAndAwait(allBooks)
+    suspend fun getBooks(request: ServerRequest): ServerResponse = coroutineScope {
+        request.pageRequest("id")?.let { page ->
+            return@coroutineScope ServerResponse.ok().bodyValueAndAwait(bookService.getBookPage(page))
+        }
+        request.streamingMediaType()?.let { type ->
+            return@coroutineScope ServerResponse.ok().contentType(type).bodyAndAwait(bookService.getAllBooks())
+        }
+        bookService.getBookPage(unpagedRequest("id")).listResponse()
     }
 
     /*
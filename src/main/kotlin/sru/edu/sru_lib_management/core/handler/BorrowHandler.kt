@@ -15,9 +15,15 @@ import org.springframework.web.reactive.function.server.*
 import sru.edu.sru_lib_management.common.CoreResult
 import sru.edu.sru_lib_management.core.domain.dto.BorrowDetail
 import sru.edu.sru_lib_management.core.domain.dto.BorrowDto
+import sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowBatchResult
+import sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowReturnDto
 import sru.edu.sru_lib_management.core.domain.model.Borrow
 import sru.edu.sru_lib_management.core.domain.service.BorrowService
 import sru.edu.sru_lib_management.infrastructure.websocket.dashboard.DashboardNotificationService
+import sru.edu.sru_lib_management.utils.listResponse
+import sru.edu.sru_lib_management.utils.pageRequest
+import sru.edu.sru_lib_management.utils.streamingMediaType
+import sru.edu.sru_lib_management.utils.unpagedRequest
 import java.time.LocalDate
 
 @Component
@@ -55,10 +61,24 @@ class BorrowHandler (
         }
     }
 
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
+    suspend fun saveBorrows(request: ServerRequest): ServerResponse = coroutineScope {
+
+        val borrowDtos: List<BorrowDto> = request.bodyToMono<List<BorrowDto>>().awaitFirst()
+
+        batchResponse(borrowService.saveBorrows(borrowDtos))
+    }
+
     @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
-    suspend fun getAllBorrow(): ServerResponse = coroutineScope {
-        val borrowData: Flow<Borrow> = borrowService.getBorrows()
-        ServerResponse.ok().bodyAndAwait(borrowData)
+    suspend fun getAllBorrow(request: ServerRequest): ServerResponse = coroutineScope {
+        request.pageRequest("id")?.let { page ->
+            return@coroutineScope ServerResponse.ok().bodyValueAndAwait(borrowService.getBorrowPage(page))
+        }
+        request.streamingMediaType()?.let { type ->
+            val borrowData: Flow<Borrow> = borrowService.getBorrows()
+            return@coroutineScope ServerResponse.ok().contentType(type).bodyAndAwait(borrowData)
+        }
+        borrowService.getBorrowPage(unpagedRequest("id")).listResponse()
     }
 
     @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
@@ -67,6 +87,13 @@ class BorrowHandler (
         ServerResponse.ok().bodyAndAwait(allOverDue)
     }
 
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
+    suspend fun studentLoans(request: ServerRequest): ServerResponse = coroutineScope {
+        val studentId: Long = request.pathVariable("studentId").toLongOrNull()
+            ?: return@coroutineScope ServerResponse.badRequest().buildAndAwait()
+        ServerResponse.ok().bodyValueAndAwait(borrowService.getStudentLoans(studentId))
+    }
+
     @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
     suspend fun bookReturned(
         request: ServerRequest
@@ -90,6 +117,28 @@ class BorrowHandler (
         }
     }
 
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
+    suspend fun booksReturned(request: ServerRequest): ServerResponse = coroutineScope {
+
+        val items: List<BorrowReturnDto> = request.bodyToMono<List<BorrowReturnDto>>().awaitFirst()
+
+        batchResponse(borrowService.booksReturned(items))
+    }
+
+    // per-item results with 200, the dashboard refreshes when any item went through
+    private suspend fun batchResponse(result: CoreResult<List<BorrowBatchResult>>): ServerResponse =
+        when (result) {
+            is CoreResult.Success -> {
+                if (result.data.any { it.success })
+                    dashboardNotificationService.notifyDashboardUpdate()
+                ServerResponse.ok().bodyValueAndAwait(result.data)
+            }
+            is CoreResult.Failure ->
+                ServerResponse.status(500).bodyValueAndAwait(result.errorMsg)
+            is CoreResult.ClientError ->
+                ServerResponse.badRequest().bodyValueAndAwait(result.clientErrMsg)
+        }
+
     @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
     suspend fun extendBorrowBook(
         request: ServerRequest
@@ -108,9 +157,14 @@ class BorrowHandler (
     }
 
     @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
-    suspend fun borrowDetails(): ServerResponse = coroutineScope {
-        val result: List<BorrowDetail> = borrowService.getBorrowDetail()
-        ServerResponse.ok().bodyValueAndAwait(result)
+    suspend fun borrowDetails(request: ServerRequest): ServerResponse = coroutineScope {
+        request.pageRequest("id")?.let { page ->
+            return@coroutineScope ServerResponse.ok().bodyValueAndAwait(borrowService.getBorrowDetailPage(page))
+        }
+        request.streamingMediaType()?.let { type ->
+            return@coroutineScope ServerResponse.ok().contentType(type).bodyAndAwait(borrowService.streamBorrowDetail())
+        }
+        borrowService.getBorrowDetailPage(unpagedRequest("id")).listResponse()
     }
 
     @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
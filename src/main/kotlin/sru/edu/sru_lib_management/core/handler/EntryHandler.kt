@@ -213,14 +213,16 @@ class EntryHandler(
         }
 
         logger.info("${indoChinaTime()}")
-        attendService.getAttendDetailByPeriod(
-            indoChinaDate(),
-            LocalTime.parse(entryTime),
-            LocalTime.parse(exitingTime)
-        ){ attend ->
-            if (attend.studentId == entryId)
-                result = if (attend.exitingTimes == null) "not exited" else "exited"
-        }.toList()
+        val sessionStart = LocalTime.parse(entryTime)
+        val sessionEnd = LocalTime.parse(exitingTime)
+        // O(1) lookup in the live occupancy, stream the period only while it is loading
+        result = attendService.getVisitStatus(entryId.toString(), sessionStart, sessionEnd) ?: run {
+            attendService.getAttendDetailByPeriod(indoChinaDate(), sessionStart, sessionEnd){ attend ->
+                if (attend.studentId == entryId)
+                    result = if (attend.exitingTimes == null) "not exited" else "exited"
+            }.toList()
+            result
+        }
 
         // Return
         return ServerResponse.status(OK)
@@ -228,4 +230,15 @@ class EntryHandler(
             .awaitSingle()
     }
 
+    ////
+    //  http://localhost:8090/api/v1/entry/inside
+    //  number of visitors currently inside the library
+    ////
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
+    suspend fun visitorsInside(): ServerResponse {
+        return ServerResponse.status(OK)
+            .bodyValue(mapOf("inside" to attendService.countVisitorsInside()))
+            .awaitSingle()
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.core.handler
+
+import io.r2dbc.pool.ConnectionPool
+import io.r2dbc.spi.ConnectionFactory
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.stereotype.Component
+import org.springframework.web.reactive.function.server.ServerResponse
+import org.springframework.web.reactive.function.server.bodyValueAndAwait
+import org.springframework.web.reactive.function.server.buildAndAwait
+import sru.edu.sru_lib_management.auth.data.cache.PrincipalCache
+import sru.edu.sru_lib_management.auth.domain.jwt.JwtToken
+import sru.edu.sru_lib_management.auth.domain.service.EmailOutbox
+import sru.edu.sru_lib_management.auth.domain.service.PasswordHasher
+import sru.edu.sru_lib_management.core.data.cache.VisitorCache
+import sru.edu.sru_lib_management.infrastructure.config.DatabasePoolMetrics
+import sru.edu.sru_lib_management.infrastructure.websocket.dashboard.DashboardWebSocketHandler
+import sru.edu.sru_lib_management.infrastructure.websocket.helper.SessionOutboxes
+import sru.edu.sru_lib_management.utils.schedule.JobLock
+
+@Component
+class MetricsHandler(
+    private val connectionFactory: ConnectionFactory,
+    private val databasePoolMetrics: DatabasePoolMetrics,
+    private val visitorCache: VisitorCache,
+    private val principalCache: PrincipalCache,
+    private val jwtToken: JwtToken,
+    private val dashboardWebSocketHandler: DashboardWebSocketHandler,
+    private val sessionOutboxes: SessionOutboxes,
+    private val passwordHasher: PasswordHasher,
+    private val emailOutbox: EmailOutbox,
+    private val jobLock: JobLock
+) {
+
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN')")
+    suspend fun databasePool(): ServerResponse {
+        val pool = connectionFactory as? ConnectionPool
+            ?: return ServerResponse.noContent().buildAndAwait()
+        return ServerResponse.ok().bodyValueAndAwait(databasePoolMetrics.snapshot(pool))
+    }
+
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN')")
+    suspend fun caches(): ServerResponse {
+        return ServerResponse.ok().bodyValueAndAwait(
+            visitorCache.stats() + principalCache.stats() + jwtToken.claimsCacheStats()
+        )
+    }
+
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN')")
+    suspend fun dashboardRefresh(): ServerResponse {
+        return ServerResponse.ok().bodyValueAndAwait(dashboardWebSocketHandler.refreshStats())
+    }
+
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN')")
+    suspend fun websocketOutboxes(): ServerResponse {
+        return ServerResponse.ok().bodyValueAndAwait(sessionOutboxes.stats())
+    }
+
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN')")
+    suspend fun passwordHashing(): ServerResponse {
+        return ServerResponse.ok().bodyValueAndAwait(passwordHasher.stats())
+    }
+
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN')")
+    suspend fun emailOutbox(): ServerResponse {
+        return ServerResponse.ok().bodyValueAndAwait(emailOutbox.stats())
+    }
+
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN')")
+    suspend fun jobRuns(): ServerResponse {
+        return ServerResponse.ok().bodyValueAndAwait(jobLock.recentRuns())
+    }
+
+}
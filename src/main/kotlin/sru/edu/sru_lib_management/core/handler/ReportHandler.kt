@@ -5,6 +5,10 @@
 
 package sru.edu.sru_lib_management.core.handler
 
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.reactor.awaitSingle
 import org.slf4j.LoggerFactory
@@ -12,12 +16,16 @@ import org.springframework.security.access.prepost.PreAuthorize
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.function.server.ServerRequest
 import org.springframework.web.reactive.function.server.ServerResponse
+import org.springframework.web.reactive.function.server.bodyAndAwait
 import org.springframework.web.reactive.function.server.bodyValueAndAwait
 import sru.edu.sru_lib_management.core.domain.dto.report.Report
+import sru.edu.sru_lib_management.core.domain.dto.report.ReportSection
+import sru.edu.sru_lib_management.core.domain.mapper.dto.StaffDto
 import sru.edu.sru_lib_management.core.domain.service.BookService
 import sru.edu.sru_lib_management.core.domain.service.ReportService
 import sru.edu.sru_lib_management.core.domain.service.StaffService
 import sru.edu.sru_lib_management.utils.ResponseStatus.OK
+import sru.edu.sru_lib_management.utils.streamingMediaType
 import java.time.YearMonth
 
 @Component
@@ -47,17 +55,22 @@ class ReportHandler (
         val startDate = startMonth.atDay(1)
         val endDate = endMonth.atEndOfMonth()
 
-        val book = bookService.getAllBooks()
-            .toList()
-            .groupBy { it.languageId } // group by languageId
-            .mapValues { (_, listBookDto) -> // For each group (languageId) calculate the sum of bookQuan
-                listBookDto.sumOf { it.bookQuan }
+        request.streamingMediaType()?.let { type ->
+            val sections: Flow<ReportSection> = flow {
+                emit(ReportSection("libraryStaff", libraryStaff()))
+                emit(ReportSection("totalBookInLibrary", totalBookInLibrary()))
+                emit(ReportSection("bookEachCollege", bookService.getBookDataForEachCollege(null, null)))
+                emit(ReportSection("staffMonthlyEntry", reportService.staffAttendList(startMonth, endMonth)))
+                emitAll(reportService.studentAttendList(startMonth, endMonth).map { ReportSection("studentMonthlyEntry", it) })
+                emitAll(reportService.getAllDonation(startDate, endDate).map { ReportSection("listOfDonation", it) })
             }
+            return ServerResponse.status(OK).contentType(type).bodyAndAwait(sections)
+        }
 
-
+        val book = totalBookInLibrary()
         val staffEntry = reportService.staffAttendList(startMonth, endMonth)
         val studentEntry = reportService.studentAttendList(startMonth, endMonth).toList()
-        val libraryStaffList = staffService.findAll().collectList().awaitSingle()?.filter { it._getIsActive() } ?: emptyList()
+        val libraryStaffList = libraryStaff()
         val bookEachCollege = bookService.getBookDataForEachCollege(null, null)
         val donations = reportService.getAllDonation(startDate, endDate).toList()
 
@@ -72,4 +85,14 @@ class ReportHandler (
         return ServerResponse.status(OK).bodyValueAndAwait(report)
     }
 
+    // sum of book quantity for each languageId
+    private suspend fun totalBookInLibrary(): Map<String, Int> =
+        bookService.getAllBooks()
+            .toList()
+            .groupBy { it.languageId }
+            .mapValues { (_, listBookDto) -> listBookDto.sumOf { it.bookQuan } }
+
+    private suspend fun libraryStaff(): List<StaffDto> =
+        staffService.findAll().collectList().awaitSingle()?.filter { it._getIsActive() } ?: emptyList()
+
 }
\ No newline at end of file
@@ -6,15 +6,12 @@
 package sru.edu.sru_lib_management.core.handler
 
 import kotlinx.coroutines.coroutineScope
-import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.reactive.awaitFirstOrNull
-import okio.IOException
 import org.slf4j.LoggerFactory
 import org.springframework.security.access.prepost.PreAuthorize
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.function.server.*
 import sru.edu.sru_lib_management.common.CoreResult
-import sru.edu.sru_lib_management.core.domain.dto.StudentDto
 import sru.edu.sru_lib_management.core.domain.model.Students
 import sru.edu.sru_lib_management.core.domain.service.StudentService
 import sru.edu.sru_lib_management.utils.ResponseStatus.ACCEPTED
@@ -22,6 +19,9 @@ import sru.edu.sru_lib_management.utils.ResponseStatus.BAD_REQUEST
 import sru.edu.sru_lib_management.utils.ResponseStatus.CREATED
 import sru.edu.sru_lib_management.utils.ResponseStatus.INTERNAL_SERVER_ERROR
 import sru.edu.sru_lib_management.utils.ResponseStatus.OK
+import sru.edu.sru_lib_management.utils.listResponse
+import sru.edu.sru_lib_management.utils.pageRequest
+import sru.edu.sru_lib_management.utils.unpagedRequest
 
 
 @Component
@@ -54,16 +54,14 @@ class StudentHandler(
             ServerResponse.badRequest().buildAndAwait()
     }
 
-    // Get all student using flux as Flow
+    // Get all student, a JSON array capped at one page unless size / cursor ask for a CursorPage
     @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'SUPER_ADMIN')")
-    suspend fun getAllStudents(): ServerResponse {
-       return try {
-           logger.info("Get ALL Students")
-           val list: Flow<StudentDto> = studentService.getAllStudentDetail()
-           ServerResponse.ok().bodyAndAwait(list)
-       }catch (e: Exception){
-           throw IOException(e.message)
+    suspend fun getAllStudents(request: ServerRequest): ServerResponse {
+       request.pageRequest("id")?.let { page ->
+           return ServerResponse.ok().bodyValueAndAwait(studentService.getStudentDetailPage(page))
        }
+       logger.info("Get ALL Students")
+       return studentService.getStudentDetailPage(unpagedRequest("id")).listResponse()
     }
 
     /*
@@ -7,10 +7,15 @@ package sru.edu.sru_lib_management.infrastructure.config
 
 import io.asyncer.r2dbc.mysql.MySqlConnectionConfiguration
 import io.asyncer.r2dbc.mysql.MySqlConnectionFactory
+import io.r2dbc.pool.ConnectionPool
+import io.r2dbc.pool.ConnectionPoolConfiguration
 import io.r2dbc.spi.ConnectionFactory
+import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.context.event.ApplicationReadyEvent
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
+import org.springframework.context.event.EventListener
 import org.springframework.data.r2dbc.config.AbstractR2dbcConfiguration
 import org.springframework.r2dbc.connection.R2dbcTransactionManager
 import org.springframework.transaction.ReactiveTransactionManager
@@ -21,10 +26,18 @@ import org.springframework.transaction.annotation.EnableTransactionManagement
 class DatabaseConfig(
     @param:Value("\${spring.datasource.url}") private val url: String,
     @param:Value("\${spring.datasource.username}") private val username: String,
-    @param:Value("\${spring.datasource.password}") private val password: String
+    @param:Value("\${spring.datasource.password}") private val password: String,
+    private val poolProperties: DatabasePoolProperties,
+    private val poolMetrics: DatabasePoolMetrics
 ) : AbstractR2dbcConfiguration(){
 
-    @Bean
+    private val logger = LoggerFactory.getLogger(DatabaseConfig::class.java)
+
+    /**
+     * Every repository goes through this factory, so the MySQL factory is wrapped
+     * in a [ConnectionPool] instead of opening a physical connection per query.
+     */
+    @Bean(destroyMethod = "dispose")
     override fun connectionFactory(): ConnectionFactory {
 
 //        // for local database
@@ -52,7 +65,7 @@ class DatabaseConfig(
 
         val (host, port) = hostAndPort.split(":")
 
-        return MySqlConnectionFactory.from(
+        val mySqlConnectionFactory = MySqlConnectionFactory.from(
             MySqlConnectionConfiguration.builder()
                 .host(host)
                 .port(port.toInt())
@@ -62,7 +75,34 @@ class DatabaseConfig(
                 .build()
         )
 
+        val poolConfiguration = ConnectionPoolConfiguration.builder(mySqlConnectionFactory)
+            .name("sru-library-pool")
+            .initialSize(poolProperties.initialSize)
+            .minIdle(poolProperties.minIdle)
+            .maxSize(poolProperties.maxSize)
+            .maxIdleTime(poolProperties.maxIdleTime)
+            .maxLifeTime(poolProperties.maxLifeTime)
+            .maxAcquireTime(poolProperties.maxAcquireTime)
+            .maxCreateConnectionTime(poolProperties.maxCreateConnectionTime)
+            .validationQuery(poolProperties.validationQuery)
+            .metricsRecorder(poolMetrics)
+            .build()
 
+        return ConnectionPool(poolConfiguration)
+    }
+
+    /**
+     * Opens the initial connections once the application is ready,
+     * so the first scans of the day don't pay the MySQL handshake.
+     */
+    @EventListener(ApplicationReadyEvent::class)
+    fun warmUpPool() {
+        if (!poolProperties.warmUp) return
+        val pool = connectionFactory() as? ConnectionPool ?: return
+        pool.warmup().subscribe(
+            { logger.info("Database pool warmed up with $it connections") },
+            { logger.warn("Database pool warm up failed: ${it.message}") }
+        )
     }
 
     @Bean
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.infrastructure.config
+
+import io.r2dbc.pool.ConnectionPool
+import org.springframework.stereotype.Component
+import reactor.pool.PoolMetricsRecorder
+import sru.edu.sru_lib_management.core.domain.dto.metrics.DatabasePoolStats
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Records latency of the connection pool and combines it with the live
+ * gauges of [ConnectionPool] into a [DatabasePoolStats] snapshot.
+ *
+ * - Allocation = opening a new physical MySQL connection.
+ * - Pending = time a caller waited in the pool for a connection (acquire latency).
+ *
+ * reactor-pool reports every latency in milliseconds.
+ */
+@Component
+class DatabasePoolMetrics : PoolMetricsRecorder {
+
+    private val createCount = LongAdder()
+    private val createLatencyTotal = LongAdder()
+    private val createLatencyMax = AtomicLong()
+
+    private val acquireCount = LongAdder()
+    private val acquireFailures = LongAdder()
+    private val acquireLatencyTotal = LongAdder()
+    private val acquireLatencyMax = AtomicLong()
+
+    override fun recordAllocationSuccessAndLatency(latencyMs: Long) {
+        createCount.increment()
+        createLatencyTotal.add(latencyMs)
+        createLatencyMax.accumulateAndGet(latencyMs, ::maxOf)
+    }
+
+    override fun recordAllocationFailureAndLatency(latencyMs: Long) {
+        acquireFailures.increment()
+    }
+
+    override fun recordPendingSuccessAndLatency(latencyMs: Long) {
+        acquireCount.increment()
+        acquireLatencyTotal.add(latencyMs)
+        acquireLatencyMax.accumulateAndGet(latencyMs, ::maxOf)
+    }
+
+    override fun recordPendingFailureAndLatency(latencyMs: Long) {
+        acquireFailures.increment()
+    }
+
+    override fun recordResetLatency(latencyMs: Long) {}
+    override fun recordDestroyLatency(latencyMs: Long) {}
+    override fun recordRecycled() {}
+    override fun recordLifetimeDuration(millisecondsSinceAllocation: Long) {}
+    override fun recordIdleTime(millisecondsIdle: Long) {}
+    override fun recordSlowPath() {}
+    override fun recordFastPath() {}
+
+    fun snapshot(pool: ConnectionPool): DatabasePoolStats {
+        val metrics = pool.metrics.orElse(null)
+        val created = createCount.sum()
+        val acquires = acquireCount.sum()
+        return DatabasePoolStats(
+            acquired = metrics?.acquiredSize() ?: 0,
+            allocated = metrics?.allocatedSize() ?: 0,
+            idle = metrics?.idleSize() ?: 0,
+            pendingAcquires = metrics?.pendingAcquireSize() ?: 0,
+            maxAllocated = metrics?.maxAllocatedSize ?: 0,
+            maxPendingAcquires = metrics?.maxPendingAcquireSize ?: 0,
+            connectionsCreated = created,
+            avgCreateLatencyMs = if (created == 0L) 0.0 else createLatencyTotal.sum().toDouble() / created,
+            maxCreateLatencyMs = createLatencyMax.get().toDouble(),
+            acquireCount = acquires,
+            acquireFailures = acquireFailures.sum(),
+            avgAcquireLatencyMs = if (acquires == 0L) 0.0 else acquireLatencyTotal.sum().toDouble() / acquires,
+            maxAcquireLatencyMs = acquireLatencyMax.get().toDouble()
+        )
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.infrastructure.config
+
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.context.annotation.Configuration
+import java.time.Duration
+
+/**
+ * Settings of the R2DBC connection pool built in [DatabaseConfig].
+ * Every value has a default so the pool works without extra environment variables.
+ */
+@Configuration
+class DatabasePoolProperties(
+    @param:Value("\${spring.datasource.pool.initial-size:5}") val initialSize: Int,
+    @param:Value("\${spring.datasource.pool.min-idle:5}") val minIdle: Int,
+    @param:Value("\${spring.datasource.pool.max-size:20}") val maxSize: Int,
+    @param:Value("\${spring.datasource.pool.max-idle-time:30m}") val maxIdleTime: Duration,
+    @param:Value("\${spring.datasource.pool.max-life-time:1h}") val maxLifeTime: Duration,
+    @param:Value("\${spring.datasource.pool.max-acquire-time:5s}") val maxAcquireTime: Duration,
+    @param:Value("\${spring.datasource.pool.max-create-connection-time:10s}") val maxCreateConnectionTime: Duration,
+    @param:Value("\${spring.datasource.pool.validation-query:SELECT 1}") val validationQuery: String,
+    @param:Value("\${spring.datasource.pool.warm-up:true}") val warmUp: Boolean
+)
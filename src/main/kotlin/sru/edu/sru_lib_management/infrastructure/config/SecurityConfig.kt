@@ -28,6 +28,7 @@ import sru.edu.sru_lib_management.auth.data.repository.AuthRepositoryImp
 import sru.edu.sru_lib_management.auth.domain.jwt.JwtAuthenticationConverter
 import sru.edu.sru_lib_management.auth.domain.jwt.JwtAuthenticationManager
 import sru.edu.sru_lib_management.auth.domain.model.CustomUserDetails
+import sru.edu.sru_lib_management.utils.NEXT_CURSOR_HEADER
 import java.util.*
 
 @Configuration
@@ -37,6 +38,10 @@ class SecurityConfig (
     private val repository: AuthRepositoryImp,
     @param:Value("\${spring.mail.password}") val mailSenderPassword: String,
     @param:Value("\${spring.mail.username}") val mailSenderUsername: String,
+    @param:Value("\${spring.mail.host:smtp.gmail.com}") val mailSenderHost: String,
+    @param:Value("\${spring.mail.port:587}") val mailSenderPort: Int,
+    @param:Value("\${spring.mail.properties.mail.smtp.auth:true}") val mailSmtpAuth: Boolean,
+    @param:Value("\${spring.mail.properties.mail.smtp.starttls.enable:true}") val mailStartTls: Boolean,
 ) {
 
 //    private val dashboardAccessRole = listOf("ROLE_USER", "ROLE_ADMIN", "ROLE_SUPER_ADMIN")
@@ -100,6 +105,7 @@ class SecurityConfig (
                         allowedMethods = listOf("GET", "POST", "PUT", "DELETE")
                         allowCredentials = true
                         addAllowedHeader("*")
+                        addExposedHeader(NEXT_CURSOR_HEADER)
                     }
                 }
             }
@@ -109,15 +115,20 @@ class SecurityConfig (
     @Bean
     fun javaMailSender(): JavaMailSender {
         val mailSender = JavaMailSenderImpl()
-        mailSender.host = "smtp.gmail.com"
-        mailSender.port = 587
+        // host / port come from config so a local SMTP stand-in (MailHog, smtp4dev) can be used
+        mailSender.host = mailSenderHost
+        mailSender.port = mailSenderPort
         mailSender.username = mailSenderUsername
         mailSender.password = mailSenderPassword
 
         val props: Properties = mailSender.javaMailProperties
         props["mail.transport.protocol"] = "smtp"
-        props["mail.smtp.auth"] = "true"
-        props["mail.smtp.starttls.enable"] = "true"
+        props["mail.smtp.auth"] = mailSmtpAuth.toString()
+        props["mail.smtp.starttls.enable"] = mailStartTls.toString()
+        // the outbox worker retries, a hung SMTP server must not block it forever
+        props["mail.smtp.connectiontimeout"] = "10000"
+        props["mail.smtp.timeout"] = "10000"
+        props["mail.smtp.writetimeout"] = "10000"
         props["mail.debug"] = "true"
 
         return mailSender
@@ -4,6 +4,8 @@ import kotlinx.coroutines.FlowPreview
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.http.MediaType.APPLICATION_JSON
+import org.springframework.http.MediaType.APPLICATION_NDJSON
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM
 import org.springframework.web.reactive.function.server.coRouter
 import sru.edu.sru_lib_management.core.handler.AttendHandler
 import kotlinx.coroutines.flow.Flow
@@ -14,7 +16,7 @@ class AttendRouteConfig {
     @Bean
     @FlowPreview
     fun attendRoute(attendHandler: AttendHandler) = coRouter {
-        (accept(APPLICATION_JSON) and "api/v1/att").nest {
+        (accept(APPLICATION_JSON, APPLICATION_NDJSON, TEXT_EVENT_STREAM) and "api/v1/att").nest {
 
             /**
              * Gets attendance purposes filtered by major and date range.
@@ -121,11 +123,18 @@ class AttendRouteConfig {
              *
              * Returns [Flow] of all [sru.edu.sru_lib_management.core.domain.model.Attend] records from the database.
              *
+             * Keyset pagination: pass `size` (max 500) and/or `cursor` (nextCursor of the previous page), optional `sort`
+             * (id | date, "-" prefix for descending). Returns [sru.edu.sru_lib_management.core.domain.dto.page.CursorPage].
+             * Without size / cursor: a JSON array as before, capped at 500 rows with the cursor of the rest in X-Next-Cursor.
+             *
+             * Streaming: with `Accept: application/x-ndjson` or `text/event-stream` the rows are written one by one
+             * as they are read from the database instead of one JSON array.
+             *
              * @see AttendHandler.getAllAttend
              * @see sru.edu.sru_lib_management.core.domain.service.AttendService.getAllAttend
              * @see sru.edu.sru_lib_management.core.domain.model.Attend
              */
-            GET("") { attendHandler.getAllAttend() }
+            GET("", attendHandler::getAllAttend)
 
             /**
              * Updates exit time for a visitor's current attendance.
@@ -157,6 +166,21 @@ class AttendRouteConfig {
              * @see sru.edu.sru_lib_management.core.domain.model.Attend
              */
             PUT("/{attId}", attendHandler::updateAtt)
+
+            /**
+             * Rebuilds the daily attendance rollup the analytics and report totals are summed from.
+             *
+             * Query params:
+             * - startDate: LocalDate (optional, format: yyyy-MM-dd) - defaults to the first attend date
+             * - endDate: LocalDate (optional, format: yyyy-MM-dd) - defaults to the last attend date
+             *
+             * Use it once after deploying the rollup table, and after bulk imports or student
+             * corrections (major, gender, ...) of past periods. Requires the SUPER_ADMIN role.
+             *
+             * @see AttendHandler.rebuildRollup
+             * @see sru.edu.sru_lib_management.core.domain.service.AttendRollupService.rebuild
+             */
+            POST("/rollup/rebuild", attendHandler::rebuildRollup)
         }
     }
 }
\ No newline at end of file
@@ -59,7 +59,8 @@ class AuthRouteConfig {
                     /**
                      * Verifies the OTP code sent to the user's email.
                      * Request Body: [sru.edu.sru_lib_management.core.domain.dto.auth.RequestOtpVerify] otp (required), email (required).
-                     * Returns "OTP Verified Successfully" or "Invalid or Expired OTP".
+                     * Returns "OTP Verified Successfully" or "Invalid or Expired OTP";
+                     * 429 once the email is locked after too many wrong codes (auth.otp.max-attempts).
                      * @see AuthHandler.verifyOtp
                      * @see sru.edu.sru_lib_management.auth.domain.service.OtpService.verifyOtp
                      */
@@ -4,6 +4,8 @@ import kotlinx.coroutines.FlowPreview
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.http.MediaType.APPLICATION_JSON
+import org.springframework.http.MediaType.APPLICATION_NDJSON
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM
 import org.springframework.web.reactive.function.server.RouterFunction
 import org.springframework.web.reactive.function.server.ServerResponse
 import org.springframework.web.reactive.function.server.coRouter
@@ -14,7 +16,7 @@ class BookRouteConfig {
     @Bean
     @FlowPreview
     fun bookRouter(bookHandler: BookHandler): RouterFunction<ServerResponse> = coRouter {
-        (accept(APPLICATION_JSON) and "/api/v1/book").nest {
+        (accept(APPLICATION_JSON, APPLICATION_NDJSON, TEXT_EVENT_STREAM) and "/api/v1/book").nest {
             /**
              * Adds new books to the database.
              * Requires a list of [sru.edu.sru_lib_management.core.domain.dto.BookDto] as request body.
@@ -25,9 +27,16 @@ class BookRouteConfig {
             /**
              * Gets all books from the database.
              * Returns [kotlinx.coroutines.flow.Flow] of [sru.edu.sru_lib_management.core.domain.model.Books].
+             *
+             * Keyset pagination: pass `size` (max 500) and/or `cursor` (nextCursor of the previous page), optional `sort`
+             * (id | title, "-" prefix for descending). Returns [sru.edu.sru_lib_management.core.domain.dto.page.CursorPage].
+             * Without size / cursor: a JSON array as before, capped at 500 rows with the cursor of the rest in X-Next-Cursor.
+             *
+             * Streaming: with `Accept: application/x-ndjson` or `text/event-stream` the rows are written one by one
+             * as they are read from the database instead of one JSON array.
              * @see BookHandler.getBooks
              */
-            GET("") { bookHandler.getBooks() }
+            GET("", bookHandler::getBooks)
 
             /**
              * Updates an existing book in the database.
@@ -4,6 +4,8 @@ import kotlinx.coroutines.FlowPreview
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.http.MediaType.APPLICATION_JSON
+import org.springframework.http.MediaType.APPLICATION_NDJSON
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM
 import org.springframework.web.reactive.function.server.coRouter
 import sru.edu.sru_lib_management.core.handler.BorrowHandler
 
@@ -12,7 +14,7 @@ class BorrowRouteConfig {
     @Bean
     @FlowPreview
     fun borrowRoute(borrowHandler: BorrowHandler) = coRouter {
-        accept(APPLICATION_JSON).nest {
+        accept(APPLICATION_JSON, APPLICATION_NDJSON, TEXT_EVENT_STREAM).nest {
             "/api/v1/borrow".nest {
 
                 /**
@@ -35,11 +37,11 @@ class BorrowRouteConfig {
                  * - borrowDate: LocalDate - Date of borrowing
                  * - dueDate: LocalDate - Expected return date
                  *
-                 * Process:
+                 * Process, in one transaction:
                  * 1. Validate students and books exist
-                 * 2. Checks book availability
-                 * 3. Creates borrow record
-                 * 4. Updates book quantity (decrements available copies)
+                 * 2. Checks the student's loan limit (student row locked)
+                 * 3. Reserves copies with a conditional update of the book's on-loan counter
+                 * 4. Creates borrow record and appends a BORROW entry to the inventory ledger
                  *
                  * Returns saved [sru.edu.sru_lib_management.core.domain.model.Borrow] entity.
                  * Requires the ADMIN or SUPER_ADMIN role.
@@ -51,17 +53,40 @@ class BorrowRouteConfig {
                  */
                 POST("", borrowHandler::saveBorrow)
 
+                /**
+                 * Creates several borrow records at once, e.g. a student taking two books.
+                 *
+                 * Requires a JSON array of [sru.edu.sru_lib_management.core.domain.dto.BorrowDto] (at most 100).
+                 * Every item is checked like a single borrow, all accepted items are saved in one
+                 * transaction with multi-row statements.
+                 *
+                 * Returns a list of [sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowBatchResult],
+                 * one per item in request order, with the saved borrow or the reason it was refused.
+                 * Requires the ADMIN or SUPER_ADMIN role.
+                 *
+                 * @see BorrowHandler.saveBorrows
+                 * @see sru.edu.sru_lib_management.core.domain.service.BorrowService.saveBorrows
+                 */
+                POST("/batch", borrowHandler::saveBorrows)
+
                 /**
                  * Gets all borrow records.
                  *
                  * Returns [kotlinx.coroutines.flow.Flow] of all [sru.edu.sru_lib_management.core.domain.model.Borrow] entities from the database.
                  * Includes both active (unreturned) and completed (returned) borrows.
                  *
+                 * Keyset pagination: pass `size` (max 500) and/or `cursor` (nextCursor of the previous page), optional `sort`
+                 * (id | date, "-" prefix for descending). Returns [sru.edu.sru_lib_management.core.domain.dto.page.CursorPage].
+                 * Without size / cursor: a JSON array as before, capped at 500 rows with the cursor of the rest in X-Next-Cursor.
+                 *
+                 * Streaming: with `Accept: application/x-ndjson` or `text/event-stream` the rows are written one by one
+                 * as they are read from the database instead of one JSON array.
+                 *
                  * @see BorrowHandler.getAllBorrow
                  * @see sru.edu.sru_lib_management.core.domain.service.BorrowService.getBorrows
                  * @see sru.edu.sru_lib_management.core.domain.model.Borrow
                  */
-                GET("") { borrowHandler.getAllBorrow() }
+                GET("", borrowHandler::getAllBorrow)
 
                 /**
                  * Gets detailed borrow information for all records.
@@ -72,11 +97,18 @@ class BorrowRouteConfig {
                  * - Borrow dates (borrowDate, dueDate, returnedDate)
                  * - Status (active/returned/overdue)
                  *
+                 * Keyset pagination: pass `size` (max 500) and/or `cursor` (nextCursor of the previous page), optional `sort`
+                 * (id | date, "-" prefix for descending). Returns [sru.edu.sru_lib_management.core.domain.dto.page.CursorPage].
+                 * Without size / cursor: a JSON array as before, capped at 500 rows with the cursor of the rest in X-Next-Cursor.
+                 *
+                 * Streaming: with `Accept: application/x-ndjson` or `text/event-stream` the rows are written one by one
+                 * as they are read from the database instead of one JSON array.
+                 *
                  * @see BorrowHandler.borrowDetails
                  * @see sru.edu.sru_lib_management.core.domain.service.BorrowService.getBorrowDetail
                  * @see sru.edu.sru_lib_management.core.domain.dto.BorrowDetail
                  */
-                GET("/detail") { borrowHandler.borrowDetails() }
+                GET("/detail", borrowHandler::borrowDetails)
 
                 /**
                  * Gets only active (unreturned) borrow records.
@@ -109,6 +141,20 @@ class BorrowRouteConfig {
                  */
                 GET("/over-due") { borrowHandler.getAllOverDueBooks() }
 
+                /**
+                 * Gets the loans a student has not returned yet, earliest due date first.
+                 *
+                 * Path variable:
+                 * - studentId: Long - Student ID
+                 *
+                 * Answered from the in-memory active loan index (no query once it is loaded).
+                 * Returns a list of [sru.edu.sru_lib_management.core.domain.model.Borrow].
+                 *
+                 * @see BorrowHandler.studentLoans
+                 * @see sru.edu.sru_lib_management.core.domain.service.BorrowService.getStudentLoans
+                 */
+                GET("/student/{studentId}", borrowHandler::studentLoans)
+
                 /**
                  * Marks a book as returned.
                  *
@@ -119,7 +165,7 @@ class BorrowRouteConfig {
                  * Process:
                  * 1. Finds active borrow record matching studentId and bookId
                  * 2. Sets returnedDate to the current date
-                 * 3. Increments book quantity (makes it available again)
+                 * 3. Releases the copies and appends a RETURN entry to the inventory ledger
                  * 4. May calculate late fees if overdue
                  *
                  * Returns updated [sru.edu.sru_lib_management.core.domain.model.Borrow] entity with returnedDate set.
@@ -131,6 +177,22 @@ class BorrowRouteConfig {
                  */
                 PUT("", borrowHandler::bookReturned)
 
+                /**
+                 * Marks a stack of returned books at once.
+                 *
+                 * Requires a JSON array of [sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowReturnDto]
+                 * (studentId, bookId; at most 100). Each item returns the student's oldest open loan of that book,
+                 * all of them in one transaction.
+                 *
+                 * Returns a list of [sru.edu.sru_lib_management.core.domain.dto.borrow.BorrowBatchResult],
+                 * one per item in request order; items without an open loan are reported as not found.
+                 * Requires the ADMIN or SUPER_ADMIN role.
+                 *
+                 * @see BorrowHandler.booksReturned
+                 * @see sru.edu.sru_lib_management.core.domain.service.BorrowService.booksReturned
+                 */
+                PUT("/batch", borrowHandler::booksReturned)
+
                 /**
                  * Extends the due date for a borrowed book.
                  *
@@ -75,16 +75,26 @@ class EntryRouteConfig {
                  * Process:
                  * 1. Validates entryId format (must be numeric)
                  * 2. Determines the current time period
-                 * 3. Queries attendance for the current period
+                 * 3. Looks up the student's latest visit today in the live occupancy
+                 *    (falls back to querying the period while the occupancy is loading)
                  * 4. Checks if the student has active/completed attendance
                  * 5. Returns appropriate status
                  *
                  * @see EntryHandler.checkExistingStudent
+                 * @see AttendService.getVisitStatus
                  * @see AttendService.getAttendDetailByPeriod
                  * @see StudentAttendDetail
                  */
                 GET("/check", entryHandler::checkExistingStudent)
 
+                /**
+                 * Gets the number of visitors currently inside the library.
+                 * Returns Map with an "inside" key, read from the in-memory live occupancy (no query).
+                 * @see EntryHandler.visitorsInside
+                 * @see AttendService.countVisitorsInside
+                 */
+                GET("/inside") { entryHandler.visitorsInside() }
+
                 /**
                  * Gets student information by ID for entry verification.
                  *
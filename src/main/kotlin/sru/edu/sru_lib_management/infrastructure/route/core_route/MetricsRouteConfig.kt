@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.infrastructure.route.core_route
+
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.http.MediaType.APPLICATION_JSON
+import org.springframework.web.reactive.function.server.coRouter
+import sru.edu.sru_lib_management.core.handler.MetricsHandler
+
+@Configuration
+class MetricsRouteConfig {
+
+    @Bean
+    fun metricsRoute(metricsHandler: MetricsHandler) = coRouter {
+        (accept(APPLICATION_JSON) and "/api/v1/metrics").nest {
+
+            /**
+             * Gets the state of the database connection pool (SUPER_ADMIN only).
+             * Returns [sru.edu.sru_lib_management.core.domain.dto.metrics.DatabasePoolStats] with:
+             * - acquired / allocated / idle connections and pending acquires
+             * - connection creation count and latency
+             * - acquire count, failures and latency (average and max, in ms)
+             * Used to size the pool for the entry kiosks.
+             * @see MetricsHandler.databasePool
+             * @see sru.edu.sru_lib_management.infrastructure.config.DatabasePoolMetrics
+             */
+            GET("/db-pool") { metricsHandler.databasePool() }
+
+            /**
+             * Gets size and hit/miss statistics of the in-memory caches (SUPER_ADMIN only).
+             * Returns List of [sru.edu.sru_lib_management.core.domain.dto.metrics.CacheStats].
+             * @see MetricsHandler.caches
+             * @see sru.edu.sru_lib_management.core.data.cache.LruCache
+             */
+            GET("/cache") { metricsHandler.caches() }
+
+            /**
+             * Gets counters of the coalescing dashboard refresh (SUPER_ADMIN only).
+             * Returns [sru.edu.sru_lib_management.core.domain.dto.metrics.RefreshStats]:
+             * refresh requests, actual recomputations, requests merged into another run and failures.
+             * @see MetricsHandler.dashboardRefresh
+             * @see sru.edu.sru_lib_management.infrastructure.websocket.helper.CoalescingRefresher
+             */
+            GET("/dashboard-refresh") { metricsHandler.dashboardRefresh() }
+
+            /**
+             * Gets the outbound queue of every open WebSocket session (SUPER_ADMIN only).
+             * Returns List of [sru.edu.sru_lib_management.core.domain.dto.metrics.OutboxStats]:
+             * channel, user, queue depth and capacity, enqueued / sent / dropped messages.
+             * @see MetricsHandler.websocketOutboxes
+             * @see sru.edu.sru_lib_management.infrastructure.websocket.helper.SessionOutbox
+             */
+            GET("/websocket") { metricsHandler.websocketOutboxes() }
+
+            /**
+             * Gets the state of the password hashing pool (SUPER_ADMIN only).
+             * Returns [sru.edu.sru_lib_management.core.domain.dto.metrics.HashingStats]:
+             * queue depth and capacity, completed / rejected (429) hashes, queue wait and hash latency in ms.
+             * @see MetricsHandler.passwordHashing
+             * @see sru.edu.sru_lib_management.auth.domain.service.PasswordHasher
+             */
+            GET("/password-hashing") { metricsHandler.passwordHashing() }
+
+            /**
+             * Gets the state of the email outbox (SUPER_ADMIN only).
+             * Returns [sru.edu.sru_lib_management.core.domain.dto.metrics.EmailOutboxStats]:
+             * rows per status (PENDING / SENDING / SENT / DEAD) and this instance's batch, delivery, retry counters.
+             * @see MetricsHandler.emailOutbox
+             * @see sru.edu.sru_lib_management.auth.domain.service.EmailOutbox
+             */
+            GET("/email-outbox") { metricsHandler.emailOutbox() }
+
+            /**
+             * Gets the last 50 scheduled job runs of the cluster (SUPER_ADMIN only).
+             * Returns List of [sru.edu.sru_lib_management.core.domain.model.JobRun]:
+             * job, node, fencing token, start / finish time, duration in ms, rows changed, status and error.
+             * @see MetricsHandler.jobRuns
+             * @see sru.edu.sru_lib_management.utils.schedule.JobLock
+             */
+            GET("/jobs") { metricsHandler.jobRuns() }
+
+        }
+    }
+}
@@ -4,6 +4,8 @@ import kotlinx.coroutines.FlowPreview
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.http.MediaType.APPLICATION_JSON
+import org.springframework.http.MediaType.APPLICATION_NDJSON
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM
 import org.springframework.web.reactive.function.server.RouterFunction
 import org.springframework.web.reactive.function.server.ServerResponse
 import org.springframework.web.reactive.function.server.coRouter
@@ -18,7 +20,7 @@ class ReportRouteConfig {
     @Bean
     @FlowPreview
     fun reportRoute(reportHandler: ReportHandler): RouterFunction<ServerResponse> = coRouter {
-        (accept(APPLICATION_JSON) and "/api/v1/report").nest {
+        (accept(APPLICATION_JSON, APPLICATION_NDJSON, TEXT_EVENT_STREAM) and "/api/v1/report").nest {
 
             /**
              * Generates the comprehensive library report for a specified period.
@@ -52,6 +54,10 @@ class ReportRouteConfig {
              * 6. Collects donation records for the period
              * 7. Aggregates all data into [sru.edu.sru_lib_management.core.domain.dto.report.Report] object
              *
+             * Streaming: with `Accept: application/x-ndjson` or `text/event-stream` the report is written as
+             * [sru.edu.sru_lib_management.core.domain.dto.report.ReportSection] records, monthly entries and
+             * donations one record per row, so a year-long report starts arriving before it is fully read.
+             *
              * Requires SUPER_ADMIN role only.
              *
              * Example request:
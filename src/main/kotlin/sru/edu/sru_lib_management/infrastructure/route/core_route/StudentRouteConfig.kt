@@ -16,7 +16,8 @@ class StudentRouteConfig {
     fun studentRoute(studentHandler: StudentHandler): RouterFunction<ServerResponse> = coRouter {
         accept(APPLICATION_JSON).nest {
             "api/v1/student".nest {
-                GET(""){studentHandler.getAllStudents()}
+                // ?size=&cursor=&sort=id|name for keyset pages (CursorPage), otherwise a JSON array capped at 500 (X-Next-Cursor)
+                GET("", studentHandler::getAllStudents)
                 GET("/{studentId}", studentHandler::getStudentById)
                 POST("", studentHandler::saveStudent)
                 DELETE("/delete/{studentId}", studentHandler::deleteStudent)
@@ -5,7 +5,6 @@ import kotlinx.coroutines.reactor.mono
 import okhttp3.internal.userAgent
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Autowired
-import org.springframework.security.core.userdetails.ReactiveUserDetailsService
 import org.springframework.web.reactive.socket.CloseStatus
 import org.springframework.web.reactive.socket.WebSocketHandler
 import org.springframework.web.reactive.socket.WebSocketSession
@@ -13,17 +12,20 @@ import org.springframework.web.util.UriComponentsBuilder
 import reactor.core.publisher.Mono
 import sru.edu.sru_lib_management.auth.domain.jwt.BearerToken
 import sru.edu.sru_lib_management.auth.domain.jwt.JwtToken
+import sru.edu.sru_lib_management.auth.domain.model.CustomUserDetails
 import sru.edu.sru_lib_management.auth.domain.model.Role
 import sru.edu.sru_lib_management.auth.domain.model.User
 import sru.edu.sru_lib_management.auth.domain.repository.AuthRepository
 import sru.edu.sru_lib_management.infrastructure.websocket.helper.ConnectedClient
+import sru.edu.sru_lib_management.infrastructure.websocket.helper.SessionOutbox
+import sru.edu.sru_lib_management.infrastructure.websocket.helper.SessionOutboxes
 import sru.edu.sru_lib_management.infrastructure.websocket.helper.WebSocketSessionRegistry
 import java.util.concurrent.ConcurrentHashMap
 
 abstract class AuthenticatedWebSocketHandler(
     private val jwtToken: JwtToken,
-    private val reactiveUserDetailsService: ReactiveUserDetailsService,
     private val authRepository: AuthRepository<User>,
+    private val sessionOutboxes: SessionOutboxes
 ): WebSocketHandler {
 
     @Autowired
@@ -33,6 +35,13 @@ abstract class AuthenticatedWebSocketHandler(
     protected val clientSession = ConcurrentHashMap<String, WebSocketSession>()
     protected open fun getAllowedRoles(): List<String> = listOf(Role.SUPER_ADMIN.name, Role.ADMIN.name)
 
+    // name of the socket in the outbox metrics and what to do when a session's outbox is full
+    protected abstract val channel: String
+    protected abstract val overflowPolicy: SessionOutbox.OverflowPolicy
+
+    // sessions reachable through WebSocketSessionRegistry (user / role notifications)
+    protected open val registerSession: Boolean = true
+
    //protected var role: Role? = null
 
     override fun getSubProtocols(): List<String> =
@@ -44,14 +53,18 @@ abstract class AuthenticatedWebSocketHandler(
             .flatMap { authResult ->
                 when (authResult) {
                     is SocketAuthResult.Success -> {
-                        sessionRegistry.register(
-                            authResult.userId,
-                            authResult.role,
-                            session
-                        )
-                        handleAuthenticatedSession(session, authResult.userId)
+                        val outbox = sessionOutboxes.open(session, authResult.userId, channel, overflowPolicy)
+                        if (registerSession)
+                            sessionRegistry.register(
+                                authResult.userId,
+                                authResult.role,
+                                session,
+                                outbox
+                            )
+                        handleAuthenticatedSession(session, authResult.userId, outbox)
                             .doFinally {
-                                sessionRegistry.unregister(authResult.userId)
+                                sessionRegistry.unregister(session.id)
+                                sessionOutboxes.close(outbox)
                             }
                     }
                     is SocketAuthResult.Unauthorized -> {
@@ -91,15 +104,19 @@ abstract class AuthenticatedWebSocketHandler(
                     return@flatMap Mono.just(SocketAuthResult.Unauthorized("Insufficient permissions"))
                 }
 
-                reactiveUserDetailsService.findByUsername(email)
-                    .map { userDetails ->
-                        if (jwtToken.isValidToken(bearerToken, userDetails))
-                            SocketAuthResult.Success(userId, user.roles)
-                        else {
-                            logger.warn("Token validation failed for user: $userId")
-                            SocketAuthResult.Unauthorized("Token validation failed")
-                        }
-                    }
+                // the user row is already loaded, no second lookup through the user details service
+                val userDetails = CustomUserDetails(
+                    userId = user.userId,
+                    email = email,
+                    password = user.password,
+                    role = userRole
+                )
+                if (jwtToken.isValidToken(bearerToken, userDetails))
+                    Mono.just(SocketAuthResult.Success(userId, user.roles))
+                else {
+                    logger.warn("Token validation failed for user: $userId")
+                    Mono.just(SocketAuthResult.Unauthorized("Token validation failed"))
+                }
             }
         }catch (e: JwtException) {
             logger.error("JWT validation error: ${e.message}")
@@ -110,8 +127,12 @@ abstract class AuthenticatedWebSocketHandler(
         }
     }
 
+    /**
+     * Everything sent to [session] must go through [outbox];
+     * the handler subscribes session.send to outbox.flux.
+     */
     protected abstract fun handleAuthenticatedSession(
-        session: WebSocketSession, userId: String
+        session: WebSocketSession, userId: String, outbox: SessionOutbox
     ): Mono<Void>
 
     protected sealed class SocketAuthResult {
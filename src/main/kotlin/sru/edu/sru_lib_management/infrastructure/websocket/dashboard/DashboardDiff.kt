@@ -0,0 +1,74 @@
+package sru.edu.sru_lib_management.infrastructure.websocket.dashboard
+
+import sru.edu.sru_lib_management.core.domain.dto.attend.StudentAttendDetail
+import sru.edu.sru_lib_management.core.domain.dto.dashboard.CardData
+import sru.edu.sru_lib_management.core.domain.dto.dashboard.Dashboard
+
+/**
+ * Compares two dashboards and returns the [DashboardMessage]s that turn [old] into [new].
+ * Widgets that didn't change produce nothing.
+ */
+object DashboardDiff {
+
+    fun changes(old: Dashboard, new: Dashboard, nextSeq: () -> Long): List<DashboardMessage> {
+        val messages = mutableListOf<DashboardMessage>()
+        cardChanges(old.cardData, new.cardData, nextSeq, messages)
+        entryChanges(old.customEntry, new.customEntry, nextSeq, messages)
+        if (old.weeklyVisitor != new.weeklyVisitor)
+            messages += DashboardMessage.WidgetChanged(nextSeq(), "weeklyVisitor", new.weeklyVisitor)
+        if (old.totalMajorVisitor != new.totalMajorVisitor)
+            messages += DashboardMessage.WidgetChanged(nextSeq(), "totalMajorVisitor", new.totalMajorVisitor)
+        if (old.bookAvailable != new.bookAvailable)
+            messages += DashboardMessage.WidgetChanged(nextSeq(), "bookAvailable", new.bookAvailable)
+        return messages
+    }
+
+    private fun cardChanges(
+        old: Any,
+        new: Any,
+        nextSeq: () -> Long,
+        messages: MutableList<DashboardMessage>
+    ) {
+        val oldCards = (old as? List<*>)?.filterIsInstance<CardData>()?.associateBy { it.cardType }
+        val newCards = (new as? List<*>)?.filterIsInstance<CardData>()
+        if (oldCards == null || newCards == null) {
+            if (old != new) messages += DashboardMessage.WidgetChanged(nextSeq(), "cardData", new)
+            return
+        }
+        newCards.filter { oldCards[it.cardType] != it }.forEach {
+            messages += DashboardMessage.CardChanged(nextSeq(), it.cardType, it.amount, it.analytic)
+        }
+    }
+
+    private fun entryChanges(
+        old: Any,
+        new: Any,
+        nextSeq: () -> Long,
+        messages: MutableList<DashboardMessage>
+    ) {
+        val oldEntries = (old as? List<*>)?.filterIsInstance<StudentAttendDetail>()?.associateBy { it.attendId }
+        val newEntries = (new as? List<*>)?.filterIsInstance<StudentAttendDetail>()
+        if (oldEntries == null || newEntries == null) {
+            if (old != new) messages += DashboardMessage.WidgetChanged(nextSeq(), "customEntry", new)
+            return
+        }
+        val newIds = newEntries.mapTo(HashSet()) { it.attendId }
+        oldEntries.keys.filter { it !in newIds }.forEach {
+            messages += DashboardMessage.EntryRemoved(nextSeq(), it)
+        }
+        newEntries.forEach { entry ->
+            val previous = oldEntries[entry.attendId]
+            when {
+                previous == null ->
+                    messages += DashboardMessage.EntryAppended(nextSeq(), entry)
+                previous.exitingTimes == null && entry.exitingTimes != null ->
+                    messages += DashboardMessage.EntryExited(nextSeq(), entry.attendId, entry.exitingTimes)
+                previous != entry -> {
+                    // edited row: send it again, the client replaces by attendId
+                    messages += DashboardMessage.EntryRemoved(nextSeq(), entry.attendId)
+                    messages += DashboardMessage.EntryAppended(nextSeq(), entry)
+                }
+            }
+        }
+    }
+}
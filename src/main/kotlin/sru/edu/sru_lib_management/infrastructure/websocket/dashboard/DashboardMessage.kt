@@ -0,0 +1,71 @@
+package sru.edu.sru_lib_management.infrastructure.websocket.dashboard
+
+import com.fasterxml.jackson.annotation.JsonFormat
+import sru.edu.sru_lib_management.core.domain.dto.attend.StudentAttendDetail
+import sru.edu.sru_lib_management.core.domain.dto.dashboard.Dashboard
+import java.time.LocalTime
+
+/**
+ * Messages pushed on the dashboard socket.
+ *
+ * Every message has a [seq] that grows by one per message. A client keeps the seq of
+ * the last applied message, ignores messages with a lower or equal seq and sends
+ * "resync" when it sees a gap; it then receives a new [Snapshot].
+ */
+sealed class DashboardMessage {
+    abstract val type: String
+    abstract val seq: Long
+
+    // full dashboard, sent on connect and on "resync"
+    data class Snapshot(
+        override val seq: Long,
+        val data: Dashboard
+    ) : DashboardMessage() {
+        override val type = "snapshot"
+    }
+
+    // card X = amount
+    data class CardChanged(
+        override val seq: Long,
+        val card: String,
+        val amount: Int,
+        val analytic: Float
+    ) : DashboardMessage() {
+        override val type = "card"
+    }
+
+    // new row in the recent entries
+    data class EntryAppended(
+        override val seq: Long,
+        val entry: StudentAttendDetail
+    ) : DashboardMessage() {
+        override val type = "entry-appended"
+    }
+
+    // attend Y exited
+    data class EntryExited(
+        override val seq: Long,
+        val attendId: Long,
+        @field:JsonFormat(pattern = "HH:mm:ss")
+        val exitTime: LocalTime
+    ) : DashboardMessage() {
+        override val type = "entry-exited"
+    }
+
+    // row left the recent entries (deleted or pushed out)
+    data class EntryRemoved(
+        override val seq: Long,
+        val attendId: Long
+    ) : DashboardMessage() {
+        override val type = "entry-removed"
+    }
+
+    // any other widget (weeklyVisitor, totalMajorVisitor, bookAvailable) replaced as a whole
+    data class WidgetChanged(
+        override val seq: Long,
+        val widget: String,
+        val data: Any
+    ) : DashboardMessage() {
+        override val type = "widget"
+    }
+}
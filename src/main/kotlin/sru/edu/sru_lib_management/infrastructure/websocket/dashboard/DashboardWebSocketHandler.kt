@@ -3,99 +3,166 @@ package sru.edu.sru_lib_management.infrastructure.websocket.dashboard
 import com.fasterxml.jackson.databind.ObjectMapper
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.reactor.mono
-import org.springframework.security.core.userdetails.ReactiveUserDetailsService
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.socket.WebSocketSession
 import reactor.core.publisher.Mono
-import reactor.core.publisher.Sinks
 import sru.edu.sru_lib_management.auth.domain.jwt.JwtToken
 import sru.edu.sru_lib_management.auth.domain.model.User
 import sru.edu.sru_lib_management.auth.domain.repository.AuthRepository
+import sru.edu.sru_lib_management.core.domain.dto.dashboard.Dashboard
+import sru.edu.sru_lib_management.core.domain.dto.metrics.RefreshStats
 import sru.edu.sru_lib_management.core.domain.service.DashboardService
 import sru.edu.sru_lib_management.infrastructure.websocket.AuthenticatedWebSocketHandler
+import sru.edu.sru_lib_management.infrastructure.websocket.helper.CoalescingRefresher
+import sru.edu.sru_lib_management.infrastructure.websocket.helper.SessionOutbox
+import sru.edu.sru_lib_management.infrastructure.websocket.helper.SessionOutboxes
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 
 @Component
 class DashboardWebSocketHandler(
     jwtToken: JwtToken,
-    reactiveUserDetailsService: ReactiveUserDetailsService,
     authRepository: AuthRepository<User>,
+    sessionOutboxes: SessionOutboxes,
     private val dashboardService: DashboardService,
-    private val objectMapper: ObjectMapper
-): AuthenticatedWebSocketHandler(jwtToken, reactiveUserDetailsService, authRepository) {
+    private val objectMapper: ObjectMapper,
+    @Value("\${dashboard.refresh.debounce:500ms}") debounce: Duration,
+    @Value("\${dashboard.refresh.min-interval:2s}") minInterval: Duration,
+    @Value("\${dashboard.refresh.max-staleness:5s}") maxStaleness: Duration,
+    @param:Value("\${dashboard.refresh.snapshot-ttl:60s}") private val snapshotTtl: Duration
+): AuthenticatedWebSocketHandler(jwtToken, authRepository, sessionOutboxes) {
 
-    // use Sink(thread-safe) way to programmatically push data into a Flux or Mono
-    private val sink: Sinks.Many<String> = Sinks.many().multicast().onBackpressureBuffer()
+    override val channel = "dashboard"
+
+    // a client that falls behind gets one fresh snapshot instead of the deltas it missed
+    override val overflowPolicy = SessionOutbox.OverflowPolicy.CONFLATE
+
+    // dashboard sessions only receive dashboard messages, not user / role notifications
+    override val registerSession = false
+
+    // outbox of every connected session, by session id
+    private val outboxes = ConcurrentHashMap<String, SessionOutbox>()
 
     // use Dispatchers.Default to run coroutine in the background with CPU
-    private val scope = CoroutineScope(Dispatchers.Default)
+    private val scope = CoroutineScope(Dispatchers.Default + SupervisorJob())
+
+    // last computed dashboard and the seq of the last delta derived from it
+    private class DashboardState(val seq: Long, val dashboard: Dashboard, val createdAt: Long)
+
+    @Volatile
+    private var state: DashboardState? = null
+    private val seq = AtomicLong()
+    private val publishLock = Mutex()
+
+    // a burst of scans results in one recomputation, see CoalescingRefresher
+    private val refresher = CoalescingRefresher(
+        name = "dashboard",
+        debounce = debounce,
+        minInterval = minInterval,
+        maxStaleness = maxStaleness,
+        scope = scope
+    ) {
+        publishLatest()
+    }
 
     override fun handleAuthenticatedSession(
         session: WebSocketSession,
         userId: String,
+        outbox: SessionOutbox
     ): Mono<Void> {
 
         clientSession[userId] = session
+        outboxes[session.id] = outbox
+        outbox.onOverflow = { sendSnapshot(outbox) }
         logger.info("New dashboard client connected: $userId")
 
         // initial data (direct to Session)
-        val initData = mono {
-            val dashboardData = dashboardService.getDashboardData()
-            objectMapper.writeValueAsString(dashboardData)
-        }.flatMap { json ->
-            session.send(Mono.just(session.textMessage(json)))
-        }
-
-        // Send initial dashboard data when the client connects
-        /* scope.launch{
-            try {
-                val dashboardData = dashboardService.getDashboardData()
-                val json = objectMapper.writeValueAsString(dashboardData)
-                sink.tryEmitNext(json)
-            } catch (e: Exception) {
-                println("Error fetching initial dashboard data: ${e.message}")
-            }
-        }*/
+        sendSnapshot(outbox)
 
         // INPUT (CLIENT → SERVER)
         val input = session.receive()
             .map { it.payloadAsText }
-            .doOnNext { message -> println("Received message from dashboard client: $message")
-                // Optional: Handle specific client requests
+            .doOnNext { message -> logger.debug("Received message from dashboard client: {}", message)
                 when (message) {
                     "refresh" -> refreshDashboard()
-                    "ping" -> sink.tryEmitNext("""{"type":"pong"}""") }
+                    "resync" -> sendSnapshot(outbox)
+                    "ping" -> outbox.offer("""{"type":"pong"}""") }
             }
             .then()
 
-        // OUTPUT (BROADCAST UPDATES)
+        // OUTPUT (SNAPSHOTS + BROADCAST DELTAS)
         val output = session.send(
-            sink.asFlux().map(session::textMessage)
+            outbox.flux.map(session::textMessage)
         )
 
         val cleanUp: Mono<Void> = Mono.fromRunnable {
             clientSession.remove(userId)
+            outboxes.remove(session.id)
             logger.info("Dashboard client disconnected: $userId")
         }
 
-        return initData
-            .thenMany(Mono.`when`(input, output))
+        return Mono.`when`(input, output)
             .then(cleanUp)
     }
 
-    /** * Triggers a full dashboard data refresh and broadcasts to all connected clients */
+    /**
+     * Requests a dashboard refresh; the changes are broadcast as deltas to all connected clients.
+     * Calls are coalesced: many requests within a short burst lead to one recomputation.
+     */
     fun refreshDashboard() {
+        refresher.request()
+    }
+
+    fun refreshStats(): RefreshStats = refresher.stats()
+
+    /**
+     * Recomputes the dashboard and broadcasts what changed since the previous computation.
+     * Serialized by [publishLock] so seq numbers and [state] always move together.
+     */
+    private suspend fun publishLatest(): DashboardState = publishLock.withLock { publishLocked() }
+
+    // caller holds publishLock
+    private suspend fun publishLocked(): DashboardState {
+        val dashboard = dashboardService.getDashboardData()
+        val previous = state
+        if (previous != null) {
+            val changes = DashboardDiff.changes(previous.dashboard, dashboard) { seq.incrementAndGet() }
+            changes.forEach { change ->
+                val json = objectMapper.writeValueAsString(change)
+                outboxes.values.forEach { it.offer(json) }
+            }
+            if (changes.isNotEmpty())
+                logger.info("Dashboard refreshed, ${changes.size} change(s) broadcast to all clients")
+        }
+        return DashboardState(seq.get(), dashboard, System.nanoTime()).also { state = it }
+    }
+
+    /**
+     * Sends the latest state, recomputed first when older than the snapshot TTL.
+     * The snapshot replaces whatever is still queued for the session (latest wins);
+     * taken under [publishLock] so no delta newer than the snapshot gets dropped.
+     * The age is checked under the lock too: when many clients reconnect at once the
+     * first one recomputes and the others get its state.
+     */
+    private fun sendSnapshot(target: SessionOutbox) {
         scope.launch {
             try {
-                val dashboardData = dashboardService.getDashboardData()
-                val json = objectMapper.writeValueAsString(dashboardData)
-                sink.tryEmitNext(json)
-                println("Dashboard refreshed and broadcasted to all clients")
+                publishLock.withLock {
+                    val current = state?.takeIf { System.nanoTime() - it.createdAt < snapshotTtl.toNanos() }
+                        ?: publishLocked()
+                    val snapshot = DashboardMessage.Snapshot(current.seq, current.dashboard)
+                    target.replaceAll(objectMapper.writeValueAsString(snapshot))
+                }
             } catch (e: Exception) {
-                println("Error refreshing dashboard: ${e.message}")
+                logger.error("Error sending dashboard snapshot: ${e.message}")
             }
         }
     }
 
-}
\ No newline at end of file
+}
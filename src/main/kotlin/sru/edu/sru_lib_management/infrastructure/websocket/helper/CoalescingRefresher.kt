@@ -0,0 +1,91 @@
+package sru.edu.sru_lib_management.infrastructure.websocket.helper
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import org.slf4j.LoggerFactory
+import sru.edu.sru_lib_management.core.domain.dto.metrics.RefreshStats
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Turns bursts of refresh requests into few runs of [refresh].
+ *
+ * - debounce: a run waits until no new request came in for [debounce]...
+ * - maxStaleness: ...but never longer than [maxStaleness] after the first pending request.
+ * - minInterval: two runs start at least [minInterval] apart.
+ * - single-flight: one worker coroutine, so at most one run is in progress; requests
+ *   made during a run are merged into the next one.
+ */
+class CoalescingRefresher(
+    private val name: String,
+    private val debounce: Duration,
+    private val minInterval: Duration,
+    private val maxStaleness: Duration,
+    scope: CoroutineScope,
+    private val refresh: suspend () -> Unit
+) {
+
+    private val logger = LoggerFactory.getLogger(CoalescingRefresher::class.java)
+
+    private val requests = Channel<Unit>(Channel.CONFLATED)
+
+    private val requested = AtomicLong()
+    private val runs = AtomicLong()
+    private val failures = AtomicLong()
+
+    @Volatile
+    private var lastRunAt = 0L
+
+    init {
+        scope.launch {
+            while (true) {
+                requests.receive()
+                val firstAt = System.nanoTime()
+                awaitQuietPeriod(firstAt)
+                awaitMinInterval(firstAt)
+                lastRunAt = System.nanoTime()
+                runs.incrementAndGet()
+                try {
+                    refresh()
+                } catch (e: Exception) {
+                    failures.incrementAndGet()
+                    logger.error("$name refresh failed: ${e.message}")
+                }
+            }
+        }
+    }
+
+    fun request() {
+        requested.incrementAndGet()
+        requests.trySend(Unit)
+    }
+
+    fun stats(): RefreshStats = RefreshStats(
+        name = name,
+        requests = requested.get(),
+        runs = runs.get(),
+        coalesced = (requested.get() - runs.get()).coerceAtLeast(0),
+        failures = failures.get()
+    )
+
+    private suspend fun awaitQuietPeriod(firstAt: Long) {
+        while (true) {
+            val left = remainingStaleness(firstAt)
+            if (left <= 0) return
+            withTimeoutOrNull(minOf(debounce.toMillis(), left)) { requests.receive() } ?: return
+        }
+    }
+
+    private suspend fun awaitMinInterval(firstAt: Long) {
+        if (lastRunAt == 0L) return
+        val sinceLastRun = (System.nanoTime() - lastRunAt) / 1_000_000
+        val wait = minOf(minInterval.toMillis() - sinceLastRun, remainingStaleness(firstAt))
+        if (wait > 0) delay(wait)
+    }
+
+    private fun remainingStaleness(firstAt: Long): Long =
+        maxStaleness.toMillis() - (System.nanoTime() - firstAt) / 1_000_000
+}
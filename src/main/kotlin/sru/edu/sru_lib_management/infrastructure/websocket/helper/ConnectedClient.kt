@@ -6,5 +6,8 @@ import sru.edu.sru_lib_management.auth.domain.model.Role
 data class ConnectedClient(
     val userId: String,
     val role: Role,
-    val session: WebSocketSession
-)
\ No newline at end of file
+    val session: WebSocketSession,
+    val outbox: SessionOutbox
+) {
+    val sessionId: String get() = session.id
+}
\ No newline at end of file
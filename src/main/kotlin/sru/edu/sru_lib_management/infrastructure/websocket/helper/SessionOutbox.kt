@@ -0,0 +1,151 @@
+package sru.edu.sru_lib_management.infrastructure.websocket.helper
+
+import reactor.core.publisher.Flux
+import reactor.core.publisher.FluxSink
+import sru.edu.sru_lib_management.core.domain.dto.metrics.OutboxStats
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Bounded outbound queue of one WebSocket session.
+ *
+ * Messages are only handed to the session as fast as it requests them, so a slow
+ * browser tab fills its own queue instead of a buffer shared with every client.
+ * What happens when the queue is full depends on [policy]:
+ * - [OverflowPolicy.CONFLATE]: the queue is dropped and [onOverflow] is called, the owner
+ *   replaces it with one up-to-date message through [replaceAll] (latest wins).
+ * - [OverflowPolicy.DROP_OLDEST]: the oldest message is dropped and [resyncMarker] is put
+ *   at the head of the queue, telling the client to reload what it missed.
+ *
+ * After [slowConsumerDrops] overflows without a single message being sent, [onSlowConsumer] is called.
+ * One overflow can lose a whole queue (CONFLATE), so keep the limit small.
+ */
+class SessionOutbox(
+    val sessionId: String,
+    val userId: String,
+    val channel: String,
+    capacity: Int,
+    private val policy: OverflowPolicy,
+    private val slowConsumerDrops: Int,
+    private val resyncMarker: String
+) {
+
+    enum class OverflowPolicy { CONFLATE, DROP_OLDEST }
+
+    private val capacity = capacity.coerceAtLeast(2)
+    private val lock = Any()
+    private val queue = ArrayDeque<String>()
+    private val wip = AtomicInteger()
+
+    private var sink: FluxSink<String>? = null
+    private var demand = 0L
+    private var consecutiveDrops = 0
+    private var closed = false
+
+    private val enqueued = AtomicLong()
+    private val sent = AtomicLong()
+    private val dropped = AtomicLong()
+
+    var onOverflow: () -> Unit = {}
+    var onSlowConsumer: () -> Unit = {}
+
+    val flux: Flux<String> = Flux.create { emitter ->
+        synchronized(lock) { sink = emitter }
+        emitter.onRequest { n ->
+            synchronized(lock) { demand = if (demand + n < 0) Long.MAX_VALUE else demand + n }
+            drain()
+        }
+        emitter.onDispose { close() }
+    }
+
+    fun offer(message: String): Boolean {
+        var overflowed = false
+        var slow = false
+        synchronized(lock) {
+            if (closed) return false
+            enqueued.incrementAndGet()
+            if (queue.size < capacity) {
+                queue.addLast(message)
+            } else {
+                overflowed = true
+                when (policy) {
+                    OverflowPolicy.CONFLATE -> {
+                        dropped.addAndGet(queue.size + 1L)
+                        queue.clear()
+                    }
+                    OverflowPolicy.DROP_OLDEST -> {
+                        if (queue.first() == resyncMarker) {
+                            queue.removeAt(1)
+                            dropped.incrementAndGet()
+                        } else {
+                            queue.removeFirst()
+                            queue.removeFirst()
+                            dropped.addAndGet(2)
+                            queue.addFirst(resyncMarker)
+                        }
+                        queue.addLast(message)
+                    }
+                }
+                consecutiveDrops++
+                slow = consecutiveDrops >= slowConsumerDrops
+            }
+        }
+        if (overflowed && policy == OverflowPolicy.CONFLATE) onOverflow()
+        if (slow) onSlowConsumer()
+        drain()
+        return !overflowed
+    }
+
+    // latest wins: everything still queued is superseded by [message]
+    fun replaceAll(message: String) {
+        synchronized(lock) {
+            if (closed) return
+            enqueued.incrementAndGet()
+            dropped.addAndGet(queue.size.toLong())
+            queue.clear()
+            queue.addLast(message)
+        }
+        drain()
+    }
+
+    fun close() {
+        synchronized(lock) {
+            closed = true
+            queue.clear()
+        }
+    }
+
+    fun stats(): OutboxStats = OutboxStats(
+        sessionId = sessionId,
+        userId = userId,
+        channel = channel,
+        depth = synchronized(lock) { queue.size },
+        capacity = capacity,
+        enqueued = enqueued.get(),
+        sent = sent.get(),
+        dropped = dropped.get()
+    )
+
+    // only one thread emits at a time, so messages keep their queue order
+    private fun drain() {
+        if (wip.getAndIncrement() != 0) return
+        var missed = 1
+        while (true) {
+            while (true) {
+                val (emitter, next) = poll() ?: break
+                emitter.next(next)
+                sent.incrementAndGet()
+            }
+            missed = wip.addAndGet(-missed)
+            if (missed == 0) return
+        }
+    }
+
+    private fun poll(): Pair<FluxSink<String>, String>? = synchronized(lock) {
+        val emitter = sink
+        if (emitter == null || demand == 0L || queue.isEmpty()) return null
+        if (demand != Long.MAX_VALUE) demand--
+        consecutiveDrops = 0
+        emitter to queue.removeFirst()
+    }
+}
@@ -0,0 +1,54 @@
+package sru.edu.sru_lib_management.infrastructure.websocket.helper
+
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import org.springframework.web.reactive.socket.CloseStatus
+import org.springframework.web.reactive.socket.WebSocketSession
+import sru.edu.sru_lib_management.core.domain.dto.metrics.OutboxStats
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Creates the [SessionOutbox] of every WebSocket session and keeps the open ones for metrics.
+ */
+@Component
+class SessionOutboxes(
+    @param:Value("\${websocket.outbox.capacity:256}") private val capacity: Int,
+    @param:Value("\${websocket.outbox.slow-consumer-drops:3}") private val slowConsumerDrops: Int
+) {
+
+    private val outboxes = ConcurrentHashMap<String, SessionOutbox>()
+
+    fun open(
+        session: WebSocketSession,
+        userId: String,
+        channel: String,
+        policy: SessionOutbox.OverflowPolicy
+    ): SessionOutbox {
+        val outbox = SessionOutbox(
+            sessionId = session.id,
+            userId = userId,
+            channel = channel,
+            capacity = capacity,
+            policy = policy,
+            slowConsumerDrops = slowConsumerDrops,
+            resyncMarker = RESYNC_MARKER
+        )
+        // a client that can't keep up is disconnected; it reconnects and reloads
+        outbox.onSlowConsumer = {
+            session.close(CloseStatus.SERVICE_OVERLOAD.withReason("Slow consumer")).subscribe()
+        }
+        outboxes[session.id] = outbox
+        return outbox
+    }
+
+    fun close(outbox: SessionOutbox) {
+        outbox.close()
+        outboxes.remove(outbox.sessionId)
+    }
+
+    fun stats(): List<OutboxStats> = outboxes.values.map { it.stats() }
+
+    companion object {
+        const val RESYNC_MARKER = """{"type":"resync"}"""
+    }
+}
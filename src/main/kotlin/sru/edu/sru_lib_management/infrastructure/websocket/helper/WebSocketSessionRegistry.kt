@@ -2,39 +2,58 @@ package sru.edu.sru_lib_management.infrastructure.websocket.helper
 
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.socket.WebSocketSession
-import reactor.core.publisher.Mono
 import sru.edu.sru_lib_management.auth.domain.model.Role
 import java.util.concurrent.ConcurrentHashMap
 
+/**
+ * Open notification sessions, indexed by session id, by user and by role.
+ *
+ * A user can have several sessions (one per tab); closing one leaves the others registered.
+ * Broadcasts take the payload already serialized and hand it to the recipients' outboxes
+ * straight from the index, so their cost is O(recipients).
+ */
 @Component
 class WebSocketSessionRegistry {
-    private val clients = ConcurrentHashMap<String, ConnectedClient>()
+    private val sessions = ConcurrentHashMap<String, ConnectedClient>()
+    private val byUser = ConcurrentHashMap<String, MutableSet<ConnectedClient>>()
+    private val byRole = ConcurrentHashMap<Role, MutableSet<ConnectedClient>>()
 
     fun register(
         userId: String,
         role: Role,
-        session: WebSocketSession
+        session: WebSocketSession,
+        outbox: SessionOutbox
     ) {
-        clients[userId] = ConnectedClient(userId, role, session)
+        val client = ConnectedClient(userId, role, session, outbox)
+        sessions[session.id] = client
+        byUser.compute(userId) { _, clients ->
+            (clients ?: ConcurrentHashMap.newKeySet()).apply { add(client) }
+        }
+        byRole.computeIfAbsent(role) { ConcurrentHashMap.newKeySet() }.add(client)
     }
 
-    fun unregister(userId: String) {
-        clients.remove(userId)
+    fun unregister(sessionId: String) {
+        val client = sessions.remove(sessionId) ?: return
+        byUser.computeIfPresent(client.userId) { _, clients ->
+            clients.remove(client)
+            clients.ifEmpty { null }
+        }
+        byRole[client.role]?.remove(client)
     }
 
-    fun getByRole(role: Role): List<ConnectedClient> =
-        clients.values.filter { it.role == role }
+    fun getByRole(role: Role): Collection<ConnectedClient> =
+        byRole[role].orEmpty()
 
-    fun getByUserId(userId: String): ConnectedClient? =
-        clients[userId]
+    fun getByUserId(userId: String): Collection<ConnectedClient> =
+        byUser[userId].orEmpty()
+
+    fun sendToUser(userId: String, message: String) {
+        byUser[userId]?.forEach { it.outbox.offer(message) }
+    }
 
     fun sendToRoles(roles: Set<Role>, message: String) {
-        clients.values
-            .filter { it.role in roles && it.session.isOpen }
-            .forEach {
-                it.session.send(
-                    Mono.just(it.session.textMessage(message))
-                ).subscribe()
-            }
+        roles.forEach { role ->
+            byRole[role]?.forEach { it.outbox.offer(message) }
+        }
     }
-}
\ No newline at end of file
+}
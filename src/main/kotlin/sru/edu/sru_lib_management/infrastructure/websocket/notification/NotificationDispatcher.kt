@@ -1,7 +1,6 @@
 package sru.edu.sru_lib_management.infrastructure.websocket.notification
 
 import org.springframework.stereotype.Component
-import reactor.core.publisher.Mono
 import sru.edu.sru_lib_management.auth.domain.model.Role
 import sru.edu.sru_lib_management.infrastructure.websocket.helper.WebSocketSessionRegistry
 
@@ -9,23 +8,12 @@ import sru.edu.sru_lib_management.infrastructure.websocket.helper.WebSocketSessi
 class NotificationDispatcher(
     private val sessionRegistry: WebSocketSessionRegistry
 ) {
+    // every open session (tab) of the user receives the payload
     fun sendToUser(userId: String, payload: String) {
-        sessionRegistry.getByUserId(userId)
-            ?.session
-            ?.send(Mono.just(
-                sessionRegistry.getByUserId(userId)!!
-                    .session.textMessage(payload)
-            ))?.subscribe()
+        sessionRegistry.sendToUser(userId, payload)
     }
 
     fun sendToRole(role: Role, payload: String) {
-        sessionRegistry.getByRole(role)
-            .forEach { client ->
-                client.session.send(
-                    Mono.just(
-                        client.session.textMessage(payload)
-                    )
-                ).subscribe()
-            }
+        sessionRegistry.sendToRoles(setOf(role), payload)
     }
 }
\ No newline at end of file
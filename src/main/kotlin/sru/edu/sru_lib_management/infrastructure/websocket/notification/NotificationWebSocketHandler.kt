@@ -1,45 +1,50 @@
 package sru.edu.sru_lib_management.infrastructure.websocket.notification
 
 import com.fasterxml.jackson.databind.ObjectMapper
-import org.springframework.security.core.userdetails.ReactiveUserDetailsService
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.socket.WebSocketSession
 import reactor.core.publisher.Mono
-import reactor.core.publisher.Sinks
 import sru.edu.sru_lib_management.auth.domain.jwt.JwtToken
 import sru.edu.sru_lib_management.auth.domain.model.User
 import sru.edu.sru_lib_management.auth.domain.repository.AuthRepository
 import sru.edu.sru_lib_management.core.domain.model.Notification
 import sru.edu.sru_lib_management.infrastructure.websocket.AuthenticatedWebSocketHandler
-import sru.edu.sru_lib_management.infrastructure.websocket.helper.WebSocketSessionRegistry
+import sru.edu.sru_lib_management.infrastructure.websocket.helper.SessionOutbox
+import sru.edu.sru_lib_management.infrastructure.websocket.helper.SessionOutboxes
+import java.util.concurrent.ConcurrentHashMap
 
 @Component
 class NotificationWebSocketHandler(
     jwtToken: JwtToken,
-    reactiveUserDetailsService: ReactiveUserDetailsService,
     authRepository: AuthRepository<User>,
-    private val sessionRegistry: WebSocketSessionRegistry,
+    sessionOutboxes: SessionOutboxes,
     private val objMapper: ObjectMapper
-) : AuthenticatedWebSocketHandler(jwtToken, reactiveUserDetailsService, authRepository) {
+) : AuthenticatedWebSocketHandler(jwtToken, authRepository, sessionOutboxes) {
 
-    private val sink: Sinks.Many<String> =
-        Sinks.many().multicast().onBackpressureBuffer()
+    override val channel = "notifications"
+
+    // notifications are bounded, the oldest are dropped and the client told to reload
+    override val overflowPolicy = SessionOutbox.OverflowPolicy.DROP_OLDEST
+
+    private val outboxes = ConcurrentHashMap<String, SessionOutbox>()
 
     override fun handleAuthenticatedSession(
         session: WebSocketSession,
-        userId: String
+        userId: String,
+        outbox: SessionOutbox
     ): Mono<Void> {
+        outboxes[session.id] = outbox
 
         return session.send(
-            sink.asFlux().map(session::textMessage)
+            outbox.flux.map(session::textMessage)
         ).and(
             session.receive()
-                .doFinally { sessionRegistry.unregister(userId) }
+                .doFinally { outboxes.remove(session.id) }
         )
     }
 
     fun send(notification: Notification) {
         val json = objMapper.writeValueAsString(notification)
-        sink.tryEmitNext(json)
+        outboxes.values.forEach { it.offer(json) }
     }
 }
\ No newline at end of file
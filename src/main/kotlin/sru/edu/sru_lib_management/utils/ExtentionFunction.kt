@@ -8,8 +8,16 @@ package sru.edu.sru_lib_management.utils
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.toList
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import org.springframework.web.reactive.function.server.ServerRequest
+import org.springframework.web.reactive.function.server.ServerResponse
+import org.springframework.web.reactive.function.server.bodyValueAndAwait
+import org.springframework.web.server.ResponseStatusException
 import sru.edu.sru_lib_management.core.domain.dto.BookDto
 import sru.edu.sru_lib_management.core.domain.dto.attend.StudentAttendDto
+import sru.edu.sru_lib_management.core.domain.dto.page.CursorPage
+import sru.edu.sru_lib_management.core.domain.dto.page.PageRequest
 import sru.edu.sru_lib_management.core.domain.model.Attend
 import sru.edu.sru_lib_management.core.domain.model.Books
 
@@ -67,4 +75,48 @@ fun String.checkEntryId(): Any{
         id.toLong()
     else
         id
-}
\ No newline at end of file
+}
+
+/**
+ * Keyset page parameters of a list request: `?size=&cursor=&sort=`.
+ * Null when neither size nor cursor is given, the endpoint then answers with a JSON array as before
+ * (see [unpagedRequest]) or streams the full list (see [streamingMediaType]).
+ */
+fun ServerRequest.pageRequest(defaultSort: String): PageRequest? {
+    val cursor = queryParam("cursor").orElse(null)
+    val size = queryParam("size").orElse(null)
+    if (cursor == null && size == null) return null
+    return PageRequest(
+        sort = queryParam("sort").orElse(defaultSort),
+        size = size?.let {
+            it.toIntOrNull() ?: throw ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be a number")
+        } ?: PageRequest.DEFAULT_SIZE,
+        cursor = cursor
+    )
+}
+
+const val NEXT_CURSOR_HEADER = "X-Next-Cursor"
+
+/** The page read for a plain JSON list request without size / cursor, answered with [listResponse]. */
+fun unpagedRequest(defaultSort: String): PageRequest = PageRequest(sort = defaultSort, size = PageRequest.MAX_SIZE)
+
+/**
+ * Answers an unpaged list request with the JSON array it always got, capped at one page of [PageRequest.MAX_SIZE].
+ * When rows are left, the [NEXT_CURSOR_HEADER] header holds the cursor to continue with `?cursor=`.
+ */
+suspend fun <T : Any> CursorPage<T>.listResponse(): ServerResponse {
+    val response = ServerResponse.ok()
+    nextCursor?.let { response.header(NEXT_CURSOR_HEADER, it) }
+    return response.bodyValueAndAwait(items)
+}
+
+/**
+ * Streaming representation asked for through the Accept header, NDJSON or Server-Sent Events.
+ * Null for plain JSON (and for wildcards), the endpoint then answers with one JSON array.
+ */
+fun ServerRequest.streamingMediaType(): MediaType? =
+    headers().accept().firstNotNullOfOrNull { accepted ->
+        STREAMING_MEDIA_TYPES.firstOrNull { accepted.equalsTypeAndSubtype(it) }
+    }
+
+private val STREAMING_MEDIA_TYPES = listOf(MediaType.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM)
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.utils
+
+import kotlinx.coroutines.flow.Flow
+import kotlin.math.roundToLong
+
+/** Count of one group and its share of the total in percent, rounded to 2 decimals. */
+data class GroupShare<K>(
+    val key: K,
+    val count: Long,
+    val percentage: Float
+)
+
+data class GroupShares<K>(
+    val total: Long,
+    // in the order the keys were first seen
+    val groups: List<GroupShare<K>>
+)
+
+/**
+ * Sums counts per key and the grand total while the items go by, so a cold source
+ * (a query) is read exactly once. Shares are computed from the small per-key map at the end.
+ */
+class ShareAggregator<K> {
+    private val counts = LinkedHashMap<K, Long>()
+    private var total = 0L
+
+    fun add(key: K, count: Long) {
+        counts[key] = (counts[key] ?: 0L) + count
+        total += count
+    }
+
+    fun result(): GroupShares<K> = GroupShares(
+        total = total,
+        groups = counts.map { (key, count) -> GroupShare(key, count, percentOf(count, total)) }
+    )
+
+    private fun percentOf(count: Long, total: Long): Float =
+        if (total == 0L) 0f else ((count * 10000.0 / total).roundToLong() / 100.0).toFloat()
+}
+
+suspend fun <T, K> Flow<T>.aggregateShares(key: (T) -> K, count: (T) -> Long): GroupShares<K> {
+    val aggregator = ShareAggregator<K>()
+    collect { aggregator.add(key(it), count(it)) }
+    return aggregator.result()
+}
+
+fun <T, K> Iterable<T>.aggregateShares(key: (T) -> K, count: (T) -> Long): GroupShares<K> {
+    val aggregator = ShareAggregator<K>()
+    forEach { aggregator.add(key(it), count(it)) }
+    return aggregator.result()
+}
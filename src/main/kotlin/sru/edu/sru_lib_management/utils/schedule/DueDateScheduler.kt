@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.utils.schedule
+
+import jakarta.annotation.PreDestroy
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.auth.domain.model.Role
+import sru.edu.sru_lib_management.core.data.cache.ActiveLoans
+import sru.edu.sru_lib_management.core.domain.model.Borrow
+import sru.edu.sru_lib_management.core.domain.model.JobLease
+import sru.edu.sru_lib_management.core.domain.model.NotificationType
+import sru.edu.sru_lib_management.core.domain.repository.BorrowRepository
+import sru.edu.sru_lib_management.core.domain.service.NotificationService
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
+import java.time.Duration
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.util.PriorityQueue
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Sends "due tomorrow" / "overdue" notifications when the day they belong to starts.
+ *
+ * - Each active loan ([ActiveLoans]) queues two events ordered by fire time: due tomorrow (start of
+ *   the day before the due date) and overdue (start of the day after it).
+ * - The queue is rebuilt whenever [ActiveLoans] reloads and BorrowServiceImp queues the events of
+ *   loans it borrows, updates or extends. An event whose loan was returned or re-dated since it was
+ *   queued is dropped when it comes up.
+ * - A rebuild keeps the events of today until they fired, so the midnight reload or a restart during
+ *   the day does not lose them. The job's watermark stores the last day notified, so a day is notified once.
+ * - Events fire only after the first rebuild (the first [ActiveLoans] load), an empty queue before it
+ *   would mark today as fired.
+ * - Events that fire together become one admin notification per type, which NotificationService
+ *   also queues as one email per admin. The loans listed are read from the database by the
+ *   instance holding the job lock, so every instance's loans are included once.
+ */
+@Component
+class DueDateScheduler(
+    private val borrowRepository: BorrowRepository,
+    private val notificationService: NotificationService,
+    private val jobLock: JobLock,
+    private val activeLoans: ActiveLoans
+) {
+
+    private val logger = LoggerFactory.getLogger(DueDateScheduler::class.java)
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private val wakeUp = Channel<Unit>(Channel.CONFLATED)
+
+    private enum class DueEventType { DUE_TOMORROW, OVERDUE }
+
+    private data class DueEvent(
+        val borrowId: Long,
+        val dueDate: LocalDate,
+        val type: DueEventType,
+        val fireAt: LocalDateTime
+    )
+
+    // guarded by itself
+    private val events = PriorityQueue<DueEvent>(compareBy { it.fireAt })
+
+    // the last day whose events were taken from the queue, guarded by events
+    private var firedThrough: LocalDate? = null
+
+    private val started = AtomicBoolean(false)
+
+    init {
+        activeLoans.onReload(::rebuild)
+    }
+
+    private fun start() {
+        scope.launch {
+            while (isActive) {
+                try {
+                    fireDue()
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    logger.error("Due date events failed: ${e.message}")
+                }
+                // sleep until the next event, or until a write queued an earlier one
+                val next = synchronized(events) { events.peek()?.fireAt }
+                val wait = next?.let { Duration.between(indoChinaDateTime(), it).toMillis() } ?: Long.MAX_VALUE
+                if (wait > 0) withTimeoutOrNull(wait) { wakeUp.receive() }
+            }
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        scope.cancel()
+    }
+
+    /** Queues the events of a new, changed or extended loan. */
+    fun track(borrow: Borrow) {
+        if (borrow.isBringBack) return
+        synchronized(events) { queue(borrow, indoChinaDate()) }
+        wakeUp.trySend(Unit)
+    }
+
+    private fun rebuild(loans: Collection<Borrow>) {
+        val today = indoChinaDate()
+        synchronized(events) {
+            events.clear()
+            loans.forEach { queue(it, today) }
+        }
+        if (started.compareAndSet(false, true)) start()
+        else wakeUp.trySend(Unit)
+    }
+
+    // events of past days and of days that fired already are not queued
+    private fun queue(borrow: Borrow, today: LocalDate) {
+        val borrowId = borrow.borrowId ?: return
+        val due = borrow.giveBackDate
+        val fired = firedThrough
+        listOf(
+            DueEvent(borrowId, due, DueEventType.DUE_TOMORROW, due.minusDays(1).atStartOfDay()),
+            DueEvent(borrowId, due, DueEventType.OVERDUE, due.plusDays(1).atStartOfDay())
+        ).filter {
+            val day = it.fireAt.toLocalDate()
+            !day.isBefore(today) && (fired == null || day.isAfter(fired))
+        }.forEach(events::add)
+    }
+
+    private suspend fun fireDue() {
+        val now = indoChinaDateTime()
+        val fired = synchronized(events) {
+            firedThrough = now.toLocalDate()
+            buildList {
+                while (events.peek()?.fireAt?.isAfter(now) == false) add(events.poll())
+            }
+        }
+        val types = fired
+            .filter { activeLoans[it.borrowId]?.giveBackDate == it.dueDate }
+            .map { it.type }
+            .toSet()
+        if (types.isEmpty()) return
+
+        // every instance fires at the start of the day, the lock lets one of them notify
+        jobLock.run("borrow-due-events", lockAtMostFor = Duration.ofMinutes(10), lockAtLeastFor = Duration.ofMinutes(10)) { lease ->
+            val today = indoChinaDate()
+            // another instance, or this one before a restart, notified today already
+            if (jobLock.watermark(lease)?.isBefore(today) == false) return@run 0L
+            var notified = 0L
+            if (DueEventType.DUE_TOMORROW in types) {
+                notified += notify(
+                    lease, borrowRepository.getActiveBorrowsDueOn(today.plusDays(1)),
+                    NotificationType.BORROW_DUE_SOON, "Books due tomorrow"
+                )
+            }
+            if (DueEventType.OVERDUE in types) {
+                notified += notify(
+                    lease, borrowRepository.getActiveBorrowsDueOn(today.minusDays(1)),
+                    NotificationType.BORROW_OVERDUE, "Books overdue"
+                )
+            }
+            jobLock.advanceWatermark(lease, today)
+            notified
+        }
+    }
+
+    private suspend fun notify(lease: JobLease, borrows: List<Borrow>, type: NotificationType, title: String): Long {
+        // a holder whose lease ran out must not send the notification as well
+        if (borrows.isEmpty() || !jobLock.isHeld(lease)) return 0
+        val list = borrows.joinToString(", ") { "${it.bookId} (student ${it.studentId})" }
+        notificationService.notifyRole(
+            role = Role.ADMIN,
+            type = type,
+            title = title,
+            message = "$title: $list",
+            referenceId = null
+        )
+        return borrows.size.toLong()
+    }
+}
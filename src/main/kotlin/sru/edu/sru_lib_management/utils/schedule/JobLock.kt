@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2024.
+ * @Author Phel Viwath
+ */
+
+package sru.edu.sru_lib_management.utils.schedule
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.reactor.awaitSingleOrNull
+import kotlinx.coroutines.reactor.mono
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import reactor.core.publisher.Mono
+import sru.edu.sru_lib_management.core.domain.model.JobLease
+import sru.edu.sru_lib_management.core.domain.model.JobRun
+import sru.edu.sru_lib_management.core.domain.model.JobRunStatus
+import sru.edu.sru_lib_management.core.domain.repository.JobLockRepository
+import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDateTime
+import java.lang.management.ManagementFactory
+import java.time.Duration
+import java.time.LocalDate
+import java.util.function.Function
+
+/**
+ * Runs a scheduled job on one instance of the cluster at a time.
+ *
+ * The lock is a lease in the job_lock table:
+ * - lockAtMostFor: the lease expires after it even if the holder died, pick it well above the job's run time.
+ * - lockAtLeastFor: the lease is kept at least that long, so an instance whose cron fires a little
+ *   later does not run the same job again.
+ * Every run that got the lock is recorded in job_run with its duration and row count.
+ */
+@Component
+class JobLock(
+    private val jobLockRepository: JobLockRepository,
+    @Value("\${job-lock.node-id:}") nodeId: String
+) {
+    private val logger = LoggerFactory.getLogger(JobLock::class.java)
+
+    val node: String = nodeId.ifBlank { ManagementFactory.getRuntimeMXBean().name }
+
+    /**
+     * Runs [job] when the lock of [jobName] is free. [job] returns the number of rows it changed (or null).
+     * Returns the recorded run, null when another instance holds the lock.
+     */
+    suspend fun run(
+        jobName: String,
+        lockAtMostFor: Duration,
+        lockAtLeastFor: Duration = Duration.ZERO,
+        job: suspend (JobLease) -> Long?
+    ): JobRun? {
+        val token = try {
+            jobLockRepository.tryAcquire(jobName, node, lockAtMostFor)
+        } catch (e: Exception) {
+            logger.error("Job $jobName: lock not acquired: ${e.message}")
+            return null
+        }
+        if (token == null) {
+            logger.info("Job $jobName is running on another instance, skipped")
+            return null
+        }
+
+        val startedAt = indoChinaDateTime()
+        val start = System.nanoTime()
+        var rows: Long? = null
+        var error: Exception? = null
+        try {
+            rows = job(JobLease(jobName, token))
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            error = e
+            logger.error("Job $jobName failed", e)
+        }
+
+        val run = JobRun(
+            jobName = jobName,
+            fencingToken = token,
+            node = node,
+            startedAt = startedAt,
+            finishedAt = indoChinaDateTime(),
+            durationMs = Duration.ofNanos(System.nanoTime() - start).toMillis(),
+            rowsAffected = rows,
+            status = if (error == null) JobRunStatus.SUCCESS else JobRunStatus.FAILED,
+            error = error?.message
+        )
+        runCatching { jobLockRepository.release(jobName, token, lockAtLeastFor) }
+            .onFailure { logger.error("Job $jobName: lock not released, expires after $lockAtMostFor: ${it.message}") }
+        runCatching { jobLockRepository.saveRun(run) }
+            .onFailure { logger.error("Job $jobName: run not recorded: ${it.message}") }
+        return run
+    }
+
+    /**
+     * True while [lease] is still the current holder; check it before side effects
+     * (notifications, emails) of a long job.
+     */
+    suspend fun isHeld(lease: JobLease): Boolean =
+        jobLockRepository.isHeld(lease.jobName, lease.fencingToken)
+
+    suspend fun recentRuns(limit: Int = 50): List<JobRun> = jobLockRepository.recentRuns(limit)
+
+    /** Progress an incremental job stored on its last successful run, null on the first run. */
+    suspend fun watermark(lease: JobLease): LocalDate? = jobLockRepository.getWatermark(lease.jobName)
+
+    /** Moves the job's watermark; false (and nothing stored) when [lease] is no longer held. */
+    suspend fun advanceWatermark(lease: JobLease, watermark: LocalDate): Boolean =
+        jobLockRepository.saveWatermark(lease.jobName, lease.fencingToken, watermark)
+
+    // Reactor variants for the Java jobs
+
+    fun runMono(
+        jobName: String,
+        lockAtMostFor: Duration,
+        lockAtLeastFor: Duration,
+        job: Function<JobLease, Mono<Long>>
+    ): Mono<JobRun> = mono {
+        run(jobName, lockAtMostFor, lockAtLeastFor) { lease -> job.apply(lease).awaitSingleOrNull() }
+    }
+
+    fun isHeldMono(lease: JobLease): Mono<Boolean> = mono { isHeld(lease) }
+
+    fun watermarkMono(lease: JobLease): Mono<LocalDate> = mono { watermark(lease) }
+
+    fun advanceWatermarkMono(lease: JobLease, watermark: LocalDate): Mono<Boolean> =
+        mono { advanceWatermark(lease, watermark) }
+}
@@ -20,12 +20,14 @@ import sru.edu.sru_lib_management.infrastructure.websocket.notification.BookTras
 import sru.edu.sru_lib_management.infrastructure.websocket.notification.NotificationSocket
 import sru.edu.sru_lib_management.infrastructure.websocket.notification.TrashBookDto
 import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
+import java.time.Duration
 
 @Component
 class RecoverBookMessage (
     private val bookRepository: BookRepository,
     private val notificationSocket: NotificationSocket,
-    private val notificationService: NotificationService
+    private val notificationService: NotificationService,
+    private val jobLock: JobLock
 ) {
     private val logger = LoggerFactory.getLogger(RecoverBookMessage::class.java)
     private val serviceScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
@@ -33,32 +35,36 @@ class RecoverBookMessage (
     @Scheduled(cron = "0 44 22 * * ?", zone = "Asia/Phnom_Penh")
     fun alertRecoveryBook() {
         serviceScope.launch {
-            val books = bookRepository.alertTrashMessage(indoChinaDate())
+            jobLock.run("book-trash-alert", lockAtMostFor = Duration.ofMinutes(10), lockAtLeastFor = Duration.ofMinutes(1)) { lease ->
+                val books = bookRepository.alertTrashMessage(indoChinaDate())
 
-            if (books.isNotEmpty()) {
-                val bookTitles = books.joinToString(", ") { it.bookTitle }
+                // a holder whose lease ran out must not send the alert as well
+                if (books.isNotEmpty() && jobLock.isHeld(lease)) {
+                    val bookTitles = books.joinToString(", ") { it.bookTitle }
 
-                notificationService.notifyRole(
-                    role = Role.ADMIN,
-                    type = NotificationType.BOOK_TRASH_ALERT,
-                    title = "Books will be deleted soon",
-                    message = "The following books will be deleted: $bookTitles",
-                    referenceId = null
-                )
-
-                val payload = books.map {
-                    TrashBookDto(
-                        bookId = it.bookId,
-                        title = it.bookTitle
+                    notificationService.notifyRole(
+                        role = Role.ADMIN,
+                        type = NotificationType.BOOK_TRASH_ALERT,
+                        title = "Books will be deleted soon",
+                        message = "The following books will be deleted: $bookTitles",
+                        referenceId = null
                     )
-                }
 
-                val notification = BookTrashNotification(
-                    title = "Books will be deleted soon",
-                    books = payload
-                )
+                    val payload = books.map {
+                        TrashBookDto(
+                            bookId = it.bookId,
+                            title = it.bookTitle
+                        )
+                    }
 
-                notificationSocket.notifyAdmins(notification)
+                    val notification = BookTrashNotification(
+                        title = "Books will be deleted soon",
+                        books = payload
+                    )
+
+                    notificationSocket.notifyAdmins(notification)
+                }
+                books.size.toLong()
             }
         }
     }
@@ -8,66 +8,90 @@ package sru.edu.sru_lib_management.utils.schedule
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.scheduling.annotation.Scheduled
 import org.springframework.stereotype.Component
+import sru.edu.sru_lib_management.common.CoreResult
+import sru.edu.sru_lib_management.core.domain.model.JobRunStatus
 import sru.edu.sru_lib_management.core.domain.service.AttendService
 import sru.edu.sru_lib_management.core.domain.service.BookService
-import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaDate
+import sru.edu.sru_lib_management.infrastructure.websocket.dashboard.DashboardNotificationService
 import sru.edu.sru_lib_management.utils.IndochinaDateTime.indoChinaTime
 import sru.edu.sru_lib_management.utils.OpeningTime.ELEVEN_AM
 import sru.edu.sru_lib_management.utils.OpeningTime.FIVE_PM
-import sru.edu.sru_lib_management.utils.OpeningTime.FIVE_THIRTY_PM
-import sru.edu.sru_lib_management.utils.OpeningTime.SEVEN_AM
 import sru.edu.sru_lib_management.utils.OpeningTime.SEVEN_THIRTY_PM
-import sru.edu.sru_lib_management.utils.OpeningTime.TWO_PM
+import java.time.Duration
 import java.time.LocalTime
 
 @Component
 class ScheduleTask(
     private val attendService: AttendService,
-    private val bookService: BookService
+    private val bookService: BookService,
+    private val dashboardNotificationService: DashboardNotificationService,
+    private val jobLock: JobLock,
+    @Value("\${attend.auto-exit.morning:11:05:00}") morningExit: String,
+    @Value("\${attend.auto-exit.afternoon:17:05:00}") afternoonExit: String,
+    @Value("\${attend.auto-exit.evening:19:40:00}") eveningExit: String
 ) {
 
     private val logger = LoggerFactory.getLogger(ScheduleTask::class.java)
 
     private val serviceScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
 
+    // end of each opening session -> exit time given to visits left open
+    private val sessionExits: List<Pair<LocalTime, LocalTime>> = listOf(
+        ELEVEN_AM to LocalTime.parse(morningExit),
+        FIVE_PM to LocalTime.parse(afternoonExit),
+        SEVEN_THIRTY_PM to LocalTime.parse(eveningExit)
+    )
+
     @Scheduled(cron = "0 25 11 * * ?", zone = "Asia/Phnom_Penh")
     @Scheduled(cron = "0 25 17 * * ?", zone = "Asia/Phnom_Penh")
     @Scheduled(cron = "0 50 19 * * ?", zone = "Asia/Phnom_Penh")
     fun autoUpdateExitingTimes() {
-        val timeToAutoExit = listOf(
-            LocalTime.parse("11:05:00"),
-            LocalTime.parse("17:05:00"),
-            LocalTime.parse("19:40:00")
-        )
-        try {
-            serviceScope.launch{
-                attendService.getAllAttendByDate(indoChinaDate()).collect { visitorDetail ->
-                    if (visitorDetail.exitTimes == null) {
-                        val newExitingTime = when (indoChinaTime()) {
-                            in SEVEN_AM..ELEVEN_AM -> timeToAutoExit[0]
-                            in TWO_PM..FIVE_PM -> timeToAutoExit[1]
-                            in FIVE_THIRTY_PM..SEVEN_THIRTY_PM -> timeToAutoExit[2]
-                            else -> indoChinaTime()
-                        }
-                        logger.info("Updating exiting time for student ${visitorDetail.visitorId} to $newExitingTime")
-                        if (visitorDetail.visitorId != null)
-                            attendService.updateExitingTime(visitorDetail.visitorId, indoChinaTime())
+        val now = indoChinaTime()
+        // cutoff of the session that ended last
+        val exitTime = sessionExits.lastOrNull { (sessionEnd, _) -> !now.isBefore(sessionEnd) }?.second ?: now
+        val leaseTime = Duration.ofMinutes(1)
+        serviceScope.launch {
+            // the UPDATE runs on one node only
+            val run = jobLock.run("attend-auto-exit", lockAtMostFor = Duration.ofMinutes(10), lockAtLeastFor = leaseTime) {
+                when (val result = attendService.autoExitOpenVisits(exitTime)) {
+                    is CoreResult.Success -> {
+                        logger.info("Auto exit at $exitTime closed ${result.data} open visit(s)")
+                        result.data
                     }
+                    is CoreResult.Failure -> throw IllegalStateException(result.errorMsg)
+                    is CoreResult.ClientError -> throw IllegalStateException(result.clientErrMsg)
+                }
+            }
+            when {
+                // the holder's UPDATE failed, the visits are still open in the database and in the index
+                run?.status == JobRunStatus.FAILED -> return@launch
+                // the holder closed the visits, this node applies the same cutoff to its index
+                run != null -> attendService.recordAutoExit(exitTime)
+                // another node holds the lock: read what it closed once its lease is over
+                else -> {
+                    delay(leaseTime.toMillis())
+                    attendService.reloadOccupancy()
                 }
             }
-        } catch (e: Exception) {
-            logger.error("Error in autoUpdateMorningExitingTimes", e)
+            dashboardNotificationService.notifyDashboardUpdate()
         }
     }
 
     /// Delete all book that inactive in 30 days
     @Scheduled(cron = "0 0 * * * ?", zone = "Asia/Phnom_Penh")
     fun deleteInactiveBook(){
-        serviceScope.launch { bookService.emptyTrash() }
+        serviceScope.launch {
+            jobLock.run("book-empty-trash", lockAtMostFor = Duration.ofMinutes(30), lockAtLeastFor = Duration.ofMinutes(1)) {
+                bookService.emptyTrash()
+                null
+            }
+        }
     }
 
 
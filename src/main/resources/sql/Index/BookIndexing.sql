@@ -0,0 +1,8 @@
+# Overdue scan of CheckBorrowBook: unreturned borrows by due date
+CREATE INDEX idx_borrow_books_due ON borrow_books (give_back_date, is_bring_back);
+
+# Duplicate check when blacklisting
+CREATE INDEX idx_blacklist_student_book ON blacklist (student_id, book_id);
+
+# Monthly borrow series: borrows in a date range
+CREATE INDEX idx_borrow_books_borrow_date ON borrow_books (borrow_date);
@@ -348,4 +348,82 @@ BEGIN
     ORDER BY attendDate DESC, entryTimes;
 END;
 
-Call GetCustomAttendDetail(null,null,'STUDENT');
\ No newline at end of file
+Call GetCustomAttendDetail(null,null,'STUDENT');
+# Entry scan in one round trip: resolve (or create) the visitor,
+# close visits left open today and insert the new attend.
+# Returns a single row; status is OK, STUDENT_NOT_FOUND or STAFF_NOT_FOUND.
+
+CREATE PROCEDURE IF NOT EXISTS SaveEntryScan(
+    IN p_student_id BIGINT,
+    IN p_staff_id VARCHAR(10),
+    IN p_entry_time TIME,
+    IN p_exit_time TIME,
+    IN p_purpose VARCHAR(50),
+    IN p_date DATE
+)
+BEGIN
+    DECLARE v_visitor_id BIGINT DEFAULT NULL;
+    DECLARE v_attend_id BIGINT DEFAULT NULL;
+    DECLARE v_closed_visits INT DEFAULT 0;
+
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+        BEGIN
+            ROLLBACK;
+            RESIGNAL;
+        END;
+
+    IF p_student_id IS NOT NULL
+        AND NOT EXISTS(SELECT 1 FROM students WHERE student_id = p_student_id) THEN
+        SELECT 'STUDENT_NOT_FOUND' AS status;
+    ELSEIF p_student_id IS NULL
+        AND NOT EXISTS(SELECT 1 FROM sru_staff WHERE sru_staff_id = p_staff_id) THEN
+        SELECT 'STAFF_NOT_FOUND' AS status;
+    ELSE
+        START TRANSACTION;
+
+        IF p_student_id IS NOT NULL THEN
+            SELECT visitor_id INTO v_visitor_id
+            FROM visitors WHERE student_id = p_student_id
+            LIMIT 1 FOR UPDATE;
+
+            IF v_visitor_id IS NULL THEN
+                INSERT INTO visitors(visitor_type, student_id, sru_staff_id)
+                VALUES('STUDENT', p_student_id, NULL);
+                SET v_visitor_id = LAST_INSERT_ID();
+            END IF;
+        ELSE
+            SELECT visitor_id INTO v_visitor_id
+            FROM visitors WHERE sru_staff_id = p_staff_id
+            LIMIT 1 FOR UPDATE;
+
+            IF v_visitor_id IS NULL THEN
+                INSERT INTO visitors(visitor_type, student_id, sru_staff_id)
+                VALUES('SRU_STAFF', NULL, p_staff_id);
+                SET v_visitor_id = LAST_INSERT_ID();
+            END IF;
+        END IF;
+
+        # Close visits they forgot to scan out of
+        UPDATE attend
+        SET exit_time = p_entry_time
+        WHERE visitor_id = v_visitor_id
+          AND attend_date = p_date
+          AND exit_time IS NULL;
+        SET v_closed_visits = ROW_COUNT();
+
+        INSERT INTO attend(visitor_id, entry_time, exit_time, attend_date, purpose)
+        VALUES(v_visitor_id, p_entry_time, p_exit_time, p_date, p_purpose);
+        SET v_attend_id = LAST_INSERT_ID();
+
+        COMMIT;
+
+        SELECT 'OK' AS status,
+               v_attend_id AS attend_id,
+               v_visitor_id AS visitor_id,
+               p_entry_time AS entry_time,
+               p_exit_time AS exit_time,
+               p_purpose AS purpose,
+               p_date AS attend_date,
+               v_closed_visits AS closed_visits;
+    END IF;
+END;
@@ -201,7 +201,7 @@ CREATE TABLE if not exists visitors(
 
 CREATE TABLE IF NOT EXISTS notifications (
     notification_id BIGINT PRIMARY KEY AUTO_INCREMENT,
-    type ENUM('BOOK_TRASH_ALERT','BOOK_APPROVAL_REQUEST','CHAT') NOT NULL,
+    type ENUM('BOOK_TRASH_ALERT','BOOK_APPROVAL_REQUEST','CHAT','BORROW_DUE_SOON','BORROW_OVERDUE') NOT NULL,
     title VARCHAR(100) NOT NULL,
     message TEXT NOT NULL,
     -- who should receive
@@ -235,12 +235,159 @@ CREATE TABLE IF NOT EXISTS chat_messages (
          ON DELETE CASCADE
 );
 
+#========================================================
+# OTP codes when auth.otp.store = database
+CREATE TABLE IF NOT EXISTS otp_codes (
+    email VARCHAR(50) PRIMARY KEY,
+    otp VARCHAR(10) NOT NULL,
+    expires_at DATETIME NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    locked_until DATETIME NULL,
+    INDEX idx_otp_expires_at (expires_at)
+);
 
+#========================================================
+# Outgoing email, sent and retried by the EmailOutbox worker
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    recipient VARCHAR(100) NOT NULL,
+    subject VARCHAR(255) NOT NULL,
+    body TEXT NOT NULL,
+    status ENUM('PENDING', 'SENDING', 'SENT', 'DEAD') NOT NULL DEFAULT 'PENDING',
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at DATETIME NOT NULL,
+    claim_token VARCHAR(36) NULL,
+    claimed_at DATETIME NULL,
+    last_error VARCHAR(500) NULL,
+    created_at DATETIME NOT NULL,
+    sent_at DATETIME NULL,
+    INDEX idx_email_outbox_due (status, next_attempt_at),
+    INDEX idx_email_outbox_claim (claim_token)
+);
 
+#========================================================
+# Daily attendance rollup, one row per (date, visitor dimensions, time slot, purpose).
+# Maintained by AttendRollupService, rebuilt with POST /api/v1/att/rollup/rebuild
+CREATE TABLE IF NOT EXISTS attend_daily_rollup (
+    attend_date DATE NOT NULL,
+    visitor_type ENUM('STUDENT', 'SRU_STAFF') NOT NULL,
+    major_name VARCHAR(100) NOT NULL DEFAULT '',
+    degree_level VARCHAR(100) NOT NULL DEFAULT '',
+    generation INT NOT NULL DEFAULT 0,
+    gender VARCHAR(10) NOT NULL DEFAULT '',
+    time_slot ENUM('MORNING', 'AFTERNOON', 'EVENING', 'OTHER') NOT NULL,
+    purpose VARCHAR(50) NOT NULL,
+    visits INT NOT NULL,
+    closed_visits INT NOT NULL,
+    total_minutes BIGINT NOT NULL,
+    PRIMARY KEY (attend_date, visitor_type, major_name, degree_level, generation, gender, time_slot, purpose)
+);
 
+# Rollup rows of the attend dates that have none yet (the whole history on the first deploy)
+INSERT IGNORE INTO attend_daily_rollup(
+    attend_date, visitor_type, major_name, degree_level, generation, gender,
+    time_slot, purpose, visits, closed_visits, total_minutes
+)
+SELECT
+    a.attend_date,
+    v.visitor_type,
+    COALESCE(m.major_name, ''),
+    COALESCE(d.degree_level, ''),
+    COALESCE(s.generation, 0),
+    COALESCE(s.gender, st.gender, ''),
+    CASE
+        WHEN a.entry_time BETWEEN '07:00:00' AND '11:00:00' THEN 'MORNING'
+        WHEN a.entry_time BETWEEN '14:00:00' AND '17:00:00' THEN 'AFTERNOON'
+        WHEN a.entry_time BETWEEN '17:30:00' AND '19:30:00' THEN 'EVENING'
+        ELSE 'OTHER'
+    END AS time_slot,
+    a.purpose,
+    COUNT(*),
+    COUNT(a.exit_time),
+    COALESCE(SUM(TIMESTAMPDIFF(MINUTE, a.entry_time, a.exit_time)), 0)
+FROM attend a
+JOIN visitors v ON a.visitor_id = v.visitor_id
+LEFT JOIN students s ON v.student_id = s.student_id
+LEFT JOIN majors m ON s.major_id = m.major_id
+LEFT JOIN degree_level d ON s.degree_level_id = d.degree_level_id
+LEFT JOIN sru_staff st ON v.sru_staff_id = st.sru_staff_id
+WHERE NOT EXISTS (SELECT 1 FROM attend_daily_rollup r WHERE r.attend_date = a.attend_date)
+GROUP BY 1, 2, 3, 4, 5, 6, 7, 8;
 
+#========================================================
+# Attend dates whose rollup rows are stale, cleared in the transaction that re-aggregates them
+CREATE TABLE IF NOT EXISTS attend_rollup_dirty (
+    attend_date DATE PRIMARY KEY,
+    marked_at DATETIME NOT NULL
+);
 
+#========================================================
+# Lease of each cluster-wide scheduled job, see JobLock.
+# fencing_token grows on every acquire so a stale holder can be told apart
+CREATE TABLE IF NOT EXISTS job_lock (
+    job_name VARCHAR(64) PRIMARY KEY,
+    locked_until DATETIME(3) NOT NULL,
+    locked_at DATETIME(3) NOT NULL,
+    locked_by VARCHAR(100) NOT NULL,
+    fencing_token BIGINT NOT NULL DEFAULT 0
+);
 
+#========================================================
+# History of scheduled job runs
+CREATE TABLE IF NOT EXISTS job_run (
+    run_id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    job_name VARCHAR(64) NOT NULL,
+    fencing_token BIGINT NOT NULL,
+    node VARCHAR(100) NOT NULL,
+    started_at DATETIME NOT NULL,
+    finished_at DATETIME NOT NULL,
+    duration_ms BIGINT NOT NULL,
+    rows_affected BIGINT NULL,
+    status ENUM('SUCCESS', 'FAILED') NOT NULL,
+    error VARCHAR(500) NULL,
+    INDEX idx_job_run_started (job_name, started_at)
+);
 
+#========================================================
+# Progress of incremental jobs, e.g. the last due date CheckBorrowBook has blacklisted
+CREATE TABLE IF NOT EXISTS job_watermark (
+    job_name VARCHAR(64) PRIMARY KEY,
+    watermark DATE NOT NULL,
+    updated_at DATETIME NOT NULL
+);
 
+#========================================================
+# Due-date notifications of the borrow scheduler, for databases created before they existed
+ALTER TABLE notifications
+    MODIFY type ENUM('BOOK_TRASH_ALERT','BOOK_APPROVAL_REQUEST','CHAT','BORROW_DUE_SOON','BORROW_OVERDUE') NOT NULL;
 
+#========================================================
+# Copies of each book out on loan, changed only with a conditional update at checkout / return
+CREATE TABLE IF NOT EXISTS book_inventory (
+    book_id VARCHAR(10) PRIMARY KEY,
+    on_loan INT NOT NULL DEFAULT 0,
+    FOREIGN KEY (book_id) REFERENCES books(book_id)
+        ON UPDATE CASCADE
+        ON DELETE CASCADE
+);
+
+# Counters for the loans that exist already (books without a row are initialized at their first checkout)
+INSERT IGNORE INTO book_inventory (book_id, on_loan)
+SELECT b.book_id, COALESCE(SUM(bb.book_quan), 0)
+FROM books b
+    LEFT JOIN borrow_books bb ON bb.book_id = b.book_id AND bb.is_bring_back IS NOT TRUE
+GROUP BY b.book_id;
+
+#========================================================
+# Append-only history of borrow, return and extend
+CREATE TABLE IF NOT EXISTS inventory_ledger (
+    entry_id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    book_id VARCHAR(10) NOT NULL,
+    borrow_id BIGINT NOT NULL,
+    student_id BIGINT NOT NULL,
+    entry_type ENUM('BORROW', 'RETURN', 'EXTEND') NOT NULL,
+    quantity INT NOT NULL,
+    created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    INDEX idx_inventory_ledger_book (book_id, entry_id),
+    INDEX idx_inventory_ledger_borrow (borrow_id)
+);